@@ -1,10 +1,10 @@
 package edu.uob;
 
 import edu.uob.dbengine.DatabaseHandler;
+import edu.uob.networkprocessor.SelectorServer;
 import edu.uob.outputprocessor.Logger;
-import edu.uob.queryprocessor.Token;
-import edu.uob.queryprocessor.TokenType;
-import edu.uob.queryprocessor.Tokenizer;
+import edu.uob.utils.Config;
+import edu.uob.utils.Session;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -12,21 +12,31 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.file.Paths;
 import java.nio.file.Files;
-import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /** This class implements the DB server. */
 public class DBServer {
 
     private static final char END_OF_TRANSMISSION = 4;
     private String storageFolderPath;
+    private final Session session = new Session();
 
     public static void main(String args[]) throws IOException {
         DBServer server = new DBServer();
-        server.blockingListenOn(8888);
+        if (args.length > 0 && args[0].equalsIgnoreCase("blocking")) {
+            server.blockingListenOn(8888);
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("nio")) {
+            server.nonBlockingListenOn(8888);
+        } else {
+            server.concurrentListenOn(8888);
+        }
     }
 
     /**
@@ -49,14 +59,36 @@ public class DBServer {
     * <p>This method handles all incoming DB commands and carries out the required actions.
     */
     public String handleCommand(String command) {
-        // TODO implement your server logic here
-        DatabaseHandler db = new DatabaseHandler();
+        return handleCommand(command, session);
+    }
+
+    /** Runs a command against the given connection's session, leaving other sessions untouched. */
+    public String handleCommand(String command, Session session) {
+        Logger logger = session.getLogger();
+        logger.setOutput(null);
+        DatabaseHandler db = new DatabaseHandler(session);
         db.parseQuery(command);
-        String result = Logger.getResult();
-        Logger.flush();
+        String result = logger.getResult();
+        logger.flush();
         return result;
     }
 
+    /**
+     * Runs a command and streams its reply straight to {@code writer}, so result rows reach the
+     * client while the rest of the result is still being produced.
+     */
+    public void handleCommand(String command, Session session, Writer writer) {
+        Logger logger = session.getLogger();
+        logger.setOutput(writer);
+        try {
+            DatabaseHandler db = new DatabaseHandler(session);
+            db.parseQuery(command);
+        } finally {
+            logger.setOutput(null);
+            logger.flush();
+        }
+    }
+
     //  === Methods below handle networking aspects of the project - you will not need to change these ! ===
 
     public void blockingListenOn(int portNumber) throws IOException {
@@ -65,7 +97,7 @@ public class DBServer {
             while (!Thread.interrupted()) {
                 try {
                     blockingHandleConnection(s);
-                } catch (IOException e) {
+                } catch (IOException | UncheckedIOException e) {
                     System.err.println("Server encountered a non-fatal IO error:");
                     e.printStackTrace();
                     System.err.println("Continuing...");
@@ -83,11 +115,60 @@ public class DBServer {
             while (!Thread.interrupted()) {
                 String incomingCommand = reader.readLine();
                 System.out.println("Received message: " + incomingCommand);
-                String result = handleCommand(incomingCommand);
-                writer.write(result);
+                handleCommand(incomingCommand, session, writer);
+                writer.write("\n" + END_OF_TRANSMISSION + "\n");
+                writer.flush();
+            }
+        }
+    }
+
+    /**
+     * Accepts connections on the calling thread and serves each one on a worker from a bounded pool
+     * (sized by {@link Config#getConnectionThreads()}), so one slow client no longer blocks the rest.
+     */
+    public void concurrentListenOn(int portNumber) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(Config.getConnectionThreads());
+        try (ServerSocket s = new ServerSocket(portNumber)) {
+            System.out.println("Server listening on port " + portNumber);
+            while (!Thread.interrupted()) {
+                try {
+                    Socket socket = s.accept();
+                    workers.execute(() -> concurrentHandleConnection(socket));
+                } catch (IOException e) {
+                    System.err.println("Server encountered a non-fatal IO error:");
+                    e.printStackTrace();
+                    System.err.println("Continuing...");
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Serves every connection from a single selector thread and lets clients pipeline statements,
+     * see {@link SelectorServer}.
+     */
+    public void nonBlockingListenOn(int portNumber) throws IOException {
+        new SelectorServer(this).listenOn(portNumber);
+    }
+
+    private void concurrentHandleConnection(Socket socket) {
+        Session connectionSession = new Session();
+        try (Socket s = socket;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream()));
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(s.getOutputStream()))) {
+
+            System.out.println("Connection established: " + s.getInetAddress());
+            String incomingCommand;
+            while (!Thread.interrupted() && (incomingCommand = reader.readLine()) != null) {
+                System.out.println("Received message: " + incomingCommand);
+                handleCommand(incomingCommand, connectionSession, writer);
                 writer.write("\n" + END_OF_TRANSMISSION + "\n");
                 writer.flush();
             }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Connection closed with an IO error: " + e.getMessage());
         }
     }
 }
@@ -0,0 +1,13 @@
+package edu.uob.dbengine;
+
+import edu.uob.executionprocessor.AggregateFunction;
+
+/** An aggregate in a select list, such as {@code SUM(mark)}; the column is null for {@code COUNT(*)}. */
+public record Aggregate(AggregateFunction function, String column) {
+
+    /** The aggregate as written, with the function in capitals; also the name of its output column. */
+    @Override
+    public String toString() {
+        return function + "(" + (column == null ? "*" : column) + ")";
+    }
+}
@@ -1,4 +1,375 @@
 package edu.uob.dbengine;
 
-public record Condition(String operator, String value, String attribute) {
+import edu.uob.dbmodel.ColumnType;
+import edu.uob.dbmodel.Header;
+import edu.uob.dbmodel.Row;
+import edu.uob.dbmodel.Table;
+import edu.uob.exceptions.DatabaseOperationException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A parsed WHERE clause, with AND binding tighter than OR. The parser builds it once per statement;
+ * {@link #bind} then resolves its columns against the table so that each row is checked without any
+ * further parsing.
+ */
+public sealed interface Condition permits Condition.Comparison, Condition.AllOf, Condition.AnyOf {
+
+    /** Rows sampled to estimate how many rows a comparison lets through. */
+    int SELECTIVITY_SAMPLE = 64;
+
+    /**
+     * Resolves the columns the condition refers to, returning a test for the table's rows. The parts
+     * of AND and OR lists are reordered so that cheap tests likely to settle the outcome run first.
+     */
+    default Bound bind(Table table) throws DatabaseOperationException {
+        return bind(table, false);
+    }
+
+    /**
+     * As {@link #bind(Table)}, sampling the table for the selectivity only if {@code estimate} is set
+     * or the condition has parts to reorder. Otherwise the selectivity is unknown and given as 0.5.
+     */
+    Bound bind(Table table, boolean estimate) throws DatabaseOperationException;
+
+    /** The table's columns the condition reads. */
+    Set<Header> columns(Table table) throws DatabaseOperationException;
+
+    /** The same condition with each value compared against replaced. */
+    Condition mapValues(UnaryOperator<String> values);
+
+    /**
+     * A condition bound to a table. {@code cost} is the expected work to test one row, in units of a
+     * string comparison, and {@code selectivity} the estimated fraction of rows that pass.
+     */
+    record Bound(Predicate<Row> predicate, double cost, double selectivity) implements Predicate<Row> {
+
+        @Override
+        public boolean test(Row row) {
+            return predicate.test(row);
+        }
+    }
+
+    enum Operator {
+        EQUALS("=="), NOT_EQUALS("!="), GREATER(">"), LESS("<"), GREATER_EQUALS(">="), LESS_EQUALS("<="),
+        LIKE("LIKE");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        /** The operator written as {@code symbol}, or null if there is none. */
+        public static Operator fromSymbol(String symbol) {
+            for (Operator operator : values()) {
+                if (operator.symbol.equalsIgnoreCase(symbol)) {
+                    return operator;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * {@code attribute <operator> value}. When both the cell and the value are numbers they are
+     * compared as numbers, otherwise as strings. The value is parsed once up front, and cells are
+     * read through the numbers each row keeps, so no row needs parsing to be compared. On a
+     * dictionary-encoded column each distinct value is compared once and the answer reused for
+     * every other row holding its code.
+     */
+    record Comparison(String attribute, Operator operator, String value, boolean numeric, double number)
+            implements Condition {
+
+        public static Comparison of(String attribute, Operator operator, String value) {
+            try {
+                return new Comparison(attribute, operator, value, true, Double.parseDouble(value));
+            } catch (NumberFormatException e) {
+                return new Comparison(attribute, operator, value, false, 0);
+            }
+        }
+
+        @Override
+        public Comparison mapValues(UnaryOperator<String> values) {
+            return of(attribute, operator, values.apply(value));
+        }
+
+        @Override
+        public Set<Header> columns(Table table) throws DatabaseOperationException {
+            return Set.of(resolve(table, attribute));
+        }
+
+        @Override
+        public Bound bind(Table table, boolean estimate) throws DatabaseOperationException {
+            Header header = resolve(table, attribute);
+            Predicate<Row> predicate;
+            double cost;
+            if (numeric) {
+                predicate = row -> {
+                    double cell = row.getNumber(header);
+                    return Double.isNaN(cell) ? matches(row.getColumnValue(header)) : compare(cell);
+                };
+                // Columns holding anything but numbers send some rows down the string path
+                ColumnType type = header.getType();
+                cost = type == null || type == ColumnType.INTEGER || type == ColumnType.DOUBLE ? 1 : 2;
+            } else {
+                predicate = row -> compare(row.getColumnValue(header));
+                cost = operator == Operator.LIKE ? 2 : 1;
+            }
+            if (header.getDictionary() != null) {
+                predicate = new PerCode(header, predicate);
+                cost = 0.5;
+            }
+            return new Bound(predicate, cost, estimate ? sampleSelectivity(table, predicate) : 0.5);
+        }
+
+        private boolean matches(String cell) {
+            if (numeric) {
+                double parsed = ColumnType.toNumber(cell);
+                if (!Double.isNaN(parsed) || isNaN(cell)) {
+                    return compare(parsed);
+                }
+            }
+            return compare(cell);
+        }
+
+        private boolean compare(double cell) {
+            return switch (operator) {
+                case EQUALS -> cell == number;
+                case NOT_EQUALS -> cell != number;
+                case GREATER -> cell > number;
+                case LESS -> cell < number;
+                case GREATER_EQUALS -> cell >= number;
+                case LESS_EQUALS -> cell <= number;
+                case LIKE -> false;
+            };
+        }
+
+        private boolean compare(String cell) {
+            if (cell == null) {
+                cell = "";
+            }
+            return switch (operator) {
+                case LIKE -> cell.contains(value);
+                case EQUALS -> cell.equals(value);
+                case NOT_EQUALS -> !cell.equals(value);
+                case GREATER -> cell.compareTo(value) > 0;
+                case LESS -> cell.compareTo(value) < 0;
+                case GREATER_EQUALS -> cell.compareTo(value) >= 0;
+                case LESS_EQUALS -> cell.compareTo(value) <= 0;
+            };
+        }
+
+        /** Whether the cell is written as NaN, which is a number even though it equals nothing. */
+        private static boolean isNaN(String cell) {
+            if (cell == null || !cell.contains("NaN")) {
+                return false;
+            }
+            try {
+                return Double.isNaN(Double.parseDouble(cell));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return attribute + " " + operator.getSymbol() + " " + value;
+        }
+
+        /**
+         * The fraction of rows spread evenly through the table that pass, smoothed so that a sample
+         * with no (or only) matches doesn't claim certainty.
+         */
+        private static double sampleSelectivity(Table table, Predicate<Row> predicate) {
+            List<Row> sample = table.sampleRows(SELECTIVITY_SAMPLE);
+            int matches = 0;
+            for (Row row : sample) {
+                if (predicate.test(row)) {
+                    matches++;
+                }
+            }
+            return (matches + 1.0) / (sample.size() + 2.0);
+        }
+
+        /** Decides a comparison on a dictionary-encoded column once per code, remembering the answer. */
+        private static final class PerCode implements Predicate<Row> {
+
+            private static final byte UNKNOWN = 0;
+            private static final byte PASSES = 1;
+            private static final byte FAILS = 2;
+
+            private final Header header;
+            private final Predicate<Row> predicate;
+            // Answers by code, grown as codes are met. Threads scanning in parallel may race to grow it
+            // or fill it in, which can only lose answers they then work out again
+            private volatile byte[] answers = new byte[16];
+
+            PerCode(Header header, Predicate<Row> predicate) {
+                this.header = header;
+                this.predicate = predicate;
+            }
+
+            @Override
+            public boolean test(Row row) {
+                int code = row.getCode(header);
+                if (code < 0) {
+                    return predicate.test(row);
+                }
+                byte[] known = answers;
+                if (code >= known.length) {
+                    known = Arrays.copyOf(known, Math.max(code + 1, 2 * known.length));
+                    answers = known;
+                }
+                byte answer = known[code];
+                if (answer == UNKNOWN) {
+                    answer = predicate.test(row) ? PASSES : FAILS;
+                    known[code] = answer;
+                }
+                return answer == PASSES;
+            }
+        }
+
+        /** Finds the column by its exact name, falling back to a case-insensitive match. */
+        private static Header resolve(Table table, String attribute) throws DatabaseOperationException {
+            Header header = table.getColumn(attribute);
+            if (header != null) {
+                return header;
+            }
+            for (Header candidate : table.getHeaders()) {
+                if (candidate.getName().equalsIgnoreCase(attribute)) {
+                    return candidate;
+                }
+            }
+            throw new DatabaseOperationException(" Condition attribute not found: " + attribute);
+        }
+    }
+
+    /**
+     * Holds when every condition does; stops at the first that doesn't. Conditions are tried in order
+     * of cost per row rejected, treating them as independent.
+     */
+    record AllOf(List<Condition> conditions) implements Condition {
+
+        @Override
+        public AllOf mapValues(UnaryOperator<String> values) {
+            return new AllOf(mapAll(conditions, values));
+        }
+
+        @Override
+        public Set<Header> columns(Table table) throws DatabaseOperationException {
+            return columnsOf(conditions, table);
+        }
+
+        @Override
+        public Bound bind(Table table, boolean estimate) throws DatabaseOperationException {
+            List<Bound> bound = bindAll(conditions, table, estimate);
+            bound.sort(Comparator.comparingDouble(condition -> condition.cost() / (1 - condition.selectivity())));
+            Bound[] ordered = bound.toArray(new Bound[0]);
+            double cost = 0;
+            double selectivity = 1;
+            for (Bound condition : ordered) {
+                cost += selectivity * condition.cost();
+                selectivity *= condition.selectivity();
+            }
+            return new Bound(row -> {
+                for (Bound condition : ordered) {
+                    if (!condition.test(row)) {
+                        return false;
+                    }
+                }
+                return true;
+            }, cost, selectivity);
+        }
+
+        @Override
+        public String toString() {
+            return join(conditions, " AND ");
+        }
+    }
+
+    /**
+     * Holds when any condition does; stops at the first that does. Conditions are tried in order of
+     * cost per row accepted, treating them as independent.
+     */
+    record AnyOf(List<Condition> conditions) implements Condition {
+
+        @Override
+        public AnyOf mapValues(UnaryOperator<String> values) {
+            return new AnyOf(mapAll(conditions, values));
+        }
+
+        @Override
+        public Set<Header> columns(Table table) throws DatabaseOperationException {
+            return columnsOf(conditions, table);
+        }
+
+        @Override
+        public Bound bind(Table table, boolean estimate) throws DatabaseOperationException {
+            List<Bound> bound = bindAll(conditions, table, estimate);
+            bound.sort(Comparator.comparingDouble(condition -> condition.cost() / condition.selectivity()));
+            Bound[] ordered = bound.toArray(new Bound[0]);
+            double cost = 0;
+            double rejected = 1;
+            for (Bound condition : ordered) {
+                cost += rejected * condition.cost();
+                rejected *= 1 - condition.selectivity();
+            }
+            return new Bound(row -> {
+                for (Bound condition : ordered) {
+                    if (condition.test(row)) {
+                        return true;
+                    }
+                }
+                return false;
+            }, cost, 1 - rejected);
+        }
+
+        @Override
+        public String toString() {
+            return join(conditions, " OR ");
+        }
+    }
+
+    private static List<Bound> bindAll(List<Condition> conditions, Table table, boolean estimate)
+            throws DatabaseOperationException {
+        // The parts' selectivities are needed to order them, or to work out the list's own
+        boolean estimateParts = estimate || conditions.size() > 1;
+        List<Bound> bound = new ArrayList<>(conditions.size());
+        for (Condition condition : conditions) {
+            bound.add(condition.bind(table, estimateParts));
+        }
+        return bound;
+    }
+
+    private static Set<Header> columnsOf(List<Condition> conditions, Table table) throws DatabaseOperationException {
+        Set<Header> columns = new HashSet<>();
+        for (Condition condition : conditions) {
+            columns.addAll(condition.columns(table));
+        }
+        return columns;
+    }
+
+    private static List<Condition> mapAll(List<Condition> conditions, UnaryOperator<String> values) {
+        List<Condition> mapped = new ArrayList<>(conditions.size());
+        for (Condition condition : conditions) {
+            mapped.add(condition.mapValues(values));
+        }
+        return mapped;
+    }
+
+    private static String join(List<Condition> conditions, String conjunction) {
+        return String.join(conjunction, conditions.stream().map(condition -> "(" + condition + ")").toList());
+    }
 }
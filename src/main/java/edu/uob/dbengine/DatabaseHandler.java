@@ -2,22 +2,23 @@ package edu.uob.dbengine;
 
 import edu.uob.outputprocessor.Logger;
 import edu.uob.outputprocessor.Result;
+import edu.uob.utils.Session;
 
 public class DatabaseHandler {
 
     private final DatabaseOperationHandler operationHandler;
+    private final Session session;
 
-    public DatabaseHandler() {
-        operationHandler = new DatabaseOperationHandler();
+    public DatabaseHandler(Session session) {
+        this.session = session;
+        operationHandler = new DatabaseOperationHandler(session);
     }
 
     public void parseQuery(String query) {
-        QueryParser queryParser = new QueryParser(operationHandler, query);
-        if (queryParser.parse() == Result.SUCCESS) {
-            Logger.insertLog(0, Result.SUCCESS.value);
-        } else {
-            Logger.insertLog(0, Result.FAILURE.value);
-        }
+        Logger logger = session.getLogger();
+        QueryParser queryParser = new QueryParser(operationHandler, logger, query);
+        Result result = queryParser.parse();
+        logger.completeResult(result);
     }
 
 }
@@ -1,43 +1,105 @@
 package edu.uob.dbengine;
 
+import edu.uob.dbmodel.ColumnType;
 import edu.uob.dbmodel.Header;
 import edu.uob.dbmodel.Row;
 import edu.uob.dbmodel.Table;
 import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.executionprocessor.FileScan;
+import edu.uob.executionprocessor.Filter;
+import edu.uob.executionprocessor.HashAggregate;
+import edu.uob.executionprocessor.Join;
+import edu.uob.executionprocessor.Limit;
+import edu.uob.executionprocessor.OutputSink;
+import edu.uob.executionprocessor.Project;
+import edu.uob.executionprocessor.QueryOperator;
+import edu.uob.executionprocessor.Sort;
+import edu.uob.executionprocessor.TableScan;
+import edu.uob.indexprocessor.Index;
+import edu.uob.indexprocessor.IndexType;
+import edu.uob.indexprocessor.TableIndexes;
 import edu.uob.outputprocessor.Logger;
 import edu.uob.outputprocessor.Result;
+import edu.uob.storageprocessor.LogRecord;
+import edu.uob.storageprocessor.TableCache;
+import edu.uob.storageprocessor.TableLockManager;
+import edu.uob.storageprocessor.TableMetadata;
+import edu.uob.storageprocessor.WriteAheadLog;
+import edu.uob.utils.Config;
 import edu.uob.utils.Constants;
 import edu.uob.utils.Session;
 
 import java.io.*;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Predicate;
 
 public class DatabaseOperationHandler {
 
     private static final String DATABASE_DIR = Paths.get(Constants.FOLDER_NAME).toAbsolutePath().toString();
 
+    private final Session session;
+    private final Logger logger;
+
+    public DatabaseOperationHandler(Session session) {
+        this.session = session;
+        this.logger = session.getLogger();
+    }
+
     private void checkActiveDatabase() throws DatabaseOperationException {
-        if (Session.DBname == null) {
+        if (session.getDBname() == null) {
             throw new DatabaseOperationException(" No database selected");
         }
     }
 
     private File getTableFile(String tableName) throws DatabaseOperationException {
-        File tableFile = new File(Session.DBpath, tableName + ".tab");
+        File tableFile = new File(session.getDBpath(), tableName + ".tab");
         if (tableFile.exists()) {
             return tableFile;
         }
         throw new DatabaseOperationException(" Table not found");
     }
 
+    private void saveTable(File tableFile, Table table) throws DatabaseOperationException {
+        table.writeTableToFile(tableFile);
+        TableCache.put(tableFile, table);
+    }
+
+    private WriteAheadLog getWriteAheadLog() throws DatabaseOperationException {
+        return WriteAheadLog.forDatabase(new File(session.getDBpath()));
+    }
+
+    /**
+     * Stores a change already logged and then made to {@code table}. A cached table is pinned in
+     * memory, leaving the log record to cover it. A table the cache could not hold has its changed
+     * rows (keyed by id, null for a deleted row) written in place when the file format allows it, or
+     * is rewritten otherwise. In-place writes first force the log record at {@code lsn} to disk
+     * whatever the sync policy, since a crash part way through them can only be repaired from it.
+     */
+    private void storeChange(WriteAheadLog wal, long lsn, File tableFile, Table table, Map<String, Row> changedRows)
+            throws DatabaseOperationException {
+        if (TableCache.pin(tableFile, table)) {
+            TableCache.recordRewrite(tableFile);
+            return;
+        }
+        if (changedRows != null) {
+            wal.sync(lsn);
+            if (table.rewriteRowsInFile(tableFile, changedRows)) {
+                // Like a direct insert, the log record covers the unsynced write until the next checkpoint
+                wal.appendedDirectly(tableFile);
+                return;
+            }
+        }
+        saveTable(tableFile, table);
+    }
+
     public Result useDatabase(String dbName) throws DatabaseOperationException {
         File dbDir = new File(DATABASE_DIR, dbName);
         if (dbDir.exists() && dbDir.isDirectory()) {
-            Session.DBname = dbName;
-            Session.DBpath = dbDir.getAbsolutePath();
+            // Opening the log replays anything a crash left behind
+            WriteAheadLog.forDatabase(dbDir);
+            session.setDatabase(dbName, dbDir.getAbsolutePath());
             return Result.SUCCESS;
         } else {
             throw new DatabaseOperationException(" Database doesn't exist");
@@ -48,17 +110,24 @@ public class DatabaseOperationHandler {
         File dbDir = new File(DATABASE_DIR, dbName);
         if (!dbDir.exists()) {
             dbDir.mkdir();
-            Session.DBname = dbName;
-            Session.DBpath = dbDir.getAbsolutePath();
+            session.setDatabase(dbName, dbDir.getAbsolutePath());
             return Result.SUCCESS;
         } else {
             throw new DatabaseOperationException(" Unable to create database");
         }
     }
 
-    public Result createTable(String tableName, List<String> attributes) throws DatabaseOperationException {
+    /** Creates a table; the columns in {@code dictionaryColumns} are stored dictionary-encoded. */
+    public Result createTable(String tableName, List<String> attributes, Map<String, String> columnTypes,
+                              Set<String> dictionaryColumns) throws DatabaseOperationException {
         checkActiveDatabase();
-        File tableFile = new File(Session.DBpath, tableName + ".tab");
+        File tableFile = new File(session.getDBpath(), tableName + ".tab");
+        Map<String, ColumnType> declaredTypes = new LinkedHashMap<>();
+        for (String attribute : attributes) {
+            if (columnTypes.containsKey(attribute)) {
+                declaredTypes.put(attribute, ColumnType.fromName(columnTypes.get(attribute)));
+            }
+        }
         try {
             if (tableFile.createNewFile()) {
                 if (attributes != null && !attributes.isEmpty()) {
@@ -66,16 +135,25 @@ public class DatabaseOperationHandler {
                     if (!attributes.contains("id")) {
                         attributes.add(0, "id");
                     }
+                    // The metadata comes first: the table is cached as soon as it is saved, with the
+                    // dictionaries its metadata declares
+                    TableMetadata metadata = TableMetadata.create(tableFile);
+                    if (!declaredTypes.isEmpty() || !dictionaryColumns.isEmpty()) {
+                        metadata.setColumnTypes(declaredTypes);
+                        metadata.setDictionaryColumns(dictionaryColumns);
+                        metadata.save();
+                    }
                     Table newTable = new Table();
                     attributes.forEach(attr -> newTable.addHeader(new Header(attr)));
-                    newTable.writeTableToFile(tableFile);
+                    newTable.readDictionaryColumns(tableFile);
+                    saveTable(tableFile, newTable);
                     return Result.SUCCESS;
                 } else {
                     tableFile.delete();
-                    Logger.logResult(" Column Names not passed");
+                    logger.logResult(" Column Names not passed");
                 }
             } else {
-                Logger.logResult("Table already exists: " + tableName);
+                logger.logResult("Table already exists: " + tableName);
             }
         } catch (IOException e) {
             throw new DatabaseOperationException(" Unable to create table");
@@ -86,171 +164,216 @@ public class DatabaseOperationHandler {
     public Result insertIntoTable(String tableName, List<String> values) throws DatabaseOperationException {
         checkActiveDatabase();
         File tableFile = getTableFile(tableName);
-        Table table = new Table();
-        table.readTableData(tableFile);
-        Row row = new Row();
-        int noOfRows = !table.getRows().isEmpty() ? table.getRows().size() : 0;
-        int nextId = 1;
-        if (noOfRows > 0) {
-            int lastId = Integer.parseInt(table.getColumnValueForRow(table.getRows().size()-1,"id"));
-            nextId = lastId + 1;
-        }
-        row.setValue(table.getHeaders().get(0), String.valueOf(nextId));
-        for (int i = 1; i < table.getHeaders().size(); i++) {
-            row.setValue(table.getHeaders().get(i), values.get(i - 1));
-        }
-        table.addRow(row);
-        table.writeTableToFile(tableFile);
-        return Result.SUCCESS;
-    }
-
-    public Result selectFromTable(String tableName, List<String> attributes, String condition) throws DatabaseOperationException {
-        checkActiveDatabase();
-        File tableFile = getTableFile(tableName);
-        Table tableResult = new Table();
-        tableResult.readTableData(tableFile);
-        Table table = new Table();
-        table.readTableData(tableFile);
-
-        // Determine which columns to output
-        if (!attributes.get(0).equals("*")) {
-            List<String> columns = new ArrayList<>(tableResult.getHeaderValues());
-            for (String attr : attributes) {
-                if (columns.contains(attr)) {
-                    columns.remove(attr);
-                } else {
-                    throw new DatabaseOperationException(" Column not found");
+        WriteAheadLog wal = getWriteAheadLog();
+        Lock statementLock = wal.getStatementLock();
+        Lock lock = TableLockManager.getLock(tableFile).writeLock();
+        long lsn;
+        statementLock.lock();
+        lock.lock();
+        try {
+            // A cached table takes the row in memory; otherwise only the header is needed
+            Table cached = TableCache.peek(tableFile);
+            Table table = cached;
+            if (table == null) {
+                table = new Table();
+                table.readHeaderData(tableFile);
+            }
+            if (values.size() < table.getHeaders().size() - 1) {
+                throw new DatabaseOperationException(" Insert failed: expected "
+                        + (table.getHeaders().size() - 1) + " values");
+            }
+            TableMetadata metadata = TableMetadata.forTable(tableFile);
+            Map<String, ColumnType> declaredTypes = metadata.getColumnTypes();
+            for (int i = 1; i < table.getHeaders().size(); i++) {
+                String column = table.getHeaders().get(i).getName();
+                ColumnType type = declaredTypes.get(column);
+                if (type != null && !type.accepts(values.get(i - 1))) {
+                    throw new DatabaseOperationException(" Insert failed: " + column + " expects " + type + " values");
                 }
             }
-            for (String col : columns) {
-                tableResult.deleteColumn(col);
+            Row row = new Row(table.getWidth());
+            row.setValue(table.getHeaders().get(0), String.valueOf(metadata.allocateId()));
+            for (int i = 1; i < table.getHeaders().size(); i++) {
+                row.setValue(table.getHeaders().get(i), values.get(i - 1));
             }
-        }
-
-        // Process each row.
-        List<Row> newRows = new ArrayList<>();
-
-        for (int i = 0; i < table.getRows().size(); i++) {
-
-            if (evaluateMultipleConditions(condition,
-                    table.getHeaderValues().stream().toList().toArray(new String[0]),
-                    table.getRow(i).getRowValues().stream().toList().toArray(new String[0]))) {
-                newRows.add(tableResult.getRows().get(i));
+            // Logged before the table or its file changes, so a failed append leaves both as they were
+            lsn = wal.append(LogRecord.insert(tableName, row.getRowValues(table.getHeaders())));
+            if (cached != null && TableCache.pin(tableFile, cached)) {
+                cached.addRow(row);
+                TableCache.recordAppend(tableFile, row);
+            } else {
+                // Append the line straight away, the log record covers it until the next checkpoint;
+                // the record is forced to disk first, even under ASYNC, as the append writes into the file
+                wal.sync(lsn);
+                table.appendRowToFile(tableFile, row);
+                wal.appendedDirectly(tableFile);
             }
+            TableIndexes.forTable(tableFile).add(row, table);
+        } finally {
+            lock.unlock();
+            statementLock.unlock();
         }
-
-        tableResult.setRows(newRows);
-        Logger.logResult("\n");
-        Logger.logResult(tableResult.toString());
+        wal.commit(lsn);
         return Result.SUCCESS;
     }
 
-    private boolean evaluateMultipleConditions(String condition, String[] header, String[] row) throws DatabaseOperationException {
-        if (condition == null || condition.trim().isEmpty()) {
-            return true;
-        }
-
-        if (!condition.contains("(") && !condition.contains(")")) {
-            return evaluateSingleCondition(condition, header, row);
-        }
-
-        Pattern p = Pattern.compile("\\(([^)]+)\\)");
-        Matcher m = p.matcher(condition);
-        List<String> conditions = new ArrayList<>();
-        while (m.find()) {
-            conditions.add(m.group(1).trim());
-        }
-
-        String upperCond = condition.toUpperCase();
-        boolean useOr = upperCond.contains(" OR ");
+    /**
+     * Replies with the matching rows, grouped and aggregated if the select list or a GROUP BY asks
+     * for it, sorted if there is an ORDER BY, then skipping the first {@code offset} and stopping
+     * after {@code limit}. Unsorted and ungrouped, the scan stops reading the table as soon as the
+     * last row wanted has been read; sorted, only the rows up to the limit are kept while sorting.
+     * The reply is collected under the table's read lock and sent after it is released.
+     */
+    public Result selectFromTable(SelectStatement select) throws DatabaseOperationException {
+        checkActiveDatabase();
+        File tableFile = getTableFile(select.tableName());
+        Lock lock = TableLockManager.getLock(tableFile).readLock();
+        OutputSink sink = new OutputSink(logger, tableFile.getParentFile());
+        lock.lock();
+        try {
+            // A table too large to ever be cached is streamed from its file rather than loaded whole
+            Table table = TableCache.peek(tableFile);
+            boolean streamed = table == null && tableFile.length() > Config.getTableCacheBytes();
+            if (streamed) {
+                table = new Table();
+                table.readHeaderData(tableFile);
+            } else if (table == null) {
+                table = TableCache.getTable(tableFile);
+            }
 
-        if (conditions.isEmpty()) {
-            return evaluateSingleCondition(condition, header, row);
-        }
+            List<String> attributes = select.attributes();
+            List<Header> projection = new ArrayList<>(table.getHeaders());
+            List<HashAggregate.Output> aggregateOutputs = null;
+            Header groupKey = null;
+            if (select.isAggregating()) {
+                if (select.groupBy() != null) {
+                    groupKey = requireColumn(table, select.groupBy());
+                }
+                aggregateOutputs = aggregateOutputs(table, select, groupKey);
+            } else if (!attributes.get(0).equals("*")) {
+                // Determine which columns to output, keeping the table's column order
+                List<String> columns = new ArrayList<>(table.getHeaderValues());
+                for (String attr : attributes) {
+                    if (columns.contains(attr)) {
+                        columns.remove(attr);
+                    } else {
+                        throw new DatabaseOperationException(" Column not found");
+                    }
+                }
+                projection.removeIf(header -> columns.contains(header.getName()));
+            }
 
-        if (useOr) {
-            for (String cond : conditions) {
-                if (evaluateSingleCondition(cond, header, row)) {
-                    return true;
+            // Binding has already validated the condition
+            Condition condition = select.condition();
+            Predicate<Row> filter = condition == null ? null : condition.bind(table);
+            QueryOperator plan;
+            if (streamed) {
+                // The scan tests the condition itself, decoding the rest of a row only once it matches
+                plan = new FileScan(tableFile, table, columnsRead(table, select, projection, groupKey, aggregateOutputs),
+                        filter, condition == null ? Set.of() : condition.columns(table));
+            } else {
+                List<Row> candidates = findIndexedRows(tableFile, table, condition);
+                plan = new TableScan(table.getHeaders(), candidates != null ? candidates : table.getRows());
+                if (filter != null) {
+                    plan = new Filter(plan, filter);
                 }
             }
-            return false;
-        } else {
-            for (String cond : conditions) {
-                if (!evaluateSingleCondition(cond, header, row)) {
-                    return false;
+            if (aggregateOutputs != null) {
+                plan = new HashAggregate(plan, groupKey, aggregateOutputs, tableFile.getParentFile());
+                projection = plan.getHeaders();
+            }
+            OrderBy orderBy = select.orderBy();
+            if (orderBy != null) {
+                // After grouping, only the output columns are left to sort on
+                Header sortKey = plan.getHeaders().stream()
+                        .filter(header -> header.getName().equals(orderBy.column())).findFirst().orElse(null);
+                if (sortKey == null) {
+                    plan.close();
+                    throw new DatabaseOperationException(" Column not found");
                 }
+                long limit = select.limit();
+                long offset = select.offset();
+                long keep = limit == Long.MAX_VALUE || offset > Long.MAX_VALUE - limit ? Long.MAX_VALUE : offset + limit;
+                plan = new Sort(plan, sortKey, orderBy.descending(), keep, tableFile.getParentFile());
             }
-            return true;
+            if (select.offset() > 0 || select.limit() < Long.MAX_VALUE) {
+                plan = new Limit(plan, select.offset(), select.limit());
+            }
+            sink.collect(new Project(plan, projection));
+        } finally {
+            lock.unlock();
         }
+        // Sent only once the lock is released, so a client slow to read can't hold up writers
+        sink.send();
+        return Result.SUCCESS;
     }
 
-    private boolean evaluateSingleCondition(String cond, String[] header, String[] row) throws DatabaseOperationException {
-
-        Pattern conditionPattern = Pattern.compile("([a-zA-Z_][a-zA-Z0-9_]*)\\s*(==|>|<|>=|<=|!=|LIKE)\\s*(.+)", Pattern.CASE_INSENSITIVE);
-        Matcher matcher = conditionPattern.matcher(cond);
-        if (matcher.matches()) {
-            String condAttr = matcher.group(1);
-            String condOperator = matcher.group(2);
-            String condValue = matcher.group(3).trim();
-            condValue = condValue.replaceAll("^'|'$", "");
-            int colIndex = -1;
-            for (int i = 0; i < header.length; i++) {
-                if (header[i].equalsIgnoreCase(condAttr)) {
-                    colIndex = i;
-                    break;
-                }
+    /**
+     * The output columns of a grouped or aggregated SELECT, in select list order. Every column must
+     * either be aggregated or be the one grouped on.
+     */
+    private static List<HashAggregate.Output> aggregateOutputs(Table table, SelectStatement select, Header groupKey)
+            throws DatabaseOperationException {
+        List<HashAggregate.Output> outputs = new ArrayList<>();
+        for (String attribute : select.attributes()) {
+            Aggregate aggregate = select.aggregates().get(attribute);
+            if (aggregate != null) {
+                Header argument = aggregate.column() == null ? null : requireColumn(table, aggregate.column());
+                outputs.add(new HashAggregate.Output(attribute, aggregate.function(), argument));
+            } else if (groupKey != null && groupKey.getName().equals(attribute)) {
+                outputs.add(new HashAggregate.Output(attribute, null, null));
+            } else {
+                throw new DatabaseOperationException(" Column must be grouped or aggregated: " + attribute);
             }
-            if (colIndex == -1) {
-                throw new DatabaseOperationException(" Condition attribute not found: " + condAttr);
+        }
+        return outputs;
+    }
+
+    /**
+     * The table columns a SELECT reads from rows that pass its condition: those it outputs, groups
+     * by, aggregates or sorts by.
+     */
+    private static Set<Header> columnsRead(Table table, SelectStatement select, List<Header> projection,
+                                           Header groupKey, List<HashAggregate.Output> aggregateOutputs) {
+        Set<Header> columns = new HashSet<>();
+        if (aggregateOutputs != null) {
+            if (groupKey != null) {
+                columns.add(groupKey);
             }
-            String cellValue = row.length > colIndex ? row[colIndex] : "";
-            return evaluateCondition(cellValue, condOperator, condValue);
+            aggregateOutputs.stream().map(HashAggregate.Output::argument).filter(Objects::nonNull).forEach(columns::add);
         } else {
-            throw new DatabaseOperationException(" Invalid condition format: " + cond);
+            columns.addAll(projection);
+            if (select.orderBy() != null && table.getColumn(select.orderBy().column()) != null) {
+                columns.add(table.getColumn(select.orderBy().column()));
+            }
         }
+        return columns;
     }
 
-    private boolean evaluateCondition(String cellValue, String operator, String condValue) {
-        try {
-            double dCell = Double.parseDouble(cellValue);
-            double dCond = Double.parseDouble(condValue);
-            return switch (operator) {
-                case "==" -> dCell == dCond;
-                case "!=" -> dCell != dCond;
-                case ">" -> dCell > dCond;
-                case "<" -> dCell < dCond;
-                case ">=" -> dCell >= dCond;
-                case "<=" -> dCell <= dCond;
-                default -> false;
-            };
-        } catch (NumberFormatException e) {
-            if (operator.equalsIgnoreCase("LIKE")) {
-                return cellValue.contains(condValue);
-            } else if (operator.equals("==")) {
-                return cellValue.equals(condValue);
-            } else if (operator.equals("!=")) {
-                return !cellValue.equals(condValue);
-            } else {
-                int cmp = cellValue.compareTo(condValue);
-                return switch (operator) {
-                    case ">" -> cmp > 0;
-                    case "<" -> cmp < 0;
-                    case ">=" -> cmp >= 0;
-                    case "<=" -> cmp <= 0;
-                    default -> false;
-                };
-            }
+    private static Header requireColumn(Table table, String column) throws DatabaseOperationException {
+        Header header = table.getColumn(column);
+        if (header == null) {
+            throw new DatabaseOperationException(" Column not found");
         }
+        return header;
     }
 
     public Result dropDatabase(String dbName) {
         File dbDir = new File(DATABASE_DIR, dbName);
         if (dbDir.exists()) {
+            try {
+                WriteAheadLog.close(dbDir, false);
+            } catch (DatabaseOperationException e) {
+                // The folder is about to be deleted along with the log
+            }
+            TableCache.invalidateDatabase(dbDir);
+            TableMetadata.forgetDatabase(dbDir);
+            TableIndexes.forgetDatabase(dbDir);
+            PlanCache.invalidateAll();
             deleteDirectory(dbDir);
             return Result.SUCCESS;
         } else {
-            Logger.logResult(" Database does not exist: " + dbName);
+            logger.logResult(" Database does not exist: " + dbName);
             return Result.FAILURE;
         }
     }
@@ -258,11 +381,29 @@ public class DatabaseOperationHandler {
     public Result dropTable(String tableName) throws DatabaseOperationException {
         checkActiveDatabase();
         File tableFile = getTableFile(tableName);
-        if (tableFile.exists() && tableFile.delete()) {
-            return Result.SUCCESS;
+        WriteAheadLog wal = getWriteAheadLog();
+        Lock statementLock = wal.getStatementLock();
+        Lock lock = TableLockManager.getLock(tableFile).writeLock();
+        long lsn;
+        statementLock.lock();
+        lock.lock();
+        try {
+            // The file goes first, so a drop that fails leaves the table, its sidecars and the log untouched
+            if (!tableFile.exists() || !tableFile.delete()) {
+                logger.logResult(" Table does not exist: " + tableName);
+                return Result.FAILURE;
+            }
+            TableCache.invalidate(tableFile);
+            TableIndexes.delete(tableFile);
+            TableMetadata.delete(tableFile);
+            PlanCache.invalidateTable(tableName);
+            lsn = wal.append(LogRecord.dropTable(tableName));
+        } finally {
+            lock.unlock();
+            statementLock.unlock();
         }
-        Logger.logResult(" Table does not exist: " + tableName);
-        return Result.FAILURE;
+        wal.commit(lsn);
+        return Result.SUCCESS;
     }
 
     private void deleteDirectory(File directory) {
@@ -279,190 +420,302 @@ public class DatabaseOperationHandler {
         directory.delete();
     }
 
-    public Result deleteFromTable(String tableName, String condition) throws DatabaseOperationException {
+    public Result deleteFromTable(String tableName, Condition condition) throws DatabaseOperationException {
         checkActiveDatabase();
         File tableFile = getTableFile(tableName);
-
-        Table table = new Table();
-        table.readTableData(tableFile);
-
-        // Parse condition, if provided.
-        Condition result = getCondition(condition, table);
-
-        for (int i = 0; i < table.getRows().size(); i++) {
-            String cellValue = table.getRows().get(i).getColumnValue(table.getColumn(result.attribute()));
-            if (evaluateCondition(cellValue, result.operator(), result.value())) {
-                table.deleteRow(i);
-                i--;
+        WriteAheadLog wal = getWriteAheadLog();
+        Lock statementLock = wal.getStatementLock();
+        Lock lock = TableLockManager.getLock(tableFile).writeLock();
+        long lsn = 0;
+        statementLock.lock();
+        lock.lock();
+        try {
+            Table table = TableCache.getTable(tableFile);
+
+            Predicate<Row> filter = condition.bind(table);
+            Header idHeader = table.getColumn("id");
+            TableIndexes indexes = TableIndexes.forTable(tableFile);
+            List<Row> candidates = findIndexedRows(tableFile, table, condition);
+
+            QueryOperator scan = new TableScan(table.getHeaders(), candidates != null ? candidates : table.getRows());
+            List<Row> removed = new Filter(scan, filter).toList();
+            Map<String, Row> deletedRows = new HashMap<>();
+            for (Row row : removed) {
+                deletedRows.put(row.getColumnValue(idHeader), null);
             }
+            if (!deletedRows.isEmpty()) {
+                // Logged before the table changes, so a failed append leaves it as it was
+                lsn = wal.append(LogRecord.delete(tableName, new ArrayList<>(deletedRows.keySet())));
+                table.removeRows(removed);
+                for (Row row : removed) {
+                    indexes.remove(row, table);
+                }
+                storeChange(wal, lsn, tableFile, table, deletedRows);
+            }
+        } finally {
+            lock.unlock();
+            statementLock.unlock();
         }
-
-        table.writeTableToFile(tableFile);
-
+        wal.commit(lsn);
         return Result.SUCCESS;
     }
 
-    private static Condition getCondition(String condition, Table table) throws DatabaseOperationException {
-        String condOperator = null;
-        String condValue = null;
-        String condAttr = null;
-        if (condition != null && !condition.isEmpty()) {
-            // Expecting format: [AttributeName] <Comparator> [Value]
-            Pattern conditionPattern = Pattern.compile(
-                    "([a-zA-Z_][a-zA-Z0-9_]*)\\s*(==|>|<|>=|<=|!=|LIKE)\\s*(.+)", Pattern.CASE_INSENSITIVE);
-            Matcher matcher = conditionPattern.matcher(condition);
-            if (matcher.matches()) {
-                condAttr = matcher.group(1);
-                condOperator = matcher.group(2);
-                condValue = matcher.group(3).trim();
-                // Remove surrounding quotes if present.
-                condValue = condValue.replaceAll("^'|'$", "");
-                // Find condition attribute index.
-                if (!table.containsColumn(condAttr)) {
-                    throw new DatabaseOperationException(" Condition attribute not found: " + condAttr);
-                }
-            } else {
-                throw new DatabaseOperationException(" Unsupported condition format: " + condition);
+    /**
+     * Rows that can satisfy {@code condition} according to the table's id lookup or an index, in id
+     * order. Only a single {@code id == value} or a comparison on an indexed column whose index can
+     * answer the operator qualifies; for anything else this returns null and the caller scans the
+     * whole table. The rows still need the condition applied to them.
+     */
+    private List<Row> findIndexedRows(File tableFile, Table table, Condition condition) throws DatabaseOperationException {
+        if (!(condition instanceof Condition.Comparison comparison)) {
+            return null;
+        }
+        if ("id".equals(comparison.attribute()) && comparison.operator() == Condition.Operator.EQUALS
+                && table.canLookupId(comparison.value())) {
+            Row row = table.getRowById(comparison.value());
+            return row == null ? List.of() : List.of(row);
+        }
+        Index index = TableIndexes.forTable(tableFile).get(comparison.attribute());
+        Collection<String> ids = index == null ? null
+                : index.lookup(comparison.operator().getSymbol(), comparison.value());
+        if (ids == null) {
+            return null;
+        }
+        List<Row> rows = new ArrayList<>();
+        for (String id : ids) {
+            Row row = table.getRowById(id);
+            if (row != null) {
+                rows.add(row);
             }
+        }
+        Header idHeader = table.getColumn("id");
+        rows.sort(Comparator.comparingLong(row -> parseId(row.getColumnValue(idHeader))));
+        return rows;
+    }
 
-            if (condAttr == null || condOperator == null || condValue == null) {
-                throw new DatabaseOperationException(" Unsupported condition format: " + condition);
-            }
+    private static long parseId(String id) {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
         }
-        return new Condition(condOperator, condValue, condAttr);
     }
 
-    public Result alterTable(String tableName, String alterationType, String attributeName) throws DatabaseOperationException {
+    public Result createIndex(String tableName, String column, String indexType) throws DatabaseOperationException {
         checkActiveDatabase();
+        IndexType type = IndexType.fromName(indexType);
         File tableFile = getTableFile(tableName);
-
-        Table table = new Table();
-        table.readTableData(tableFile);
-
-        if (alterationType.equalsIgnoreCase("ADD")) {
-            table.addColumn(attributeName);
-        } else if (alterationType.equalsIgnoreCase("DROP")) {
-            table.deleteColumn(attributeName);
+        Lock statementLock = getWriteAheadLog().getStatementLock();
+        Lock lock = TableLockManager.getLock(tableFile).writeLock();
+        statementLock.lock();
+        lock.lock();
+        try {
+            Table table = TableCache.getTable(tableFile);
+            if (!table.containsColumn(column)) {
+                throw new DatabaseOperationException(" Column not found: " + column);
+            }
+            TableIndexes.forTable(tableFile).create(column, type, table);
+            return Result.SUCCESS;
+        } finally {
+            lock.unlock();
+            statementLock.unlock();
         }
-        table.writeTableToFile(tableFile);
-        return Result.SUCCESS;
     }
 
-    public Result updateTable(String tableName, Map<String, String> nameValuePairs, String condition) throws DatabaseOperationException {
+    public Result dropIndex(String tableName, String column) throws DatabaseOperationException {
         checkActiveDatabase();
         File tableFile = getTableFile(tableName);
+        Lock statementLock = getWriteAheadLog().getStatementLock();
+        Lock lock = TableLockManager.getLock(tableFile).writeLock();
+        statementLock.lock();
+        lock.lock();
+        try {
+            TableIndexes.forTable(tableFile).drop(column);
+            return Result.SUCCESS;
+        } finally {
+            lock.unlock();
+            statementLock.unlock();
+        }
+    }
 
-        Table table = new Table();
-        table.readTableData(tableFile);
-
-        // Parse condition, if provided.
-        Condition result = getCondition(condition, table);
-        boolean updated = false;
-
-        for (int i = 0; i < table.getRows().size(); i++) {
-            String cellValue = table.getRows().get(i).getColumnValue(table.getColumn(result.attribute()));
-            if (evaluateCondition(cellValue, result.operator(), result.value())) {
-                for (Map.Entry<String, String> entry : nameValuePairs.entrySet()) {
-                    String key = entry.getKey();
-                    String value = entry.getValue();
-                    if (!table.containsColumn(key)) {
-                        throw new DatabaseOperationException(" Update failed column doesn't exist: " + key);
-                    }
-                    updated = true;
-                    table.updateRow(i, key, value);
+    public Result alterTable(String tableName, String alterationType, String attributeName) throws DatabaseOperationException {
+        checkActiveDatabase();
+        File tableFile = getTableFile(tableName);
+        WriteAheadLog wal = getWriteAheadLog();
+        Lock statementLock = wal.getStatementLock();
+        Lock lock = TableLockManager.getLock(tableFile).writeLock();
+        long lsn = 0;
+        statementLock.lock();
+        lock.lock();
+        try {
+            Table table = TableCache.getTable(tableFile);
+
+            TableIndexes indexes = TableIndexes.forTable(tableFile);
+            if (alterationType.equalsIgnoreCase("ADD")) {
+                lsn = wal.append(LogRecord.addColumn(tableName, attributeName));
+                table.addColumn(attributeName);
+                storeChange(wal, lsn, tableFile, table, null);
+            } else if (alterationType.equalsIgnoreCase("DROP")) {
+                if (!table.containsColumn(attributeName)) {
+                    throw new DatabaseOperationException(" Table operation failed");
+                }
+                lsn = wal.append(LogRecord.dropColumn(tableName, attributeName));
+                table.deleteColumn(attributeName);
+                if (indexes.get(attributeName) != null) {
+                    indexes.drop(attributeName);
                 }
+                TableMetadata metadata = TableMetadata.forTable(tableFile);
+                Map<String, ColumnType> declaredTypes = metadata.getColumnTypes();
+                Set<String> dictionaryColumns = metadata.getDictionaryColumns();
+                boolean typed = declaredTypes.remove(attributeName) != null;
+                boolean encoded = dictionaryColumns.remove(attributeName);
+                if (typed || encoded) {
+                    metadata.setColumnTypes(declaredTypes);
+                    metadata.setDictionaryColumns(dictionaryColumns);
+                    metadata.save();
+                }
+                storeChange(wal, lsn, tableFile, table, null);
             }
+            // The file is rewritten, so the remaining indexes need a fresh stamp
+            indexes.markDirty();
+            PlanCache.invalidateTable(tableName);
+        } finally {
+            lock.unlock();
+            statementLock.unlock();
         }
-
-        if (!updated) {
-            throw new DatabaseOperationException(" Update failed value not found: " + condition);
-        }
-
-        table.writeTableToFile(tableFile);
-
+        wal.commit(lsn);
         return Result.SUCCESS;
     }
 
-    public Result joinTables(String tableName1, String tableName2, String attributeName1, String attributeName2) throws DatabaseOperationException {
-        checkActiveDatabase();
+    public Result prepareStatement(String name, PreparedStatement statement) {
+        session.addPreparedStatement(name, statement);
+        return Result.SUCCESS;
+    }
 
-        File tableFile1 = getTableFile(tableName1);
-        File tableFile2 = getTableFile(tableName2);
+    public Result executeStatement(String name, List<String> values) throws DatabaseOperationException {
+        PreparedStatement statement = session.getPreparedStatement(name);
+        if (statement == null) {
+            throw new DatabaseOperationException(" Prepared statement not found: " + name);
+        }
+        if (values.size() != statement.parameters()) {
+            throw new DatabaseOperationException(" Expected " + statement.parameters() + " parameter values but got "
+                    + values.size());
+        }
+        return statement.bind(values).execute(this);
+    }
 
-        Table table1 = new Table();
-        table1.readTableData(tableFile1);
-        Table table2 = new Table();
-        table2.readTableData(tableFile2);
-        Table resultTable = new Table();
+    public Result updateTable(String tableName, Map<String, String> nameValuePairs, Condition condition) throws DatabaseOperationException {
+        checkActiveDatabase();
+        File tableFile = getTableFile(tableName);
+        WriteAheadLog wal = getWriteAheadLog();
+        Lock statementLock = wal.getStatementLock();
+        Lock lock = TableLockManager.getLock(tableFile).writeLock();
+        long lsn;
+        statementLock.lock();
+        lock.lock();
+        try {
+            Table table = TableCache.getTable(tableFile);
 
-        // Add id column
-        resultTable.addColumn("id");
+            Predicate<Row> filter = condition.bind(table);
 
-        try {
-            // Add table 1 headers
-            for (int i = 1; i < table1.getHeaders().size(); i++) {
-                if (!table1.getHeader(i).getName().equals(attributeName1)) {
-                    resultTable.addColumn(tableName1 + "." + table1.getHeader(i).getName());
+            // Everything is validated before the shared table is touched
+            List<Row> candidates = findIndexedRows(tableFile, table, condition);
+            QueryOperator scan = new TableScan(table.getHeaders(), candidates != null ? candidates : table.getRows());
+            List<Row> matches = new Filter(scan, filter).toList();
+            if (matches.isEmpty()) {
+                throw new DatabaseOperationException(" Update failed value not found: " + condition);
+            }
+            for (String key : nameValuePairs.keySet()) {
+                if (!table.containsColumn(key)) {
+                    throw new DatabaseOperationException(" Update failed column doesn't exist: " + key);
                 }
             }
-
-            // Add table 2 headers
-            for (int i = 1; i < table2.getHeaders().size(); i++) {
-                if (!table2.getHeader(i).getName().equals(attributeName2)) {
-                    resultTable.addColumn(tableName2 + "." + table2.getHeader(i).getName());
+            TableMetadata metadata = TableMetadata.forTable(tableFile);
+            Map<String, ColumnType> declaredTypes = metadata.getColumnTypes();
+            for (Map.Entry<String, String> pair : nameValuePairs.entrySet()) {
+                ColumnType type = declaredTypes.get(pair.getKey());
+                if (type != null && !type.accepts(pair.getValue())) {
+                    throw new DatabaseOperationException(" Update failed: " + pair.getKey() + " expects " + type + " values");
+                }
+            }
+            String newId = nameValuePairs.get("id");
+            if (newId != null) {
+                // Rows written in place or redone from the log are found by id, so ids must stay unique
+                boolean unique = matches.size() == 1 && table.canLookupId(newId);
+                Row holder = unique ? table.getRowById(newId) : null;
+                if (!unique || (holder != null && holder != matches.get(0))) {
+                    throw new DatabaseOperationException(" Update failed: id must be a whole number no other row has");
+                }
+                // Ids handed out later must not reuse it
+                long id = Long.parseLong(newId);
+                if (id >= metadata.getNextId()) {
+                    metadata.setNextId(id + 1);
+                    metadata.save();
                 }
             }
 
-            // Perform Join
-            int newId = 1;
-            int row = 0;
-            for (int i = 0; i < table1.getRows().size(); i++) {
-                String TableOneCellValue = table1.getRows().get(i).getColumnValue(table1.getColumn(attributeName1));
-                for (int j = 0; j < table2.getRows().size(); j++) {
-                    String TableTwoCellValue = table2.getRows().get(j).getColumnValue(table2.getColumn(attributeName2));
-                    if (TableOneCellValue.equals(TableTwoCellValue)) {
-                        resultTable.addNewRow();
-                        resultTable.updateRow(row, "id", String.valueOf(newId++));
-                        Row row1 = table1.getRow(i);
-                        if (attributeName1.equals("id")) {
-                            row1.deleteHeaderValue(attributeName1);
-                        } else {
-                            row1.deleteHeaderValue("id");
-                            row1.deleteHeaderValue(attributeName1);
-                        }
-                        for (int l = 0; l < row1.getRowValues().size(); l++) {
-                            resultTable.updateRow(row,
-                                    tableName1 + "." + row1.getRowHeaderValues().get(l),
-                                    String.valueOf(row1.getRowValues().get(l)));
-                        }
-
-                        Row row2 = table2.getRow(j);
-                        if (attributeName2.equals("id")) {
-                            row2.deleteHeaderValue(attributeName2);
-                        } else {
-                            row2.deleteHeaderValue("id");
-                            row2.deleteHeaderValue(attributeName2);
-                        }
-                        for (int l = 0; l < row2.getRowValues().size(); l++) {
-                            resultTable.updateRow(row,
-                                    tableName2 + "." + row2.getRowHeaderValues().get(l),
-                                    String.valueOf(row2.getRowValues().get(l)));
-                        }
-                        row++;
-                    }
+            List<String> columns = new ArrayList<>(nameValuePairs.keySet());
+            List<String> values = columns.stream().map(nameValuePairs::get).toList();
+            Header idHeader = table.getColumn("id");
+            TableIndexes indexes = TableIndexes.forTable(tableFile);
+            Map<String, Row> changedRows = new LinkedHashMap<>();
+            for (Row row : matches) {
+                changedRows.put(row.getColumnValue(idHeader), row);
+            }
+            // Logged before the table changes, so a failed append leaves it as it was
+            lsn = wal.append(LogRecord.update(tableName, columns, values, new ArrayList<>(changedRows.keySet())));
+            for (Row row : matches) {
+                indexes.remove(row, table);
+                for (int i = 0; i < columns.size(); i++) {
+                    row.updateRow(table.getColumn(columns.get(i)), values.get(i));
                 }
+                indexes.add(row, table);
             }
-        } catch (Exception e) {
-            throw new DatabaseOperationException(" Join failed " + e.getMessage());
+            if (columns.contains("id")) {
+                table.resetRowLookup();
+            }
+            storeChange(wal, lsn, tableFile, table, changedRows);
+        } finally {
+            lock.unlock();
+            statementLock.unlock();
         }
-
-        Logger.logResult("\n");
-        Logger.logResult(resultTable.toString());
+        wal.commit(lsn);
         return Result.SUCCESS;
-
     }
 
+    public Result joinTables(String tableName1, String tableName2, String attributeName1, String attributeName2) throws DatabaseOperationException {
+        checkActiveDatabase();
+
+        File tableFile1 = getTableFile(tableName1);
+        File tableFile2 = getTableFile(tableName2);
 
+        Lock lock1 = TableLockManager.getLock(tableFile1).readLock();
+        Lock lock2 = TableLockManager.getLock(tableFile2).readLock();
+        OutputSink sink = new OutputSink(logger, tableFile1.getParentFile());
+        lock1.lock();
+        lock2.lock();
+        try {
+            joinTables(sink, TableCache.getTable(tableFile1), TableCache.getTable(tableFile2),
+                    tableName1, tableName2, attributeName1, attributeName2);
+        } finally {
+            lock2.unlock();
+            lock1.unlock();
+        }
+        sink.send();
+        return Result.SUCCESS;
+    }
+
+    private void joinTables(OutputSink sink, Table table1, Table table2, String tableName1, String tableName2,
+                            String attributeName1, String attributeName2) throws DatabaseOperationException {
+        Header joinHeader1 = table1.getColumn(attributeName1);
+        Header joinHeader2 = table2.getColumn(attributeName2);
+        if (joinHeader1 == null || joinHeader2 == null) {
+            throw new DatabaseOperationException(" Join failed attribute not found");
+        }
+        // The joined rows are collected under the locks and sent after them
+        sink.collect(new Join(new TableScan(table1.getHeaders(), table1.getRows()), tableName1, joinHeader1,
+                new TableScan(table2.getHeaders(), table2.getRows()), tableName2, joinHeader2));
+    }
 }
 
 
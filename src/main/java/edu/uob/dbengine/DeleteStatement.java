@@ -0,0 +1,20 @@
+package edu.uob.dbengine;
+
+import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.outputprocessor.Result;
+
+import java.util.function.UnaryOperator;
+
+/** A parsed DELETE: the rows to remove. */
+public record DeleteStatement(String tableName, Condition condition) implements Statement {
+
+    @Override
+    public Result execute(DatabaseOperationHandler handler) throws DatabaseOperationException {
+        return handler.deleteFromTable(tableName, condition);
+    }
+
+    @Override
+    public DeleteStatement mapValues(UnaryOperator<String> values) {
+        return new DeleteStatement(tableName, condition.mapValues(values));
+    }
+}
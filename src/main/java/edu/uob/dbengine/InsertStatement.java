@@ -0,0 +1,24 @@
+package edu.uob.dbengine;
+
+import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.outputprocessor.Result;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/** A parsed INSERT: the values of the new row, in column order. */
+public record InsertStatement(String tableName, List<String> values) implements Statement {
+
+    @Override
+    public Result execute(DatabaseOperationHandler handler) throws DatabaseOperationException {
+        return handler.insertIntoTable(tableName, values);
+    }
+
+    @Override
+    public InsertStatement mapValues(UnaryOperator<String> mapper) {
+        List<String> mapped = new ArrayList<>(values.size());
+        values.forEach(value -> mapped.add(mapper.apply(value)));
+        return new InsertStatement(tableName, mapped);
+    }
+}
@@ -0,0 +1,5 @@
+package edu.uob.dbengine;
+
+/** The ORDER BY clause of a SELECT: the column to sort on and which way. */
+public record OrderBy(String column, boolean descending) {
+}
@@ -0,0 +1,149 @@
+package edu.uob.dbengine;
+
+import edu.uob.queryprocessor.Lexer;
+import edu.uob.utils.Config;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Parsed statements shared by every connection, so that a statement sent again with different
+ * values is neither lexed nor parsed. Statements are keyed on their shape: their text with each
+ * literal replaced by {@code ?}, found by a single pass over the characters. A cached statement is
+ * parsed from its shape as if it had been prepared, and run with the literals of each statement of
+ * that shape bound in.
+ *
+ * <p>Shapes that can't be prepared, such as ones with a literal where a column name belongs, are
+ * remembered as such and parsed in full each time. The least recently used shapes are dropped past
+ * {@link Config#getPlanCacheEntries}, and the shapes on a table are dropped when its schema changes.
+ */
+final class PlanCache {
+
+    private static final Set<String> CACHED_COMMANDS = Set.of("SELECT", "INSERT", "UPDATE", "DELETE");
+
+    private static final LinkedHashMap<String, PreparedStatement> plans = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** A statement's text with its literals replaced by {@code ?}, and the literals in the order written. */
+    record Shape(String text, List<String> literals) {
+    }
+
+    private PlanCache() {
+    }
+
+    /**
+     * The shape of {@code query}, splitting it the way the lexer would, or null if it isn't a
+     * statement that is cached. Counts after LIMIT and OFFSET are left in place, since the parser
+     * checks them.
+     */
+    static Shape shapeOf(String query) {
+        if (query == null || Config.getPlanCacheEntries() == 0) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder(query.length());
+        List<String> literals = new ArrayList<>();
+        String command = null;
+        String previousWord = "";
+        int length = query.length();
+        int i = 0;
+        while (i < length) {
+            char c = query.charAt(i);
+            int start = i;
+            if (Lexer.isWhitespace(c)) {
+                while (i < length && Lexer.isWhitespace(query.charAt(i))) {
+                    i++;
+                }
+                text.append(' ');
+                continue;
+            }
+            if (Lexer.isLetter(c)) {
+                while (i < length && (Lexer.isLetter(query.charAt(i)) || Lexer.isDigit(query.charAt(i))
+                        || query.charAt(i) == '_')) {
+                    i++;
+                }
+                previousWord = query.substring(start, i);
+                if (command == null) {
+                    command = previousWord.toUpperCase();
+                }
+                text.append(previousWord);
+                continue;
+            }
+            if (Lexer.isDigit(c) || ((c == '+' || c == '-') && i + 1 < length && Lexer.isDigit(query.charAt(i + 1)))) {
+                i++;
+                while (i < length && Lexer.isDigit(query.charAt(i))) {
+                    i++;
+                }
+                if (i + 1 < length && query.charAt(i) == '.' && Lexer.isDigit(query.charAt(i + 1))) {
+                    i += 2;
+                    while (i < length && Lexer.isDigit(query.charAt(i))) {
+                        i++;
+                    }
+                }
+                String number = query.substring(start, i);
+                if (previousWord.equalsIgnoreCase("LIMIT") || previousWord.equalsIgnoreCase("OFFSET")) {
+                    text.append(number);
+                } else {
+                    text.append('?');
+                    literals.add(number);
+                }
+            } else if (c == '\'') {
+                int end = query.indexOf('\'', i + 1);
+                if (end < 0) {
+                    return null;
+                }
+                text.append('?');
+                literals.add(query.substring(i + 1, end));
+                i = end + 1;
+            } else if (c == '?' || c == '\0') {
+                return null;
+            } else {
+                text.append(c);
+                i++;
+            }
+            previousWord = "";
+        }
+        return CACHED_COMMANDS.contains(command) ? new Shape(text.toString(), literals) : null;
+    }
+
+    /**
+     * The statement prepared from {@code text}, preparing it with {@code prepare} if it isn't cached;
+     * null if it can't be prepared.
+     */
+    static PreparedStatement get(String text, Function<String, PreparedStatement> prepare) {
+        synchronized (plans) {
+            if (plans.containsKey(text)) {
+                return plans.get(text);
+            }
+        }
+        // Parsed outside the lock; two connections racing on a new shape both parse it
+        PreparedStatement plan = prepare.apply(text);
+        synchronized (plans) {
+            plans.put(text, plan);
+            int capacity = Config.getPlanCacheEntries();
+            Iterator<Map.Entry<String, PreparedStatement>> eldest = plans.entrySet().iterator();
+            while (plans.size() > capacity && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return plan;
+    }
+
+    /** Drops the statements on {@code tableName}, after its columns change or it is dropped. */
+    static void invalidateTable(String tableName) {
+        synchronized (plans) {
+            plans.values().removeIf(plan -> plan != null && plan.template().tableName().equalsIgnoreCase(tableName));
+        }
+    }
+
+    /** Drops every statement, after a database is dropped. */
+    static void invalidateAll() {
+        synchronized (plans) {
+            plans.clear();
+        }
+    }
+}
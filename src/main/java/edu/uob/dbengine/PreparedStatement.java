@@ -0,0 +1,42 @@
+package edu.uob.dbengine;
+
+import edu.uob.exceptions.InvalidSyntaxException;
+import edu.uob.queryprocessor.Token;
+
+import java.util.List;
+
+/**
+ * A statement parsed with {@code ?} in place of some of its values, ready to be run with the values
+ * filled in. Binding swaps the values into the parsed statement, so it is never lexed or parsed again.
+ */
+public record PreparedStatement(Statement template, int parameters) {
+
+    /**
+     * Wraps a statement parsed from text holding {@code parameters} {@code ?}, checking that each of
+     * them stands for a value rather than, say, a column name.
+     */
+    public static PreparedStatement of(Statement template, int parameters) throws InvalidSyntaxException {
+        boolean[] found = new boolean[parameters];
+        template.mapValues(value -> {
+            int index = Token.parameterIndex(value);
+            if (index >= 0 && index < parameters) {
+                found[index] = true;
+            }
+            return value;
+        });
+        for (boolean parameter : found) {
+            if (!parameter) {
+                throw new InvalidSyntaxException(" Parameters can only stand for values");
+            }
+        }
+        return new PreparedStatement(template, parameters);
+    }
+
+    /** The statement with the {@code i}th {@code ?} replaced by {@code values.get(i)}. */
+    public Statement bind(List<String> values) {
+        return template.mapValues(value -> {
+            int index = Token.parameterIndex(value);
+            return index < 0 ? value : values.get(index);
+        });
+    }
+}
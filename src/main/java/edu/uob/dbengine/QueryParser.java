@@ -3,6 +3,7 @@ package edu.uob.dbengine;
 import edu.uob.exceptions.DatabaseOperationException;
 import edu.uob.exceptions.InvalidCommandException;
 import edu.uob.exceptions.InvalidSyntaxException;
+import edu.uob.executionprocessor.AggregateFunction;
 import edu.uob.outputprocessor.Logger;
 import edu.uob.outputprocessor.Result;
 import edu.uob.queryprocessor.Token;
@@ -13,26 +14,42 @@ import java.util.*;
 
 public class QueryParser {
 
+    private static final Set<TokenType> COMPARATORS = EnumSet.of(TokenType.EQUALS, TokenType.NOT_EQUALS,
+            TokenType.GREATER_THAN, TokenType.LESS_THAN, TokenType.GREATER_EQUALS, TokenType.LESS_EQUALS,
+            TokenType.LIKE);
+    private static final Set<TokenType> CONDITION_VALUES = EnumSet.of(TokenType.STRING_LITERAL,
+            TokenType.INTEGER_LITERAL, TokenType.FLOAT_LITERAL, TokenType.BOOLEAN_LITERAL, TokenType.NULL,
+            TokenType.IDENTIFIER, TokenType.PARAMETER);
+    /** Clauses that may follow the WHERE clause of a SELECT. */
+    private static final Set<TokenType> SELECT_CLAUSES = EnumSet.of(TokenType.GROUP, TokenType.ORDER, TokenType.LIMIT);
+
     private DatabaseOperationHandler operationHandler;
+    private Logger logger;
     private Tokenizer tokenizer;
     private String query;
 
-    public QueryParser(DatabaseOperationHandler operationHandler, String query) {
+    public QueryParser(DatabaseOperationHandler operationHandler, Logger logger, String query) {
         this.operationHandler = operationHandler;
+        this.logger = logger;
         this.query = query;
     }
 
     public Result parse() {
         if (query == null) {
-            Logger.logResult(" : Query is null");
+            logger.logResult(" : Query is null");
             return Result.FAILURE;
         } else {
             try {
+                PlanCache.Shape shape = PlanCache.shapeOf(query);
+                PreparedStatement plan = shape == null ? null : PlanCache.get(shape.text(), this::prepareShape);
+                if (plan != null) {
+                    return plan.bind(shape.literals()).execute(operationHandler);
+                }
                 tokenizer = new Tokenizer(query);
                 return parseCommandType();
             } catch (InvalidSyntaxException | InvalidCommandException | RuntimeException |
                      DatabaseOperationException e) {
-                Logger.logResult(e.getMessage());
+                logger.logResult(e.getMessage());
                 return Result.FAILURE;
             }
         }
@@ -44,23 +61,84 @@ public class QueryParser {
         if (token == null) {
             return Result.FAILURE;
         }
+        if (token.getType() != TokenType.PREPARE && tokenizer.getParameterCount() > 0) {
+            throw new InvalidSyntaxException(" Parameters are only allowed in PREPARE");
+        }
 
         return switch (token.getValue().toUpperCase()) {
             case "USE" -> parseUse();
             case "CREATE" -> parseCreate();
             case "DROP" -> parseDrop();
             case "ALTER" -> parseAlter();
-            case "INSERT" -> parseInsert();
-            case "SELECT" -> parseSelect();
-            case "UPDATE" -> parseUpdate();
-            case "DELETE" -> parseDelete();
+            case "INSERT" -> parseInsert().execute(operationHandler);
+            case "SELECT" -> parseSelect().execute(operationHandler);
+            case "UPDATE" -> parseUpdate().execute(operationHandler);
+            case "DELETE" -> parseDelete().execute(operationHandler);
             case "JOIN" -> parseJoin();
+            case "PREPARE" -> parsePrepare();
+            case "EXECUTE" -> parseExecute();
             default -> {
                 throw new InvalidCommandException(" Invalid command type: " + token.getValue());
             }
         };
     }
 
+    /** Prepares the shape of a statement sent in full, or returns null if it can't be prepared. */
+    private PreparedStatement prepareShape(String shape) {
+        try {
+            tokenizer = new Tokenizer(shape);
+            return prepareStatement();
+        } catch (InvalidSyntaxException | InvalidCommandException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // <Prepare> ::= PREPARE <StatementName> AS <Statement>
+    private Result parsePrepare() throws InvalidSyntaxException, InvalidCommandException {
+        Token name = tokenizer.nextToken();
+        tokenizer.expect(TokenType.IDENTIFIER, " Missing statement name");
+        tokenizer.nextToken(); // AS
+        tokenizer.expect(TokenType.AS, " Expected AS after statement name");
+        tokenizer.nextToken(); // AS
+        return operationHandler.prepareStatement(name.getValue(), prepareStatement());
+    }
+
+    /** Parses the statement at the current token, leaving each {@code ?} in it to be bound when it runs. */
+    private PreparedStatement prepareStatement() throws InvalidSyntaxException, InvalidCommandException {
+        Statement statement = switch (tokenizer.getCurrentToken().getType()) {
+            case SELECT -> parseSelect();
+            case INSERT -> parseInsert();
+            case UPDATE -> parseUpdate();
+            case DELETE -> parseDelete();
+            default -> throw new InvalidCommandException(" Only SELECT, INSERT, UPDATE and DELETE can be prepared");
+        };
+        return PreparedStatement.of(statement, tokenizer.getParameterCount());
+    }
+
+    // <Execute> ::= EXECUTE <StatementName> [ "(" [ <Value> { "," <Value> } ] ")" ]
+    private Result parseExecute() throws InvalidSyntaxException, DatabaseOperationException {
+        Token name = tokenizer.nextToken();
+        tokenizer.expect(TokenType.IDENTIFIER, " Missing statement name");
+        List<String> values = new ArrayList<>();
+        if (tokenizer.nextToken().getType() == TokenType.LEFT_PAREN) {
+            if (tokenizer.peekNextToken().getType() != TokenType.RIGHT_PAREN) {
+                do {
+                    Token value = tokenizer.nextToken();
+                    if (!CONDITION_VALUES.contains(value.getType())) {
+                        throw new InvalidSyntaxException(" Invalid parameter value: " + value.getValue());
+                    }
+                    values.add(value.getValue());
+                } while (tokenizer.nextToken().getType() == TokenType.COMMA);
+            } else {
+                tokenizer.nextToken(); // )
+            }
+            tokenizer.expect(TokenType.RIGHT_PAREN, " Missing ) after parameter values");
+            tokenizer.nextToken(); // )
+        }
+        tokenizer.expect(TokenType.END, " Unexpected syntax after EXECUTE");
+        return operationHandler.executeStatement(name.getValue(), values);
+    }
+
     private Result parseUse() throws InvalidSyntaxException, DatabaseOperationException {
         tokenizer.nextToken(); // USE
         TokenType type = tokenizer.getCurrentToken().getType();
@@ -74,6 +152,17 @@ public class QueryParser {
     private Result parseCreate() throws InvalidSyntaxException, DatabaseOperationException {
         tokenizer.nextToken(); // CREATE
         TokenType type = tokenizer.getCurrentToken().getType();
+        if (type == TokenType.INDEX) {
+            String[] target = parseIndexTarget();
+            String indexType = "HASH";
+            Token next = tokenizer.peekNextToken();
+            if (next != null && next.getType() == TokenType.USING) {
+                tokenizer.nextToken(); // USING
+                indexType = tokenizer.nextToken().getValue();
+                tokenizer.expect(TokenType.IDENTIFIER, " Missing index type");
+            }
+            return operationHandler.createIndex(target[0], target[1], indexType);
+        }
         boolean isValidType = (type == TokenType.DATABASE || type == TokenType.TABLE);
         boolean isNextTokenValid = tokenizer.peekNextToken().getType() != TokenType.IDENTIFIER;
         if (!isValidType) {
@@ -88,31 +177,50 @@ public class QueryParser {
         } else {
             Token tableName = tokenizer.nextToken();
             List<String> attributes = new ArrayList<>();
+            Map<String, String> columnTypes = new HashMap<>();
+            Set<String> dictionaryColumns = new LinkedHashSet<>();
             Token token = tokenizer.nextToken();
             if (token != null && token.getType() == TokenType.LEFT_PAREN) {
-                attributes = parseAttributeList();
+                attributes = parseAttributeList(columnTypes, dictionaryColumns);
                 Token closing = tokenizer.nextToken(); // )
                 if (closing.getType() != TokenType.RIGHT_PAREN) {
                     throw new InvalidSyntaxException(" Missing closing parenthesis in CREATE TABLE");
                 }
             }
-            return operationHandler.createTable(tableName.getValue(), attributes);
+            return operationHandler.createTable(tableName.getValue(), attributes, columnTypes, dictionaryColumns);
         }
     }
 
-    private List<String> parseAttributeList() {
+    // <AttributeName> [<Type>] [DICTIONARY] { , <AttributeName> [<Type>] [DICTIONARY] }
+    private List<String> parseAttributeList(Map<String, String> columnTypes, Set<String> dictionaryColumns) {
         List<String> attributes = new ArrayList<>();
         Token token = tokenizer.nextToken();
         attributes.add(token.getValue().strip());
+        parseColumnType(token, columnTypes, dictionaryColumns);
         while (tokenizer.peekNextToken() != null && tokenizer.peekNextToken().getType() == TokenType.COMMA) {
             tokenizer.nextToken(); // ,
             Token attr = tokenizer.nextToken();
             attributes.add(attr.getValue().strip());
+            parseColumnType(attr, columnTypes, dictionaryColumns);
         }
         return attributes;
     }
 
-    private Result parseInsert() throws InvalidSyntaxException, DatabaseOperationException {
+    private void parseColumnType(Token attribute, Map<String, String> columnTypes, Set<String> dictionaryColumns) {
+        if (tokenizer.peekNextToken().getType() == TokenType.IDENTIFIER && !isDictionaryWord(tokenizer.peekNextToken())) {
+            columnTypes.put(attribute.getValue().strip(), tokenizer.nextToken().getValue());
+        }
+        if (isDictionaryWord(tokenizer.peekNextToken())) {
+            tokenizer.nextToken(); // DICTIONARY
+            dictionaryColumns.add(attribute.getValue().strip());
+        }
+    }
+
+    private static boolean isDictionaryWord(Token token) {
+        return token != null && token.getType() == TokenType.IDENTIFIER && token.getValue().equalsIgnoreCase("DICTIONARY");
+    }
+
+    private InsertStatement parseInsert() throws InvalidSyntaxException {
         tokenizer.nextToken(); // INSERT
         tokenizer.expect(TokenType.INTO);
         tokenizer.nextToken(); // INTO
@@ -128,7 +236,7 @@ public class QueryParser {
         }
         tokenizer.nextToken(); // )
         tokenizer.expect(TokenType.RIGHT_PAREN);
-        return operationHandler.insertIntoTable(tableName.getValue(), values);
+        return new InsertStatement(tableName.getValue(), values);
     }
 
     private List<String> parseValueList() {
@@ -143,9 +251,10 @@ public class QueryParser {
         return values;
     }
 
-    private Result parseSelect() throws InvalidSyntaxException, DatabaseOperationException {
+    private SelectStatement parseSelect() throws InvalidSyntaxException {
         tokenizer.nextToken(); // SELECT
-        List<String> attributes = parseWildAttributeList();
+        Map<String, Aggregate> aggregates = new HashMap<>();
+        List<String> attributes = parseWildAttributeList(aggregates);
         if (attributes.isEmpty()) {
             throw new InvalidSyntaxException(" Missing attributes");
         }
@@ -153,40 +262,214 @@ public class QueryParser {
         tokenizer.expect(TokenType.FROM);
         Token tableName = tokenizer.nextToken(); // Tablename
         tokenizer.expect(TokenType.IDENTIFIER);
-        String condition = null;
+        Condition condition = null;
         Token token = tokenizer.nextToken(); // WHERE
         if (token != null && token.getType() == TokenType.WHERE) {
             tokenizer.nextToken(); // WHERE
-            condition = parseCondition();
+            condition = parseCondition(" Invalid condition format: ", SELECT_CLAUSES);
+        }
+        String groupBy = null;
+        if (tokenizer.match(TokenType.GROUP)) {
+            tokenizer.nextToken(); // GROUP
+            tokenizer.expect(TokenType.BY, " Expected BY after GROUP");
+            groupBy = tokenizer.nextToken().getValue();
+            tokenizer.expect(TokenType.IDENTIFIER, " Missing GROUP BY column");
+            tokenizer.nextToken(); // Column
+        }
+        OrderBy orderBy = null;
+        if (tokenizer.match(TokenType.ORDER)) {
+            orderBy = parseOrderBy();
+        }
+        long limit = Long.MAX_VALUE;
+        long offset = 0;
+        if (tokenizer.match(TokenType.LIMIT)) {
+            tokenizer.nextToken(); // LIMIT
+            limit = parseRowCount(" Invalid LIMIT: ");
+            if (tokenizer.match(TokenType.OFFSET)) {
+                tokenizer.nextToken(); // OFFSET
+                offset = parseRowCount(" Invalid OFFSET: ");
+            }
+            tokenizer.expect(TokenType.END, " Unexpected syntax after LIMIT");
+        }
+        if (!tokenizer.isAtEnd() && groupBy != null) {
+            throw new InvalidSyntaxException(" Unexpected syntax after GROUP BY");
+        }
+        return new SelectStatement(tableName.getValue(), attributes, aggregates, groupBy, condition, orderBy, offset,
+                limit);
+    }
+
+    // <OrderBy> ::= ORDER BY <SelectItem> [ ASC | DESC ]
+    private OrderBy parseOrderBy() throws InvalidSyntaxException {
+        tokenizer.nextToken(); // ORDER
+        tokenizer.expect(TokenType.BY, " Expected BY after ORDER");
+        tokenizer.nextToken(); // BY
+        tokenizer.expect(TokenType.IDENTIFIER, " Missing ORDER BY column");
+        Aggregate aggregate = parseAggregate();
+        String column = aggregate != null ? aggregate.toString() : tokenizer.getCurrentToken().getValue();
+        boolean descending = false;
+        Token direction = tokenizer.nextToken();
+        if (direction.getType() == TokenType.ASC || direction.getType() == TokenType.DESC) {
+            descending = direction.getType() == TokenType.DESC;
+            tokenizer.nextToken(); // ASC or DESC
+        }
+        if (!tokenizer.isAtEnd() && !tokenizer.match(TokenType.LIMIT)) {
+            throw new InvalidSyntaxException(" Unexpected syntax after ORDER BY");
         }
-        return operationHandler.selectFromTable(tableName.getValue(), attributes, condition);
+        return new OrderBy(column, descending);
     }
 
-    private String parseCondition() {
-        StringBuilder condition = new StringBuilder();
-        while (tokenizer.getCurrentToken() != null && tokenizer.getCurrentToken().getType() != TokenType.END) {
-            condition.append(tokenizer.getCurrentToken().getValue()).append(" ");
-            tokenizer.nextToken();
+    /**
+     * Parses {@code <Function> "(" ( "*" | <AttributeName> ) ")"} if the current token starts one,
+     * leaving the closing bracket as the current token; returns null, consuming nothing, otherwise.
+     */
+    private Aggregate parseAggregate() throws InvalidSyntaxException {
+        Token name = tokenizer.getCurrentToken();
+        if (name.getType() != TokenType.IDENTIFIER || tokenizer.peekNextToken().getType() != TokenType.LEFT_PAREN) {
+            return null;
+        }
+        AggregateFunction function = AggregateFunction.fromName(name.getValue());
+        if (function == null) {
+            throw new InvalidSyntaxException(" Unknown function: " + name.getValue());
+        }
+        tokenizer.nextToken(); // (
+        Token argument = tokenizer.nextToken();
+        String column;
+        if (argument.getType() == TokenType.ASTERISK && function.acceptsAllRows()) {
+            column = null;
+        } else if (argument.getType() == TokenType.IDENTIFIER) {
+            column = argument.getValue();
+        } else {
+            throw new InvalidSyntaxException(" Invalid argument to " + function + ": " + argument.getValue());
         }
-        return condition.toString().trim();
+        tokenizer.nextToken(); // Argument
+        tokenizer.expect(TokenType.RIGHT_PAREN, " Missing ) after " + function + " argument");
+        return new Aggregate(function, column);
     }
 
-    private List<String> parseWildAttributeList() {
+    // <RowCount> ::= <Digit> { <Digit> }
+    private long parseRowCount(String invalid) throws InvalidSyntaxException {
+        Token count = tokenizer.getCurrentToken();
+        if (count.getType() == TokenType.PARAMETER) {
+            throw new InvalidSyntaxException(invalid + "?");
+        }
+        if (count.getType() != TokenType.INTEGER_LITERAL || !Character.isDigit(count.getValue().charAt(0))) {
+            throw new InvalidSyntaxException(invalid + count.getValue());
+        }
+        tokenizer.nextToken(); // Count
+        try {
+            return Long.parseLong(count.getValue());
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Parses the rest of the statement as a condition, reporting anything malformed as
+     * {@code malformed} followed by the condition's text.
+     */
+    private Condition parseCondition(String malformed) throws InvalidSyntaxException {
+        return parseCondition(malformed, Set.of());
+    }
+
+    /** As {@link #parseCondition(String)}, for a condition that may be followed by one of {@code clauses}. */
+    private Condition parseCondition(String malformed, Set<TokenType> clauses) throws InvalidSyntaxException {
+        String text = tokenizer.remainingText(clauses);
+        try {
+            Condition condition = parseConditionList();
+            if (!tokenizer.isAtEnd() && !clauses.contains(tokenizer.getCurrentToken().getType())) {
+                throw new InvalidSyntaxException(malformed + text);
+            }
+            return condition;
+        } catch (InvalidSyntaxException e) {
+            throw new InvalidSyntaxException(malformed + text);
+        }
+    }
+
+    // <Condition> ::= <Conjunction> { OR <Conjunction> }
+    private Condition parseConditionList() throws InvalidSyntaxException {
+        List<Condition> operands = new ArrayList<>();
+        addOperand(operands, parseConjunction(), Condition.AnyOf.class);
+        while (tokenizer.match(TokenType.OR)) {
+            tokenizer.nextToken(); // OR
+            addOperand(operands, parseConjunction(), Condition.AnyOf.class);
+        }
+        return operands.size() == 1 ? operands.get(0) : new Condition.AnyOf(operands);
+    }
+
+    // <Conjunction> ::= <Operand> { AND <Operand> }
+    private Condition parseConjunction() throws InvalidSyntaxException {
+        List<Condition> operands = new ArrayList<>();
+        addOperand(operands, parseConditionOperand(), Condition.AllOf.class);
+        while (tokenizer.match(TokenType.AND)) {
+            tokenizer.nextToken(); // AND
+            addOperand(operands, parseConditionOperand(), Condition.AllOf.class);
+        }
+        return operands.size() == 1 ? operands.get(0) : new Condition.AllOf(operands);
+    }
+
+    /** Adds an operand, flattening a bracketed list of the same kind so all its parts can be reordered. */
+    private static void addOperand(List<Condition> operands, Condition operand, Class<? extends Condition> kind) {
+        if (operand instanceof Condition.AllOf allOf && kind == Condition.AllOf.class) {
+            operands.addAll(allOf.conditions());
+        } else if (operand instanceof Condition.AnyOf anyOf && kind == Condition.AnyOf.class) {
+            operands.addAll(anyOf.conditions());
+        } else {
+            operands.add(operand);
+        }
+    }
+
+    // <Operand> ::= "(" <Condition> ")" | <AttributeName> <Comparator> <Value>
+    private Condition parseConditionOperand() throws InvalidSyntaxException {
+        if (tokenizer.match(TokenType.LEFT_PAREN)) {
+            tokenizer.nextToken(); // (
+            Condition condition = parseConditionList();
+            tokenizer.expect(TokenType.RIGHT_PAREN);
+            tokenizer.nextToken(); // )
+            return condition;
+        }
+        Token attributeName = tokenizer.getCurrentToken();
+        tokenizer.expect(TokenType.IDENTIFIER);
+        Token comparator = tokenizer.nextToken();
+        Condition.Operator operator = COMPARATORS.contains(comparator.getType())
+                ? Condition.Operator.fromSymbol(comparator.getValue()) : null;
+        if (operator == null) {
+            throw new InvalidSyntaxException(" Invalid comparator");
+        }
+        Token value = tokenizer.nextToken();
+        if (!CONDITION_VALUES.contains(value.getType())) {
+            throw new InvalidSyntaxException(" Invalid value");
+        }
+        tokenizer.nextToken(); // Value
+        return Condition.Comparison.of(attributeName.getValue(), operator, value.getValue());
+    }
+
+    // <WildAttribList> ::= "*" | <SelectItem> { "," <SelectItem> }
+    // <SelectItem> ::= <AttributeName> | <Function> "(" ( "*" | <AttributeName> ) ")"
+    private List<String> parseWildAttributeList(Map<String, Aggregate> aggregates) throws InvalidSyntaxException {
         List<String> attributes = new ArrayList<>();
         Token token = tokenizer.getCurrentToken();
         if (token != null && token.getType() == TokenType.ASTERISK) {
             attributes.add(token.getValue().strip());
         } else {
-            attributes.add(token.getValue().strip());
+            attributes.add(parseSelectItem(aggregates));
             while (tokenizer.peekNextToken() != null && tokenizer.peekNextToken().getType() == TokenType.COMMA) {
                 tokenizer.nextToken(); // ,
-                Token value = tokenizer.nextToken();
-                attributes.add(value.getValue().strip());
+                tokenizer.nextToken();
+                attributes.add(parseSelectItem(aggregates));
             }
         }
         return attributes;
     }
 
+    private String parseSelectItem(Map<String, Aggregate> aggregates) throws InvalidSyntaxException {
+        Aggregate aggregate = parseAggregate();
+        if (aggregate == null) {
+            return tokenizer.getCurrentToken().getValue().strip();
+        }
+        aggregates.put(aggregate.toString(), aggregate);
+        return aggregate.toString();
+    }
+
     private Result parseDrop() throws InvalidSyntaxException, DatabaseOperationException {
         tokenizer.nextToken(); //DROP
         Token next = tokenizer.getCurrentToken();
@@ -196,11 +479,29 @@ public class QueryParser {
         } else if (next != null && next.getType() == TokenType.TABLE) {
             Token tableName = tokenizer.nextToken();
             return operationHandler.dropTable(tableName.getValue().trim());
+        } else if (next != null && next.getType() == TokenType.INDEX) {
+            String[] target = parseIndexTarget();
+            return operationHandler.dropIndex(target[0], target[1]);
         }
         throw new InvalidSyntaxException(" Invalid syntax in drop statement");
     }
 
-    private Result parseDelete() throws InvalidSyntaxException, DatabaseOperationException {
+    // INDEX ON <TableName> ( <AttributeName> )
+    private String[] parseIndexTarget() throws InvalidSyntaxException {
+        tokenizer.nextToken(); // INDEX
+        tokenizer.expect(TokenType.ON);
+        Token tableName = tokenizer.nextToken();
+        tokenizer.expect(TokenType.IDENTIFIER, " Missing Table Name");
+        tokenizer.nextToken(); // (
+        tokenizer.expect(TokenType.LEFT_PAREN);
+        Token attributeName = tokenizer.nextToken();
+        tokenizer.expect(TokenType.IDENTIFIER, " Missing attribute name");
+        tokenizer.nextToken(); // )
+        tokenizer.expect(TokenType.RIGHT_PAREN);
+        return new String[]{tableName.getValue(), attributeName.getValue()};
+    }
+
+    private DeleteStatement parseDelete() throws InvalidSyntaxException {
         tokenizer.nextToken(); // DELETE
         tokenizer.expect(TokenType.FROM);
         tokenizer.nextToken(); // FROM
@@ -209,11 +510,11 @@ public class QueryParser {
         tokenizer.nextToken(); // TableName
         tokenizer.expect(TokenType.WHERE);
         tokenizer.nextToken(); // WHERE
-        String condition = parseCondition();
-        if (condition.isEmpty()) {
+        if (tokenizer.isAtEnd()) {
             throw new InvalidSyntaxException(" Missing condition");
         }
-        return operationHandler.deleteFromTable(tableName.getValue(), condition);
+        Condition condition = parseCondition(" Unsupported condition format: ");
+        return new DeleteStatement(tableName.getValue(), condition);
     }
 
     private Result parseAlter() throws InvalidSyntaxException, DatabaseOperationException {
@@ -235,7 +536,7 @@ public class QueryParser {
         return operationHandler.alterTable(tableName.getValue(), alterationType.getValue(), attributeName.getValue());
     }
 
-    private Result parseUpdate() throws InvalidSyntaxException, DatabaseOperationException {
+    private UpdateStatement parseUpdate() throws InvalidSyntaxException {
         tokenizer.nextToken(); // UPDATE
         Token tableName = tokenizer.getCurrentToken();
         tokenizer.expect(TokenType.IDENTIFIER, " Expected table name");
@@ -245,13 +546,15 @@ public class QueryParser {
         tokenizer.nextToken(); // WHERE
         tokenizer.expect(TokenType.WHERE);
         tokenizer.nextToken();
-        tokenizer.expect(TokenType.IDENTIFIER);
-        String condition = parseCondition();
-        return operationHandler.updateTable(tableName.getValue(), nameValuePairs, condition);
+        if (!tokenizer.match(TokenType.LEFT_PAREN)) {
+            tokenizer.expect(TokenType.IDENTIFIER);
+        }
+        Condition condition = parseCondition(" Unsupported condition format: ");
+        return new UpdateStatement(tableName.getValue(), nameValuePairs, condition);
     }
 
     private Map<String, String> parseNameValueList() throws InvalidSyntaxException {
-        Map<String, String> nameValuePairs = new HashMap<>();
+        Map<String, String> nameValuePairs = new LinkedHashMap<>();
         String[] pair = parseNameValuePair();
         nameValuePairs.put(pair[0], pair[1]);
         while (tokenizer.peekNextToken() != null && tokenizer.peekNextToken().getType() == TokenType.COMMA) {
@@ -0,0 +1,36 @@
+package edu.uob.dbengine;
+
+import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.outputprocessor.Result;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * A parsed SELECT. {@code attributes} lists the output columns as written, or just {@code *};
+ * those naming an aggregate map to it in {@code aggregates}. {@code groupBy}, {@code condition} and
+ * {@code orderBy} are null when the clause is absent, and {@code limit} is {@link Long#MAX_VALUE}.
+ */
+public record SelectStatement(String tableName, List<String> attributes, Map<String, Aggregate> aggregates,
+                              String groupBy, Condition condition, OrderBy orderBy, long offset, long limit)
+        implements Statement {
+
+    public boolean isAggregating() {
+        return !aggregates.isEmpty() || groupBy != null;
+    }
+
+    @Override
+    public Result execute(DatabaseOperationHandler handler) throws DatabaseOperationException {
+        return handler.selectFromTable(this);
+    }
+
+    @Override
+    public SelectStatement mapValues(UnaryOperator<String> values) {
+        if (condition == null) {
+            return this;
+        }
+        return new SelectStatement(tableName, attributes, aggregates, groupBy, condition.mapValues(values), orderBy,
+                offset, limit);
+    }
+}
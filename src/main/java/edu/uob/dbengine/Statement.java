@@ -0,0 +1,21 @@
+package edu.uob.dbengine;
+
+import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.outputprocessor.Result;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * A parsed statement that reads or changes the rows of one table. Parsing is kept apart from
+ * running so that a statement can be prepared or cached once and then run many times, with its
+ * values swapped through {@link #mapValues}.
+ */
+public sealed interface Statement permits SelectStatement, InsertStatement, UpdateStatement, DeleteStatement {
+
+    String tableName();
+
+    Result execute(DatabaseOperationHandler handler) throws DatabaseOperationException;
+
+    /** The same statement with each value written in it, such as those compared with or inserted, replaced. */
+    Statement mapValues(UnaryOperator<String> values);
+}
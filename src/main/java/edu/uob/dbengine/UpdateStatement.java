@@ -0,0 +1,25 @@
+package edu.uob.dbengine;
+
+import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.outputprocessor.Result;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/** A parsed UPDATE: the new value of each column set, in the order written, and the rows to change. */
+public record UpdateStatement(String tableName, Map<String, String> nameValuePairs, Condition condition)
+        implements Statement {
+
+    @Override
+    public Result execute(DatabaseOperationHandler handler) throws DatabaseOperationException {
+        return handler.updateTable(tableName, nameValuePairs, condition);
+    }
+
+    @Override
+    public UpdateStatement mapValues(UnaryOperator<String> values) {
+        Map<String, String> mapped = new LinkedHashMap<>();
+        nameValuePairs.forEach((name, value) -> mapped.put(name, values.apply(value)));
+        return new UpdateStatement(tableName, mapped, condition.mapValues(values));
+    }
+}
@@ -0,0 +1,97 @@
+package edu.uob.dbmodel;
+
+import edu.uob.exceptions.DatabaseOperationException;
+
+/**
+ * What kind of values a column holds. Columns declared with a type only accept matching values;
+ * every column also has a type inferred from the values written to it, which only ever widens.
+ * Empty cells and {@code NULL} fit any type.
+ */
+public enum ColumnType {
+    INTEGER, DOUBLE, BOOLEAN, STRING;
+
+    public static ColumnType fromName(String name) throws DatabaseOperationException {
+        return switch (name.toUpperCase()) {
+            case "INT", "INTEGER" -> INTEGER;
+            case "DOUBLE", "FLOAT" -> DOUBLE;
+            case "BOOL", "BOOLEAN" -> BOOLEAN;
+            case "STRING", "TEXT" -> STRING;
+            default -> throw new DatabaseOperationException(" Unknown column type: " + name);
+        };
+    }
+
+    /** The narrowest type holding {@code value}, or null for an empty cell or {@code NULL}. */
+    public static ColumnType of(String value) {
+        return of(value, toNumber(value));
+    }
+
+    /** As {@link #of(String)}, given the value already parsed by {@link #toNumber}. */
+    public static ColumnType of(String value, double number) {
+        if (value == null || value.isEmpty() || value.equalsIgnoreCase("NULL")) {
+            return null;
+        }
+        if (value.equalsIgnoreCase("TRUE") || value.equalsIgnoreCase("FALSE")) {
+            return BOOLEAN;
+        }
+        if (Double.isNaN(number)) {
+            return STRING;
+        }
+        return isInteger(value) ? INTEGER : DOUBLE;
+    }
+
+    /** The narrowest type holding values of both types; null stands for no values yet. */
+    public ColumnType widen(ColumnType other) {
+        if (other == null || other == this) {
+            return this;
+        }
+        if ((this == INTEGER || this == DOUBLE) && (other == INTEGER || other == DOUBLE)) {
+            return DOUBLE;
+        }
+        return STRING;
+    }
+
+    public boolean accepts(String value) {
+        ColumnType type = of(value);
+        return type == null || widen(type) == this;
+    }
+
+    /**
+     * The value as conditions compare it numerically, or NaN if it isn't a number. Most strings are
+     * ruled out by their first character, so text cells rarely pay for a failed parse.
+     */
+    public static double toNumber(String value) {
+        if (value == null || !mayBeNumber(value)) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static boolean mayBeNumber(String value) {
+        // Double.parseDouble trims the value, then takes an optional sign and a digit, point, NaN or Infinity
+        String trimmed = value.trim();
+        int start = trimmed.startsWith("-") || trimmed.startsWith("+") ? 1 : 0;
+        if (start >= trimmed.length()) {
+            return false;
+        }
+        char c = trimmed.charAt(start);
+        return (c >= '0' && c <= '9') || c == '.' || trimmed.startsWith("NaN", start)
+                || trimmed.startsWith("Infinity", start);
+    }
+
+    private static boolean isInteger(String value) {
+        int start = value.charAt(0) == '-' || value.charAt(0) == '+' ? 1 : 0;
+        if (start == value.length() || value.length() - start > 18) {
+            return false;
+        }
+        for (int i = start; i < value.length(); i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
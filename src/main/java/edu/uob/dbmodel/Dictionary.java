@@ -0,0 +1,79 @@
+package edu.uob.dbmodel;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The distinct values of a dictionary-encoded column, each given a code in the order it was first
+ * written. Rows share one string per distinct value and keep its code beside it, so a condition can
+ * be decided once per code rather than once per row. Codes are never reused; once a column has
+ * {@link #MAX_ENTRIES} values, further ones are stored as plain cells.
+ */
+public final class Dictionary {
+
+    /** The most values a column's dictionary holds, in memory and in a paged table file. */
+    public static final int MAX_ENTRIES = 1 << 16;
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    // Entries by code. Grown under the lock and republished whole; an entry is in place before its
+    // code is put in the map, so a reader holding a code always finds it
+    private volatile Entries entries = new Entries(new String[8], new double[8]);
+    private volatile int size;
+
+    private record Entries(String[] values, double[] numbers) {
+    }
+
+    /** The code of {@code value}, adding it if it is new, or -1 for null or once the dictionary is full. */
+    public int encode(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        synchronized (this) {
+            code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+            if (size == MAX_ENTRIES) {
+                return -1;
+            }
+            Entries current = entries;
+            if (size == current.values().length) {
+                int capacity = Math.min(size * 2, MAX_ENTRIES);
+                current = new Entries(Arrays.copyOf(current.values(), capacity),
+                        Arrays.copyOf(current.numbers(), capacity));
+            }
+            current.values()[size] = value;
+            current.numbers()[size] = ColumnType.toNumber(value);
+            entries = current;
+            codes.put(value, size);
+            return size++;
+        }
+    }
+
+    public String valueOf(int code) {
+        return entries.values()[code];
+    }
+
+    /** The entry as a number, NaN if it isn't one. */
+    public double numberOf(int code) {
+        return entries.numbers()[code];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Rough heap footprint in bytes. */
+    public long estimateSize() {
+        long bytes = 64;
+        for (int code = 0; code < size; code++) {
+            bytes += 96 + 2L * valueOf(code).length();
+        }
+        return bytes;
+    }
+}
@@ -4,15 +4,60 @@ import java.util.Objects;
 
 public class Header {
     private final String name;
+    // Where the column sits in its table, or -1 for a header that only names a column
+    private int position = -1;
+    // Inferred from the values written under this header; null until the first one. Rows may be
+    // decoded on several threads at once, so it is only ever widened under the header's lock
+    private volatile ColumnType type;
+    // The column's distinct values when it is dictionary-encoded, otherwise null
+    private Dictionary dictionary;
 
     public Header(String name) {
         this.name = name;
     }
 
+    /** A header for the column at {@code position} of rows that don't belong to a table, such as a join's output. */
+    public Header(String name, int position) {
+        this.name = name;
+        this.position = position;
+    }
+
     public String getName() {
         return name;
     }
 
+    public int getPosition() {
+        return position;
+    }
+
+    void setPosition(int position) {
+        this.position = position;
+    }
+
+    /** The type of every value written to this column so far, or null if there were none. */
+    public ColumnType getType() {
+        return type;
+    }
+
+    /** The dictionary the column's cells are encoded with, or null if they are stored plainly. */
+    public Dictionary getDictionary() {
+        return dictionary;
+    }
+
+    void setDictionary(Dictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /** Widens the column's type to hold a value of {@code valueType}, null for an empty cell. */
+    void noteValue(ColumnType valueType) {
+        if (valueType == null || valueType.widen(type) == type) {
+            return;
+        }
+        synchronized (this) {
+            type = valueType.widen(type);
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (!(o instanceof Header header)) return false;
@@ -1,43 +1,161 @@
 package edu.uob.dbmodel;
 
-import edu.uob.exceptions.DatabaseOperationException;
-
 import java.util.*;
-import java.util.stream.Collectors;
 
+/**
+ * One row's cells, held in an array indexed by each column's {@link Header#getPosition position}.
+ * A row knows nothing of column names; the table's headers say which cell is which column, so
+ * dropping a column only forgets its position, and a column added after the row was written reads
+ * as empty without the row being touched. Cells never written read as empty too.
+ * <p>
+ * A cell of a dictionary-encoded column holds the dictionary's own string for its value, shared with
+ * every other row, along with the value's code.
+ */
 public class Row {
 
-    LinkedHashMap<Header, String> value = new LinkedHashMap<>();
+    private static final String[] NO_CELLS = new String[0];
+
+    private String[] cells;
+    // Each cell as a number, NaN where it isn't one; parsed once when written, and null until a
+    // number is, so rows of text alone never hold them
+    private double[] numbers;
+    // Each cell's code in its column's dictionary, -1 where it has none; null until one is written
+    private int[] codes;
+
+    public Row() {
+        cells = NO_CELLS;
+    }
+
+    /** An empty row with room for the columns at positions below {@code width}. */
+    public Row(int width) {
+        cells = new String[width];
+        Arrays.fill(cells, "");
+    }
 
     public String getColumnValue(Header header) {
-        return value.get(header);
+        int position = header.getPosition();
+        return position < cells.length ? cells[position] : "";
+    }
+
+    /** The cell as conditions compare it numerically, or NaN if it isn't a number. */
+    public double getNumber(Header header) {
+        int position = header.getPosition();
+        return numbers != null && position < numbers.length ? numbers[position] : Double.NaN;
+    }
+
+    /** The cell's code in its column's {@link Header#getDictionary dictionary}, or -1 if it isn't encoded. */
+    public int getCode(Header header) {
+        int position = header.getPosition();
+        return codes != null && position < codes.length ? codes[position] : -1;
     }
 
     public void setValue(Header header, String value) {
-        this.value.put(header, value);
+        int position = header.getPosition();
+        if (position < 0) {
+            throw new IllegalArgumentException("Column " + header.getName() + " has no position");
+        }
+        if (position >= cells.length) {
+            int width = cells.length;
+            cells = Arrays.copyOf(cells, position + 1);
+            Arrays.fill(cells, width, cells.length, "");
+            if (numbers != null) {
+                numbers = Arrays.copyOf(numbers, cells.length);
+                Arrays.fill(numbers, width, numbers.length, Double.NaN);
+            }
+            if (codes != null) {
+                codes = Arrays.copyOf(codes, cells.length);
+                Arrays.fill(codes, width, codes.length, -1);
+            }
+        }
+        Dictionary dictionary = header.getDictionary();
+        int code = dictionary == null ? -1 : dictionary.encode(value);
+        // The value is parsed once, for both its number and the column's type
+        double number = code < 0 ? ColumnType.toNumber(value) : dictionary.numberOf(code);
+        header.noteValue(ColumnType.of(value, number));
+        setNumber(position, number);
+        if (code < 0) {
+            cells[position] = value;
+            if (codes != null) {
+                codes[position] = -1;
+            }
+            return;
+        }
+        if (codes == null) {
+            codes = new int[cells.length];
+            Arrays.fill(codes, -1);
+        }
+        cells[position] = dictionary.valueOf(code);
+        codes[position] = code;
+    }
+
+    private void setNumber(int position, double number) {
+        if (numbers == null) {
+            if (Double.isNaN(number)) {
+                return;
+            }
+            numbers = new double[cells.length];
+            Arrays.fill(numbers, Double.NaN);
+        }
+        numbers[position] = number;
+    }
+
+    /** The cells under {@code headers}, in their order. */
+    public List<String> getRowValues(List<Header> headers) {
+        List<String> values = new ArrayList<>(headers.size());
+        for (Header header : headers) {
+            values.add(getColumnValue(header));
+        }
+        return values;
     }
 
-    public List<String> getRowValues() {
-        return value.values().stream().toList();
+    /**
+     * Rough heap footprint in bytes: the arrays, plus String overhead per cell that isn't encoded;
+     * an encoded cell's string belongs to the dictionary.
+     */
+    public long estimateSize() {
+        long size = 48 + (4L + (numbers == null ? 0 : 8) + (codes == null ? 0 : 4)) * cells.length;
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != null && (codes == null || codes[i] < 0)) {
+                size += 40 + 2L * cells[i].length();
+            }
+        }
+        return size;
     }
 
-    public List<String> getRowHeaderValues() {
-        return value.keySet().stream().map(Header::getName).collect(Collectors.toList());
+    public String getRowLine(List<Header> headers) {
+        StringJoiner line = new StringJoiner("\t");
+        for (Header header : headers) {
+            line.add(getColumnValue(header));
+        }
+        return line.toString();
     }
 
-    public void deleteHeaderValue(String columnName) throws DatabaseOperationException {
-        Header header = value.keySet().stream()
-                .filter(head -> head.getName().equals(columnName))
-                .findFirst().orElseThrow(() -> new DatabaseOperationException(" Table operation failed"));
-        value.remove(header);
+    /** Moves the cells at {@code positions} to positions 0, 1, 2 and so on, dropping the rest. */
+    void compact(int[] positions) {
+        String[] compacted = new String[positions.length];
+        double[] compactedNumbers = numbers == null ? null : new double[positions.length];
+        int[] compactedCodes = codes == null ? null : new int[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            int position = positions[i];
+            compacted[i] = position < cells.length ? cells[position] : "";
+            if (compactedNumbers != null) {
+                compactedNumbers[i] = position < numbers.length ? numbers[position] : Double.NaN;
+            }
+            if (compactedCodes != null) {
+                compactedCodes[i] = position < codes.length ? codes[position] : -1;
+            }
+        }
+        cells = compacted;
+        numbers = compactedNumbers;
+        codes = compactedCodes;
     }
 
     public void addRowValue(Header header, String value) {
-        this.value.put(header, value);
+        setValue(header, value);
     }
 
     public void updateRow(Header header, String value) {
-        this.value.put(header, value);
+        setValue(header, value);
     }
 
 }
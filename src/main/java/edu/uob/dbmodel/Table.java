@@ -1,57 +1,230 @@
 package edu.uob.dbmodel;
 
 import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.storageprocessor.PagedTableFile;
 import edu.uob.storageprocessor.StorageEngine;
+import edu.uob.storageprocessor.StorageFormat;
+import edu.uob.storageprocessor.TableMetadata;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
 
 public class Table {
 
     List<Header> headers = new ArrayList<>();
+    // The same headers by name
+    private final Map<String, Header> columns = new HashMap<>();
+    // Positions handed out to columns, including those since dropped; new columns go at the end
+    private int width = 0;
     List<Row> rows = new ArrayList<>();
+    // Primary key on id. Kept in step with the rows once built, and rebuilt when ids change in place;
+    // readers may race to build it, so it is published whole
+    private volatile IdLookup rowsById;
+    // Rows removed by id but still in the list; taken out on the next access to the whole list
+    private final Set<Row> pendingRemoval = Collections.newSetFromMap(new IdentityHashMap<>());
 
     public List<Header> getHeaders() {
         return headers;
     }
 
     public void addHeader(Header header) {
+        header.setPosition(width++);
         headers.add(header);
+        columns.put(header.getName(), header);
     }
 
+    /**
+     * Removes a column from the headers. Rows keep the dropped cell, unread, until more than half
+     * of their cells are dropped ones, when every row is compacted.
+     */
     public void deleteHeader(String headerName) throws DatabaseOperationException {
-        Header header = headers.stream().filter(head -> head.getName().equals(headerName))
-                .findFirst()
-                .orElseThrow(() -> new DatabaseOperationException(" Table operation failed"));
-        if (header != null) {
-            headers.remove(header);
+        Header header = columns.remove(headerName);
+        if (header == null) {
+            throw new DatabaseOperationException(" Table operation failed");
+        }
+        headers.remove(header);
+        if (width > 2 * headers.size()) {
+            compactRows();
+        }
+    }
+
+    private void compactRows() {
+        int[] positions = new int[headers.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = headers.get(i).getPosition();
+        }
+        for (Row row : getRows()) {
+            row.compact(positions);
         }
+        for (int i = 0; i < positions.length; i++) {
+            headers.get(i).setPosition(i);
+        }
+        width = positions.length;
+    }
+
+    /** One more than the highest position of any column, the size a new row needs. */
+    public int getWidth() {
+        return width;
     }
 
     public void deleteRow(int index) {
-        Row row = rows.get(index);
-        rows.remove(row);
+        removeRows(List.of(getRows().get(index)));
+    }
+
+    /**
+     * Removes the given row objects. Each row is dropped from the id lookup straight away, while the
+     * list itself is compacted once, the next time the whole table is read.
+     */
+    public synchronized void removeRows(Collection<Row> removed) {
+        if (removed.isEmpty()) {
+            return;
+        }
+        pendingRemoval.addAll(removed);
+        IdLookup byId = rowsById;
+        if (byId != null) {
+            Header idHeader = getColumn("id");
+            removed.forEach(row -> byId.remove(row.getColumnValue(idHeader), row));
+        }
+    }
+
+    /** Finds a row by its id value, or returns null if there is none. */
+    public Row getRowById(String id) {
+        return idLookup().rows.get(id);
+    }
+
+    /**
+     * Whether {@link #getRowById} finds exactly the rows a scan for {@code id == value} would. That
+     * holds while every id is unique and written as a plain integer, which is how the engine assigns
+     * them, and the value is written the same way.
+     */
+    public boolean canLookupId(String value) {
+        return idLookup().exact && isPlainInteger(value);
+    }
+
+    private IdLookup idLookup() {
+        IdLookup byId = rowsById;
+        if (byId == null) {
+            byId = new IdLookup();
+            Header idHeader = getColumn("id");
+            for (Row row : getRows()) {
+                byId.add(row.getColumnValue(idHeader), row);
+            }
+            rowsById = byId;
+        }
+        return byId;
+    }
+
+    /** Must be called after ids are changed in place so lookups by id are rebuilt. */
+    public void resetRowLookup() {
+        rowsById = null;
     }
 
-    public List<Row> getRows() {
+    public synchronized List<Row> getRows() {
+        if (!pendingRemoval.isEmpty()) {
+            rows.removeIf(pendingRemoval::contains);
+            pendingRemoval.clear();
+        }
         return rows;
     }
 
-    public void setRows(List<Row> rows) {
+    /**
+     * Up to {@code count} rows spread evenly through the table, for estimates. Rows waiting to be
+     * compacted away are skipped rather than compacted, so this costs no more than the sample.
+     */
+    public synchronized List<Row> sampleRows(int count) {
+        int samples = Math.min(rows.size(), count);
+        List<Row> sample = new ArrayList<>(samples);
+        for (int i = 0; i < samples; i++) {
+            Row row = rows.get((int) ((long) i * rows.size() / samples));
+            if (!pendingRemoval.contains(row)) {
+                sample.add(row);
+            }
+        }
+        return sample;
+    }
+
+    public synchronized void setRows(List<Row> rows) {
         this.rows = rows;
+        pendingRemoval.clear();
+        rowsById = null;
     }
 
     public void addRow(Row row) {
         rows.add(row);
+        IdLookup byId = rowsById;
+        if (byId != null) {
+            byId.add(row.getColumnValue(getColumn("id")), row);
+        }
+    }
+
+    private static boolean isPlainInteger(String value) {
+        try {
+            return value != null && Long.toString(Long.parseLong(value)).equals(value);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /** Rows by id, noting whether ids are unique plain integers and so match {@code ==} exactly. */
+    private static final class IdLookup {
+        final Map<String, Row> rows = new HashMap<>();
+        boolean exact = true;
+
+        void add(String id, Row row) {
+            if (rows.putIfAbsent(id, row) != null || !isPlainInteger(id)) {
+                exact = false;
+            }
+        }
+
+        void remove(String id, Row row) {
+            rows.remove(id, row);
+        }
     }
 
+    /**
+     * Rewrites the table file in the format it already has. The rows go to a temporary file which is
+     * synced and then renamed over the original, so a crash part way through leaves the previous
+     * contents intact.
+     */
     public void writeTableToFile(File file) throws DatabaseOperationException {
-        StorageEngine storageEngine = new StorageEngine();
-        storageEngine.getFileWriter(file);
-        storageEngine.writeData(this.toString());
-        storageEngine.flushReader();
+        writeTableToFile(file, StorageFormat.of(file));
+    }
+
+    public void writeTableToFile(File file, StorageFormat format) throws DatabaseOperationException {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        if (format == StorageFormat.PAGED) {
+            PagedTableFile.write(tempFile, getHeaderValues(), getDictionaryColumns(), getRowValues(getRows()));
+        } else {
+            StorageEngine storageEngine = new StorageEngine();
+            storageEngine.getFileWriter(tempFile);
+            storageEngine.writeData(getHeaderLine());
+            for (Row row : getRows()) {
+                storageEngine.writeData(row.getRowLine(headers));
+            }
+            storageEngine.syncWriter();
+            storageEngine.flushReader();
+        }
+        StorageEngine.replaceFile(tempFile, file);
+    }
+
+    /** The names of the columns whose cells are dictionary-encoded. */
+    public Set<String> getDictionaryColumns() {
+        Set<String> names = new LinkedHashSet<>();
+        headers.stream().filter(header -> header.getDictionary() != null).forEach(header -> names.add(header.getName()));
+        return names;
+    }
+
+    /**
+     * Gives the columns the table's metadata declares dictionary-encoded a dictionary each. Called
+     * once the headers are in place and before any rows are added.
+     */
+    public void readDictionaryColumns(File file) throws DatabaseOperationException {
+        for (String column : TableMetadata.forTable(file).getDictionaryColumns()) {
+            Header header = columns.get(column);
+            if (header != null) {
+                header.setDictionary(new Dictionary());
+            }
+        }
     }
 
     public List<String> getHeaderValues() {
@@ -61,6 +234,10 @@ public class Table {
     }
 
     public void readTableData(File file) throws DatabaseOperationException {
+        if (StorageFormat.of(file) == StorageFormat.PAGED) {
+            readPagedData(file);
+            return;
+        }
         StorageEngine storageEngine = new StorageEngine();
         storageEngine.getFileReader(file);
         // Read entire file content.
@@ -68,16 +245,17 @@ public class Table {
         headerLine = storageEngine.readLine();
         if (headerLine == null) {
             // If file is empty, create a header with auto-generated "id" column.
-            headers.add(new Header("id"));
+            addHeader(new Header("id"));
         }
         // Add headers to list
         Arrays.stream(headerLine.split("\t")).forEach(header -> {
-            headers.add(new Header(header));
+            addHeader(new Header(header));
         });
+        readDictionaryColumns(file);
         // Add rows
         String line;
         while ((line = storageEngine.readLine()) != null) {
-            Row row = new Row();
+            Row row = new Row(width);
             List<String> values = new ArrayList<>(List.of(line.split("\t")));
             if (headers.size() > values.size()) {
                 values.add("");
@@ -88,29 +266,103 @@ public class Table {
             rows.add(row);
         }
         storageEngine.flushWriter();
+        idLookup();
+    }
+
+    private void readPagedData(File file) throws DatabaseOperationException {
+        PagedTableFile pagedFile = PagedTableFile.open(file);
+        readPagedHeaders(pagedFile);
+        readDictionaryColumns(file);
+        pagedFile.forEachRow(values -> {
+            Row row = new Row(width);
+            for (int i = 0; i < headers.size(); i++) {
+                row.setValue(headers.get(i), i < values.size() ? values.get(i) : "");
+            }
+            rows.add(row);
+        });
+        idLookup();
+    }
+
+    private void readPagedHeaders(PagedTableFile pagedFile) {
+        if (pagedFile.getColumns().isEmpty()) {
+            addHeader(new Header("id"));
+        }
+        pagedFile.getColumns().forEach(column -> addHeader(new Header(column)));
+    }
+
+    /** Reads only the header line, leaving the rows on disk. */
+    public void readHeaderData(File file) throws DatabaseOperationException {
+        if (StorageFormat.of(file) == StorageFormat.PAGED) {
+            readPagedHeaders(PagedTableFile.open(file));
+        } else {
+            StorageEngine storageEngine = new StorageEngine();
+            storageEngine.getFileReader(file);
+            String headerLine = storageEngine.readLine();
+            storageEngine.flushWriter();
+            if (headerLine == null) {
+                addHeader(new Header("id"));
+            } else {
+                Arrays.stream(headerLine.split("\t")).forEach(header -> addHeader(new Header(header)));
+            }
+        }
+        readDictionaryColumns(file);
+    }
+
+    /** Appends one row to the end of the table file without rewriting the rows before it. */
+    public void appendRowToFile(File file, Row row) throws DatabaseOperationException {
+        appendRowsToFile(file, List.of(row), false);
+    }
+
+    /** Appends rows to the end of the table file, syncing them to disk when {@code durable} is set. */
+    public void appendRowsToFile(File file, List<Row> newRows, boolean durable) throws DatabaseOperationException {
+        if (StorageFormat.of(file) == StorageFormat.PAGED) {
+            PagedTableFile.append(file, getRowValues(newRows), durable);
+            return;
+        }
+        StorageEngine storageEngine = new StorageEngine();
+        storageEngine.getFileAppender(file);
+        for (Row row : newRows) {
+            storageEngine.writeData(row.getRowLine(headers));
+        }
+        if (durable) {
+            storageEngine.syncWriter();
+        }
+        storageEngine.flushReader();
+    }
+
+    /**
+     * Applies changed rows to the table file without rewriting it, keyed by id with a null row for a
+     * deleted one. Only paged files support this; returns false when the whole file has to be
+     * rewritten instead.
+     */
+    public boolean rewriteRowsInFile(File file, Map<String, Row> changes) throws DatabaseOperationException {
+        if (StorageFormat.of(file) != StorageFormat.PAGED) {
+            return false;
+        }
+        Map<String, List<String>> values = new HashMap<>();
+        changes.forEach((id, row) -> values.put(id, row == null ? null : row.getRowValues(headers)));
+        return PagedTableFile.rewriteRows(file, values);
+    }
+
+    private List<List<String>> getRowValues(List<Row> rows) {
+        return rows.stream().map(row -> row.getRowValues(headers)).toList();
     }
 
     public void deleteColumn(String columnName) throws DatabaseOperationException {
         deleteHeader(columnName);
-        for (Row row : rows) {
-            row.deleteHeaderValue(columnName);
-        }
     }
 
+    /** Adds an empty column. Existing rows are left as they are, since a cell past a row's end reads as empty. */
     public void addColumn(String columnName) {
-        Header header = new Header(columnName);
-        addHeader(header);
-        rows.stream().forEach(row -> {
-            row.addRowValue(header, "");
-        });
+        addHeader(new Header(columnName));
     }
 
     public boolean containsColumn(String columnName) {
-        return headers.stream().filter(header -> header.getName().equals(columnName)).findFirst().isPresent();
+        return columns.containsKey(columnName);
     }
 
     public Row getRow(int i) {
-        return rows.get(i);
+        return getRows().get(i);
     }
 
     public Header getHeader(int i) {
@@ -120,34 +372,57 @@ public class Table {
     public void updateRow(int i, String column, String value) {
         Header header = getColumn(column);
         if (header != null) {
-            rows.get(i).updateRow(header, value);
+            getRows().get(i).updateRow(header, value);
         }
     }
 
     public Header getColumn(String column) {
-        return headers.stream().filter(header -> header.getName().equals(column)).findFirst().orElse(null);
+        return columns.get(column);
     }
 
     public void addNewRow() {
-        Row row = new Row();
+        Row row = new Row(width);
         headers.forEach(header -> row.addRowValue(header, ""));
-        rows.add(row);
+        addRow(row);
     }
 
     public String getColumnValueForRow(int i, String column) {
-        return rows.get(i).getColumnValue(getColumn(column));
+        return getRows().get(i).getColumnValue(getColumn(column));
+    }
+
+    /** Rough heap footprint in bytes, used to keep the table cache within its budget. */
+    public long estimateSize() {
+        long size = 64;
+        for (Header header : headers) {
+            size += 48 + 2L * header.getName().length();
+            if (header.getDictionary() != null) {
+                size += header.getDictionary().estimateSize();
+            }
+        }
+        for (Row row : getRows()) {
+            size += row.estimateSize();
+        }
+        if (rowsById != null) {
+            // One hash map entry per row
+            size += 48L * rows.size();
+        }
+        return size;
+    }
+
+    public String getHeaderLine() {
+        return String.join("\t", getHeaderValues());
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         if (headers != null && !headers.isEmpty()) {
-            sb.append(String.join("\t", getHeaderValues()));
+            sb.append(getHeaderLine());
         }
-        if (rows != null && !rows.isEmpty()) {
-            rows.forEach(row -> {
+        if (rows != null && !getRows().isEmpty()) {
+            getRows().forEach(row -> {
                 sb.append("\n");
-                sb.append(String.join("\t", row.getRowValues()));
+                sb.append(row.getRowLine(headers));
             });
         }
 
@@ -0,0 +1,165 @@
+package edu.uob.executionprocessor;
+
+import edu.uob.dbmodel.ColumnType;
+
+/**
+ * The aggregate functions a SELECT can apply to a column. Empty cells and {@code NULL} are skipped,
+ * as are cells that aren't numbers for SUM and AVG; a function that saw no values gives
+ * {@code NULL}, except COUNT, which gives 0.
+ */
+public enum AggregateFunction {
+    COUNT, SUM, AVG, MIN, MAX;
+
+    /** The function called {@code name}, in any case, or null if there is none. */
+    public static AggregateFunction fromName(String name) {
+        for (AggregateFunction function : values()) {
+            if (function.name().equalsIgnoreCase(name)) {
+                return function;
+            }
+        }
+        return null;
+    }
+
+    /** Whether the function can take {@code *}, meaning every row, in place of a column. */
+    public boolean acceptsAllRows() {
+        return this == COUNT;
+    }
+
+    /** A fresh state for one group; {@code allRows} for a function given {@code *}. */
+    Accumulator newAccumulator(boolean allRows) {
+        return switch (this) {
+            case COUNT -> new Count(allRows);
+            case SUM -> new Sum();
+            case AVG -> new Average();
+            case MIN -> new Extreme(-1);
+            case MAX -> new Extreme(1);
+        };
+    }
+
+    /** The running state of one function for one group. */
+    interface Accumulator {
+
+        /** Adds a cell, given with its value as a number, NaN if it isn't one. */
+        void add(String cell, double number);
+
+        String result();
+
+        /** Rough heap footprint in bytes. */
+        default long estimateSize() {
+            return 32;
+        }
+    }
+
+    private static boolean isMissing(String cell) {
+        return cell == null || cell.isEmpty() || cell.equalsIgnoreCase("NULL");
+    }
+
+    private static final class Count implements Accumulator {
+
+        private final boolean allRows;
+        private long count;
+
+        Count(boolean allRows) {
+            this.allRows = allRows;
+        }
+
+        @Override
+        public void add(String cell, double number) {
+            if (allRows || !isMissing(cell)) {
+                count++;
+            }
+        }
+
+        @Override
+        public String result() {
+            return String.valueOf(count);
+        }
+    }
+
+    /** Sums whole numbers exactly, switching to floating point at the first fraction or overflow. */
+    private static final class Sum implements Accumulator {
+
+        private boolean any;
+        private boolean exact = true;
+        private long total;
+        private double approximate;
+
+        @Override
+        public void add(String cell, double number) {
+            if (isMissing(cell) || Double.isNaN(number)) {
+                return;
+            }
+            any = true;
+            approximate += number;
+            if (exact && ColumnType.of(cell) == ColumnType.INTEGER) {
+                try {
+                    total = Math.addExact(total, Long.parseLong(cell));
+                    return;
+                } catch (ArithmeticException e) {
+                    // Falls back to the floating point total
+                }
+            }
+            exact = false;
+        }
+
+        @Override
+        public String result() {
+            if (!any) {
+                return "NULL";
+            }
+            return exact ? String.valueOf(total) : String.valueOf(approximate);
+        }
+    }
+
+    private static final class Average implements Accumulator {
+
+        private long count;
+        private double total;
+
+        @Override
+        public void add(String cell, double number) {
+            if (!isMissing(cell) && !Double.isNaN(number)) {
+                count++;
+                total += number;
+            }
+        }
+
+        @Override
+        public String result() {
+            return count == 0 ? "NULL" : String.valueOf(total / count);
+        }
+    }
+
+    /** MIN or MAX in the order ORDER BY sorts cells in: numbers by value, then text. */
+    private static final class Extreme implements Accumulator {
+
+        private final int direction;
+        private String best;
+        private double bestNumber;
+
+        Extreme(int direction) {
+            this.direction = direction;
+        }
+
+        @Override
+        public void add(String cell, double number) {
+            if (isMissing(cell)) {
+                return;
+            }
+            if (best == null || CellOrder.compare(cell, number, best, bestNumber) * direction > 0) {
+                best = cell;
+                bestNumber = number;
+            }
+        }
+
+        @Override
+        public String result() {
+            return best == null ? "NULL" : best;
+        }
+
+        @Override
+        public long estimateSize() {
+            return 48 + (best == null ? 0 : 2L * best.length());
+        }
+    }
+}
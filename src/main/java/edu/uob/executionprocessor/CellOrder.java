@@ -0,0 +1,45 @@
+package edu.uob.executionprocessor;
+
+import edu.uob.dbmodel.Header;
+import edu.uob.dbmodel.Row;
+
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * The order rows are sorted and merged in by one of their cells. Conditions compare two numbers as
+ * numbers and anything else as strings; to make that a total order, numbers come first by value,
+ * with ties such as 1 and 1.0 broken by their text, then everything else by its text. Two cells
+ * compare equal only when their text is equal.
+ */
+final class CellOrder {
+
+    private CellOrder() {
+    }
+
+    static int compare(Row row1, Header key1, Row row2, Header key2) {
+        return compare(textOf(row1, key1), row1.getNumber(key1), textOf(row2, key2), row2.getNumber(key2));
+    }
+
+    /** Compares two cells given as their text and their value as a number, NaN if they aren't one. */
+    static int compare(String text1, double number1, String text2, double number2) {
+        boolean numeric1 = !Double.isNaN(number1);
+        boolean numeric2 = !Double.isNaN(number2);
+        if (numeric1 != numeric2) {
+            return numeric1 ? -1 : 1;
+        }
+        if (numeric1 && number1 != number2) {
+            return Double.compare(number1, number2);
+        }
+        return text1.compareTo(text2);
+    }
+
+    static Comparator<Row> by(Header key) {
+        return (row1, row2) -> compare(row1, key, row2, key);
+    }
+
+    /** The cell as text, with a missing cell read as empty. */
+    static String textOf(Row row, Header key) {
+        return Objects.requireNonNullElse(row.getColumnValue(key), "");
+    }
+}
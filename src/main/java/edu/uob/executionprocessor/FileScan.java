@@ -0,0 +1,210 @@
+package edu.uob.executionprocessor;
+
+import edu.uob.dbmodel.Header;
+import edu.uob.dbmodel.Row;
+import edu.uob.dbmodel.Table;
+import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.storageprocessor.PagedTableFile;
+import edu.uob.storageprocessor.StorageEngine;
+import edu.uob.storageprocessor.StorageFormat;
+import edu.uob.utils.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Reads a table file row by row without loading it, for tables too large for the table cache. The
+ * file must be current, which holds for any table not in the cache since dirty tables stay cached
+ * until they are checkpointed, and must not change while it is read.
+ * <p>
+ * Only the columns the query reads are decoded into each row; the rest read as empty. Given a
+ * filter, the scan reads rows in batches, decoding just the columns the filter tests, and checks
+ * each batch through {@link ParallelScan} as {@link Filter} would. The rest of a row is decoded only
+ * once it matches, and rows the filter rejected are filled again for the next batch rather than
+ * allocated. Batches grow as {@link Filter}'s do.
+ */
+public class FileScan implements QueryOperator {
+
+    /** The first batch read for the filter. */
+    private static final int MIN_BATCH = 1024;
+
+    private final Table table;
+    private final Predicate<Row> filter;
+    // By the table's column index: whether the filter tests the column, whether it is decoded at all,
+    // and whether it is decoded only once a row matches
+    private final boolean[] tested;
+    private final boolean[] wanted;
+    private final boolean[] untested;
+    // Text rows are split only as far as the last wanted column
+    private final int lastWanted;
+    private PagedTableFile.Cursor cursor;
+    private StorageEngine reader;
+    // The text line being decoded, and where each column up to the last wanted one starts and ends in it
+    private String line;
+    private final int[] starts;
+    private final int[] ends;
+    // Rows of the last batch that passed the filter, and rows it rejected
+    private List<Row> matches = new ArrayList<>();
+    private int position = 0;
+    private int batchSize = MIN_BATCH;
+    private final List<Row> spares = new ArrayList<>();
+
+    // A row decoded as far as the filter needs, with where to decode the rest of it from
+    private record Candidate(Row row, PagedTableFile.Record record, String line) {
+    }
+
+    /**
+     * Opens the file for reading; {@code table} holds its columns, as read by {@link Table#readHeaderData},
+     * and {@code columns} those of them to decode. Only rows passing {@code filter}, which reads no
+     * columns but {@code filterColumns}, are returned; a null filter passes every row.
+     */
+    public FileScan(File file, Table table, Collection<Header> columns, Predicate<Row> filter,
+                    Collection<Header> filterColumns) throws DatabaseOperationException {
+        this.table = table;
+        this.filter = filter;
+        List<Header> headers = table.getHeaders();
+        tested = new boolean[headers.size()];
+        wanted = new boolean[headers.size()];
+        untested = new boolean[headers.size()];
+        int last = -1;
+        for (int i = 0; i < headers.size(); i++) {
+            tested[i] = filter != null && filterColumns.contains(headers.get(i));
+            if (tested[i] || columns.contains(headers.get(i))) {
+                wanted[i] = true;
+                untested[i] = !tested[i];
+                last = i;
+            }
+        }
+        lastWanted = last;
+        starts = new int[last + 1];
+        ends = new int[last + 1];
+        if (StorageFormat.of(file) == StorageFormat.PAGED) {
+            cursor = PagedTableFile.open(file).cursor();
+        } else {
+            reader = new StorageEngine();
+            reader.getFileReader(file);
+            // Skip the header line, already read into the table
+            reader.readLine();
+        }
+    }
+
+    @Override
+    public List<Header> getHeaders() {
+        return table.getHeaders();
+    }
+
+    @Override
+    public Row next() throws DatabaseOperationException {
+        if (filter == null) {
+            if (!advance()) {
+                return null;
+            }
+            Row row = new Row(table.getWidth());
+            decode(row, null, wanted);
+            return row;
+        }
+        while (position == matches.size()) {
+            List<Candidate> batch = readBatch();
+            if (batch.isEmpty()) {
+                return null;
+            }
+            batchSize = (int) Math.min(Math.max(MIN_BATCH, Config.getScanParallelThreshold()), 2L * batchSize);
+            List<Candidate> passed = new ArrayList<>();
+            ParallelScan.scan(batch, candidate -> filter.test(candidate.row()), candidate -> candidate, passed::add);
+            matches = new ArrayList<>(passed.size());
+            position = 0;
+            // The matches come back in batch order, so whatever lies between them was rejected
+            int next = 0;
+            for (Candidate candidate : batch) {
+                if (next < passed.size() && passed.get(next) == candidate) {
+                    next++;
+                    finish(candidate);
+                    matches.add(candidate.row());
+                } else {
+                    spares.add(candidate.row());
+                }
+            }
+        }
+        return matches.get(position++);
+    }
+
+    /** Reads up to a batch of rows, decoding the columns the filter tests. */
+    private List<Candidate> readBatch() throws DatabaseOperationException {
+        List<Candidate> batch = new ArrayList<>();
+        while (batch.size() < batchSize && advance()) {
+            Row row = spares.isEmpty() ? new Row(table.getWidth()) : spares.remove(spares.size() - 1);
+            decode(row, null, tested);
+            batch.add(new Candidate(row, cursor != null ? cursor.record() : null, line));
+        }
+        return batch;
+    }
+
+    /** Decodes the columns of a matching row the filter didn't need. */
+    private void finish(Candidate candidate) throws DatabaseOperationException {
+        if (candidate.record() == null) {
+            split(candidate.line());
+        }
+        decode(candidate.row(), candidate.record(), untested);
+    }
+
+    /**
+     * Sets the row's cells in the given columns, from {@code record} if there is one and otherwise
+     * from the cursor's current row or the current text line.
+     */
+    private void decode(Row row, PagedTableFile.Record record, boolean[] columns) throws DatabaseOperationException {
+        List<Header> headers = table.getHeaders();
+        for (int i = 0; i <= lastWanted; i++) {
+            if (columns[i]) {
+                row.setValue(headers.get(i), record != null ? record.value(i) : cell(i));
+            }
+        }
+    }
+
+    /** Moves to the next row of the file; returns false at the end. */
+    private boolean advance() throws DatabaseOperationException {
+        if (cursor != null) {
+            return cursor.advance();
+        }
+        String next = reader == null ? null : reader.readLine();
+        if (next == null) {
+            return false;
+        }
+        split(next);
+        return true;
+    }
+
+    /** Makes {@code text} the current text line, finding where its wanted columns lie. */
+    private void split(String text) {
+        line = text;
+        int start = 0;
+        for (int i = 0; i <= lastWanted; i++) {
+            int end = start > line.length() ? -1 : line.indexOf('\t', start);
+            if (end < 0) {
+                end = line.length();
+            }
+            starts[i] = start;
+            ends[i] = end;
+            start = end + 1;
+        }
+    }
+
+    /** The current row's cell in the column at {@code index}, empty if the row has none. */
+    private String cell(int index) throws DatabaseOperationException {
+        if (cursor != null) {
+            return cursor.value(index);
+        }
+        return starts[index] < ends[index] ? line.substring(starts[index], ends[index]) : "";
+    }
+
+    @Override
+    public void close() throws DatabaseOperationException {
+        if (reader != null) {
+            // Closes the reader
+            reader.flushWriter();
+            reader = null;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package edu.uob.executionprocessor;
+
+import edu.uob.dbmodel.Header;
+import edu.uob.dbmodel.Row;
+import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.utils.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Passes on the rows that satisfy a predicate. Rows are pulled from below in batches, each tested
+ * by {@link ParallelScan}, so batches large enough to be worth splitting are spread across threads.
+ * Batches start small and double up to the parallel threshold, so that a plan that stops early,
+ * such as one under a LIMIT, reads little more of its input than it needs.
+ */
+public class Filter implements QueryOperator {
+
+    /** The first batch pulled from below. */
+    private static final int MIN_BATCH = 1024;
+
+    private final QueryOperator input;
+    private final Predicate<Row> predicate;
+    private List<Row> matches = new ArrayList<>();
+    private int position = 0;
+    private int batchSize = MIN_BATCH;
+    private boolean exhausted = false;
+
+    public Filter(QueryOperator input, Predicate<Row> predicate) {
+        this.input = input;
+        this.predicate = predicate;
+    }
+
+    @Override
+    public List<Header> getHeaders() {
+        return input.getHeaders();
+    }
+
+    @Override
+    public Row next() throws DatabaseOperationException {
+        while (position == matches.size()) {
+            if (exhausted) {
+                return null;
+            }
+            List<Row> batch = input.nextBatch(batchSize);
+            batchSize = (int) Math.min(Math.max(MIN_BATCH, Config.getScanParallelThreshold()), 2L * batchSize);
+            exhausted = batch.isEmpty();
+            matches = new ArrayList<>();
+            position = 0;
+            ParallelScan.scan(batch, predicate, row -> row, matches::add);
+        }
+        return matches.get(position++);
+    }
+
+    @Override
+    public void close() throws DatabaseOperationException {
+        input.close();
+    }
+}
@@ -0,0 +1,289 @@
+package edu.uob.executionprocessor;
+
+import edu.uob.dbmodel.ColumnType;
+import edu.uob.dbmodel.Header;
+import edu.uob.dbmodel.Row;
+import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.utils.Config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups rows by the text of one column and computes aggregates over each group as the rows stream
+ * past, producing one row per group. Without a group column the whole input is one group, which
+ * gives a row even when there is no input. Groups come out in the order they first appeared.
+ *
+ * <p>Groups are held in memory up to {@link Config#getAggregateMemoryBytes}. Once that is full,
+ * rows of groups not already held are written to partition files in {@code spillDirectory}, split
+ * by a hash of their group, and each partition is aggregated in turn after the held groups have
+ * been returned, partitioning again if it is still too large. Spilled groups therefore come after
+ * the ones that fitted.
+ */
+public class HashAggregate implements QueryOperator {
+
+    /** Partition files a full pass spills into. */
+    private static final int PARTITIONS = 16;
+
+    /**
+     * One output column: the group column when {@code function} is null, otherwise {@code function}
+     * applied to {@code argument}, or to every row when the argument is null.
+     */
+    public record Output(String name, AggregateFunction function, Header argument) {
+    }
+
+    private final QueryOperator input;
+    private final Header groupKey;
+    private final List<Output> outputs;
+    private final List<Header> headers = new ArrayList<>();
+    // The columns a spilled row keeps, the group column first
+    private final List<Header> spilledColumns = new ArrayList<>();
+    // Where each output's argument sits among the spilled columns, -1 for none
+    private final int[] spilledArguments;
+    private final File spillDirectory;
+    private final Deque<Partition> partitions = new ArrayDeque<>();
+    private final List<File> spillFiles = new ArrayList<>();
+    private Iterator<Map.Entry<String, AggregateFunction.Accumulator[]>> groups;
+
+    private record Partition(File file, int depth) {
+    }
+
+    public HashAggregate(QueryOperator input, Header groupKey, List<Output> outputs, File spillDirectory) {
+        this.input = input;
+        this.groupKey = groupKey;
+        this.outputs = outputs;
+        this.spillDirectory = spillDirectory;
+        outputs.forEach(output -> headers.add(new Header(output.name(), headers.size())));
+        spilledColumns.add(groupKey);
+        spilledArguments = new int[outputs.size()];
+        for (int i = 0; i < outputs.size(); i++) {
+            Header argument = outputs.get(i).argument();
+            if (argument != null && !spilledColumns.contains(argument)) {
+                spilledColumns.add(argument);
+            }
+            spilledArguments[i] = argument == null ? -1 : spilledColumns.indexOf(argument);
+        }
+    }
+
+    @Override
+    public List<Header> getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public Row next() throws DatabaseOperationException {
+        if (groups == null) {
+            groups = aggregateInput().entrySet().iterator();
+        }
+        while (!groups.hasNext()) {
+            if (partitions.isEmpty()) {
+                return null;
+            }
+            groups = aggregatePartition(partitions.pollFirst()).entrySet().iterator();
+        }
+        Map.Entry<String, AggregateFunction.Accumulator[]> group = groups.next();
+        Row row = new Row(headers.size());
+        for (int i = 0; i < outputs.size(); i++) {
+            AggregateFunction.Accumulator accumulator = group.getValue()[i];
+            row.setValue(headers.get(i), accumulator == null ? group.getKey() : accumulator.result());
+        }
+        return row;
+    }
+
+    private Map<String, AggregateFunction.Accumulator[]> aggregateInput() throws DatabaseOperationException {
+        Map<String, AggregateFunction.Accumulator[]> groups = new LinkedHashMap<>();
+        Spill spill = new Spill(0);
+        long bytes = 0;
+        Row row;
+        while ((row = input.next()) != null) {
+            String key = groupKey == null ? "" : CellOrder.textOf(row, groupKey);
+            AggregateFunction.Accumulator[] accumulators = groups.get(key);
+            if (accumulators == null) {
+                if (bytes > Config.getAggregateMemoryBytes()) {
+                    spill.write(key, row);
+                    continue;
+                }
+                accumulators = newGroup();
+                groups.put(key, accumulators);
+                bytes += estimateSize(key, accumulators);
+            }
+            for (int i = 0; i < outputs.size(); i++) {
+                Header argument = outputs.get(i).argument();
+                if (accumulators[i] != null) {
+                    accumulators[i].add(argument == null ? null : row.getColumnValue(argument),
+                            argument == null ? Double.NaN : row.getNumber(argument));
+                }
+            }
+        }
+        spill.close();
+        if (groupKey == null && groups.isEmpty()) {
+            groups.put("", newGroup());
+        }
+        return groups;
+    }
+
+    /** Aggregates the rows of one partition file, spilling into a further level if they still don't fit. */
+    private Map<String, AggregateFunction.Accumulator[]> aggregatePartition(Partition partition)
+            throws DatabaseOperationException {
+        Map<String, AggregateFunction.Accumulator[]> groups = new LinkedHashMap<>();
+        Spill spill = new Spill(partition.depth() + 1);
+        long bytes = 0;
+        String[] cells = new String[spilledColumns.size()];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(partition.file())))) {
+            while (readCells(in, cells)) {
+                String key = cells[0];
+                AggregateFunction.Accumulator[] accumulators = groups.get(key);
+                if (accumulators == null) {
+                    // A partition holding a single group always fits, so this ends
+                    if (bytes > Config.getAggregateMemoryBytes() && !groups.isEmpty()) {
+                        spill.write(cells);
+                        continue;
+                    }
+                    accumulators = newGroup();
+                    groups.put(key, accumulators);
+                    bytes += estimateSize(key, accumulators);
+                }
+                for (int i = 0; i < outputs.size(); i++) {
+                    if (accumulators[i] != null) {
+                        String cell = spilledArguments[i] < 0 ? null : cells[spilledArguments[i]];
+                        accumulators[i].add(cell, cell == null ? Double.NaN : ColumnType.toNumber(cell));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while aggregating rows");
+        } finally {
+            spill.close();
+            partition.file().delete();
+        }
+        return groups;
+    }
+
+    private AggregateFunction.Accumulator[] newGroup() {
+        AggregateFunction.Accumulator[] accumulators = new AggregateFunction.Accumulator[outputs.size()];
+        for (int i = 0; i < outputs.size(); i++) {
+            AggregateFunction function = outputs.get(i).function();
+            accumulators[i] = function == null ? null : function.newAccumulator(outputs.get(i).argument() == null);
+        }
+        return accumulators;
+    }
+
+    private static long estimateSize(String key, AggregateFunction.Accumulator[] accumulators) {
+        long size = 96 + 2L * key.length();
+        for (AggregateFunction.Accumulator accumulator : accumulators) {
+            size += accumulator == null ? 0 : accumulator.estimateSize();
+        }
+        return size;
+    }
+
+    /** Reads one spilled row; returns false at the end of the file. */
+    private static boolean readCells(DataInputStream in, String[] cells) throws IOException {
+        for (int i = 0; i < cells.length; i++) {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                if (i == 0) {
+                    return false;
+                }
+                throw e;
+            }
+            cells[i] = length < 0 ? null : new String(in.readNBytes(length), StandardCharsets.UTF_8);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws DatabaseOperationException {
+        try {
+            input.close();
+        } finally {
+            for (File file : spillFiles) {
+                file.delete();
+            }
+            spillFiles.clear();
+            partitions.clear();
+        }
+    }
+
+    /**
+     * The partition files of one level, opened on the first row spilled. Each row is written as its
+     * {@code spilledColumns} cells: length in bytes, -1 for none, then UTF-8.
+     */
+    private class Spill {
+
+        private final int depth;
+        private DataOutputStream[] outs;
+
+        Spill(int depth) {
+            this.depth = depth;
+        }
+
+        void write(String key, Row row) throws DatabaseOperationException {
+            String[] cells = new String[spilledColumns.size()];
+            cells[0] = key;
+            for (int i = 1; i < cells.length; i++) {
+                cells[i] = row.getColumnValue(spilledColumns.get(i));
+            }
+            write(cells);
+        }
+
+        void write(String[] cells) throws DatabaseOperationException {
+            try {
+                if (outs == null) {
+                    outs = new DataOutputStream[PARTITIONS];
+                    for (int i = 0; i < PARTITIONS; i++) {
+                        File file = File.createTempFile("group", ".part", spillDirectory);
+                        spillFiles.add(file);
+                        partitions.addLast(new Partition(file, depth));
+                        outs[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+                    }
+                }
+                // Each level hashes differently, so that groups sharing a partition are split up at the next
+                int hash = cells[0].hashCode() * (31 + 2 * depth);
+                DataOutputStream out = outs[Math.floorMod(hash ^ (hash >>> 16), PARTITIONS)];
+                for (String cell : cells) {
+                    if (cell == null) {
+                        out.writeInt(-1);
+                    } else {
+                        byte[] bytes = cell.getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(bytes.length);
+                        out.write(bytes);
+                    }
+                }
+            } catch (IOException e) {
+                throw new DatabaseOperationException(" Error occurred while aggregating rows");
+            }
+        }
+
+        void close() throws DatabaseOperationException {
+            if (outs == null) {
+                return;
+            }
+            try {
+                for (DataOutputStream out : outs) {
+                    if (out != null) {
+                        out.close();
+                    }
+                }
+            } catch (IOException e) {
+                throw new DatabaseOperationException(" Error occurred while aggregating rows");
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package edu.uob.executionprocessor;
+
+import edu.uob.dbmodel.Header;
+import edu.uob.dbmodel.Row;
+import edu.uob.exceptions.DatabaseOperationException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Equi-joins two inputs on one column each, where cells match when their text is equal. Each output
+ * row has a fresh id followed by the other columns of both sides, named {@code table.column}, and
+ * rows come out in the order a nested loop over the left rows, then the right rows, would produce.
+ * Neither input's rows are changed.
+ *
+ * <p>Both inputs are read in full on the first call to {@link #next}. When both are already in
+ * {@link CellOrder} on their key they are merged in one pass; otherwise the smaller side is hashed
+ * and the larger side probes it. Matches are then produced one at a time.
+ */
+public class Join implements QueryOperator {
+
+    private final QueryOperator leftInput;
+    private final QueryOperator rightInput;
+    private final Header leftKey;
+    private final Header rightKey;
+    private final List<Header> headers = new ArrayList<>();
+    private final List<Header> leftColumns = new ArrayList<>();
+    private final List<Header> rightColumns = new ArrayList<>();
+    private Iterator<Row[]> matches;
+    private long nextId = 1;
+
+    public Join(QueryOperator left, String leftName, Header leftKey,
+                QueryOperator right, String rightName, Header rightKey) {
+        this.leftInput = left;
+        this.rightInput = right;
+        this.leftKey = leftKey;
+        this.rightKey = rightKey;
+        headers.add(new Header("id", 0));
+        addColumns(left, leftName, leftKey, leftColumns);
+        addColumns(right, rightName, rightKey, rightColumns);
+    }
+
+    private void addColumns(QueryOperator input, String tableName, Header key, List<Header> columns) {
+        for (Header header : input.getHeaders().subList(1, input.getHeaders().size())) {
+            if (!header.equals(key)) {
+                columns.add(header);
+                headers.add(new Header(tableName + "." + header.getName(), headers.size()));
+            }
+        }
+    }
+
+    @Override
+    public List<Header> getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public Row next() throws DatabaseOperationException {
+        if (matches == null) {
+            List<Row> left = leftInput.toList();
+            List<Row> right = rightInput.toList();
+            if (isOrdered(left, leftKey) && isOrdered(right, rightKey)) {
+                matches = new MergeJoin(left, right);
+            } else if (right.size() <= left.size()) {
+                matches = new HashJoin(left, right);
+            } else {
+                matches = hashJoinBuildingLeft(left, right);
+            }
+        }
+        if (!matches.hasNext()) {
+            return null;
+        }
+        Row[] pair = matches.next();
+        Row row = new Row(headers.size());
+        int column = 0;
+        row.setValue(headers.get(column++), String.valueOf(nextId++));
+        for (Header header : leftColumns) {
+            row.setValue(headers.get(column++), pair[0].getColumnValue(header));
+        }
+        for (Header header : rightColumns) {
+            row.setValue(headers.get(column++), pair[1].getColumnValue(header));
+        }
+        return row;
+    }
+
+    @Override
+    public void close() throws DatabaseOperationException {
+        try {
+            leftInput.close();
+        } finally {
+            rightInput.close();
+        }
+    }
+
+    private static boolean isOrdered(List<Row> rows, Header key) {
+        for (int i = 1; i < rows.size(); i++) {
+            if (CellOrder.compare(rows.get(i - 1), key, rows.get(i), key) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Both sides ordered on their keys: walks them together, pairing up each run of equal keys. */
+    private class MergeJoin implements Iterator<Row[]> {
+
+        private final List<Row> left;
+        private final List<Row> right;
+        private int i = 0;
+        private int j = 0;
+        // The run of right rows matching left row i is [j, runEnd); k is the next of them to pair
+        private int runEnd = -1;
+        private int k = -1;
+        private Row[] pending;
+
+        MergeJoin(List<Row> left, List<Row> right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (pending == null) {
+                pending = advance();
+            }
+            return pending != null;
+        }
+
+        @Override
+        public Row[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Row[] pair = pending;
+            pending = null;
+            return pair;
+        }
+
+        private Row[] advance() {
+            while (true) {
+                if (k >= 0) {
+                    if (k < runEnd) {
+                        return new Row[] {left.get(i), right.get(k++)};
+                    }
+                    // Every left row with this key pairs with the whole run on the right
+                    Row previous = left.get(i++);
+                    if (i < left.size() && CellOrder.compare(previous, leftKey, left.get(i), leftKey) == 0) {
+                        k = j;
+                        continue;
+                    }
+                    j = runEnd;
+                    k = -1;
+                }
+                if (i >= left.size() || j >= right.size()) {
+                    return null;
+                }
+                int order = CellOrder.compare(left.get(i), leftKey, right.get(j), rightKey);
+                if (order < 0) {
+                    i++;
+                } else if (order > 0) {
+                    j++;
+                } else {
+                    runEnd = j + 1;
+                    while (runEnd < right.size() && CellOrder.compare(right.get(j), rightKey, right.get(runEnd), rightKey) == 0) {
+                        runEnd++;
+                    }
+                    k = j;
+                }
+            }
+        }
+    }
+
+    /** Hashes the right rows and probes with the left, which yields pairs in nested loop order. */
+    private class HashJoin implements Iterator<Row[]> {
+
+        private final List<Row> left;
+        private final List<Row> right;
+        private final Map<String, Integer> heads = new HashMap<>();
+        private final int[] chain;
+        private int i = -1;
+        private int k = -1;
+
+        HashJoin(List<Row> left, List<Row> right) {
+            this.left = left;
+            this.right = right;
+            chain = chain(right, rightKey, heads);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (k < 0 && i + 1 < left.size()) {
+                Integer match = heads.get(CellOrder.textOf(left.get(++i), leftKey));
+                k = match == null ? -1 : match;
+            }
+            return k >= 0;
+        }
+
+        @Override
+        public Row[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Row[] pair = {left.get(i), right.get(k)};
+            k = chain[k];
+            return pair;
+        }
+    }
+
+    /**
+     * Hashes the left rows and probes with the right. Probing finds pairs right row first, so they
+     * are collected as packed (left, right) positions and sorted back into nested loop order.
+     */
+    private Iterator<Row[]> hashJoinBuildingLeft(List<Row> left, List<Row> right) {
+        Map<String, Integer> heads = new HashMap<>();
+        int[] chain = chain(left, leftKey, heads);
+        long[] pairs = new long[16];
+        int count = 0;
+        for (int j = 0; j < right.size(); j++) {
+            Integer match = heads.get(CellOrder.textOf(right.get(j), rightKey));
+            for (int k = match == null ? -1 : match; k >= 0; k = chain[k]) {
+                if (count == pairs.length) {
+                    pairs = Arrays.copyOf(pairs, count * 2);
+                }
+                pairs[count++] = (long) k << 32 | j;
+            }
+        }
+        Arrays.sort(pairs, 0, count);
+        return Arrays.stream(pairs, 0, count)
+                .mapToObj(pair -> new Row[] {left.get((int) (pair >>> 32)), right.get((int) pair)})
+                .iterator();
+    }
+
+    /**
+     * Indexes rows by key without a list per key: {@code heads} holds the first position with each
+     * key and the returned array links each position to the next with the same key, or -1.
+     */
+    private static int[] chain(List<Row> rows, Header key, Map<String, Integer> heads) {
+        int[] next = new int[rows.size()];
+        for (int k = rows.size() - 1; k >= 0; k--) {
+            Integer previous = heads.put(CellOrder.textOf(rows.get(k), key), k);
+            next[k] = previous == null ? -1 : previous;
+        }
+        return next;
+    }
+}
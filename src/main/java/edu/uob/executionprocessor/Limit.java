@@ -0,0 +1,48 @@
+package edu.uob.executionprocessor;
+
+import edu.uob.dbmodel.Header;
+import edu.uob.dbmodel.Row;
+import edu.uob.exceptions.DatabaseOperationException;
+
+import java.util.List;
+
+/** Skips the first {@code offset} rows and stops after {@code limit} more, without reading further. */
+public class Limit implements QueryOperator {
+
+    private final QueryOperator input;
+    private long toSkip;
+    private long remaining;
+
+    public Limit(QueryOperator input, long offset, long limit) {
+        this.input = input;
+        this.toSkip = offset;
+        this.remaining = limit;
+    }
+
+    @Override
+    public List<Header> getHeaders() {
+        return input.getHeaders();
+    }
+
+    @Override
+    public Row next() throws DatabaseOperationException {
+        while (toSkip > 0) {
+            if (input.next() == null) {
+                toSkip = 0;
+                remaining = 0;
+            } else {
+                toSkip--;
+            }
+        }
+        if (remaining == 0) {
+            return null;
+        }
+        remaining--;
+        return input.next();
+    }
+
+    @Override
+    public void close() throws DatabaseOperationException {
+        input.close();
+    }
+}
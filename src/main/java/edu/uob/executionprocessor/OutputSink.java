@@ -0,0 +1,123 @@
+package edu.uob.executionprocessor;
+
+import edu.uob.dbmodel.Header;
+import edu.uob.dbmodel.Row;
+import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.outputprocessor.Logger;
+import edu.uob.utils.Config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The end of a query plan. The reply's lines, column names first, are rendered by {@link #collect}
+ * while the tables they come from are locked, then passed to the reply by {@link #send} once the
+ * locks are released, so a client slow to read its reply never holds up writers to those tables.
+ *
+ * <p>Lines are kept in memory up to {@link Config#getResultMemoryBytes}. Past that, the rest are
+ * spooled to a temporary file in {@code spillDirectory} and read back as they are sent.
+ */
+public class OutputSink {
+
+    private final Logger logger;
+    private final File spillDirectory;
+    private final List<String> lines = new ArrayList<>();
+    private long bytes = 0;
+    private File spoolFile;
+    private DataOutputStream spool;
+    private int spooledLines = 0;
+
+    public OutputSink(Logger logger, File spillDirectory) {
+        this.logger = logger;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /** Drains the plan into the reply to be sent, closing it afterwards. */
+    public void collect(QueryOperator plan) throws DatabaseOperationException {
+        try (plan) {
+            List<Header> headers = plan.getHeaders();
+            String[] values = new String[headers.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = headers.get(i).getName();
+            }
+            add(String.join("\t", values));
+            Row row;
+            while ((row = plan.next()) != null) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = row.getColumnValue(headers.get(i));
+                }
+                add(String.join("\t", values));
+            }
+            if (spool != null) {
+                spool.close();
+            }
+        } catch (IOException e) {
+            discard();
+            throw new DatabaseOperationException(" Error occurred while collecting the result");
+        } catch (DatabaseOperationException | RuntimeException e) {
+            discard();
+            throw e;
+        }
+    }
+
+    /** Passes the collected lines to the reply in order; call once the tables are unlocked. */
+    public void send() throws DatabaseOperationException {
+        try {
+            lines.forEach(logger::logRow);
+            lines.clear();
+            if (spoolFile != null) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spoolFile)))) {
+                    for (int i = 0; i < spooledLines; i++) {
+                        logger.logRow(new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8));
+                    }
+                } catch (IOException e) {
+                    throw new DatabaseOperationException(" Error occurred while sending the result");
+                }
+            }
+        } finally {
+            discard();
+        }
+    }
+
+    private void add(String line) throws IOException {
+        if (spool == null && bytes <= Config.getResultMemoryBytes()) {
+            lines.add(line);
+            // A string's header and its UTF-16 characters
+            bytes += 40 + 2L * line.length();
+            return;
+        }
+        if (spool == null) {
+            spoolFile = File.createTempFile("result", ".spool", spillDirectory);
+            spool = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spoolFile)));
+        }
+        byte[] data = line.getBytes(StandardCharsets.UTF_8);
+        spool.writeInt(data.length);
+        spool.write(data);
+        spooledLines++;
+    }
+
+    private void discard() {
+        if (spool != null) {
+            try {
+                spool.close();
+            } catch (IOException e) {
+                // Deleted next
+            }
+        }
+        if (spoolFile != null) {
+            spoolFile.delete();
+        }
+        spool = null;
+        spoolFile = null;
+        spooledLines = 0;
+    }
+}
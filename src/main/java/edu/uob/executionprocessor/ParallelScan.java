@@ -0,0 +1,74 @@
+package edu.uob.executionprocessor;
+
+import edu.uob.utils.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Filters and maps a table's rows, splitting tables of at least {@link Config#getScanParallelThreshold}
+ * rows into chunks that run on a shared {@link ForkJoinPool}. Results reach the caller's thread in
+ * row order either way. The rows must not change while they are scanned, which the caller's table
+ * lock guarantees.
+ */
+final class ParallelScan {
+
+    private static ForkJoinPool pool;
+
+    private ParallelScan() {
+    }
+
+    /**
+     * Passes {@code mapper}'s result for each row that satisfies {@code filter} to {@code sink}, in
+     * order. The rows may be anything standing for one, such as a row along with where it was read.
+     */
+    static <R, T> void scan(List<R> rows, Predicate<? super R> filter, Function<? super R, T> mapper,
+                            Consumer<T> sink) {
+        int parallelism = Config.getScanParallelism();
+        if (rows.size() < Config.getScanParallelThreshold() || parallelism == 1) {
+            for (R row : rows) {
+                if (filter.test(row)) {
+                    sink.accept(mapper.apply(row));
+                }
+            }
+            return;
+        }
+
+        // A few chunks per thread, so that one slow chunk doesn't hold up the rest
+        int chunkCount = Math.min(parallelism * 4, rows.size());
+        ForkJoinPool pool = poolFor(parallelism);
+        List<ForkJoinTask<List<T>>> chunks = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            List<R> chunk = rows.subList((int) ((long) i * rows.size() / chunkCount),
+                    (int) ((long) (i + 1) * rows.size() / chunkCount));
+            chunks.add(pool.submit(() -> {
+                List<T> results = new ArrayList<>();
+                for (R row : chunk) {
+                    if (filter.test(row)) {
+                        results.add(mapper.apply(row));
+                    }
+                }
+                return results;
+            }));
+        }
+        for (ForkJoinTask<List<T>> chunk : chunks) {
+            chunk.join().forEach(sink);
+        }
+    }
+
+    /**
+     * The shared pool, replaced when the configured parallelism changes. A replaced pool is left to
+     * finish any scan still running on it; its idle threads then time out.
+     */
+    private static synchronized ForkJoinPool poolFor(int parallelism) {
+        if (pool == null || pool.getParallelism() != parallelism) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+}
@@ -0,0 +1,37 @@
+package edu.uob.executionprocessor;
+
+import edu.uob.dbmodel.Header;
+import edu.uob.dbmodel.Row;
+import edu.uob.exceptions.DatabaseOperationException;
+
+import java.util.List;
+
+/**
+ * Narrows the output to some of the input's columns. Rows pass through untouched; whatever consumes
+ * them reads only the columns listed by {@link #getHeaders}.
+ */
+public class Project implements QueryOperator {
+
+    private final QueryOperator input;
+    private final List<Header> headers;
+
+    public Project(QueryOperator input, List<Header> headers) {
+        this.input = input;
+        this.headers = headers;
+    }
+
+    @Override
+    public List<Header> getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public Row next() throws DatabaseOperationException {
+        return input.next();
+    }
+
+    @Override
+    public void close() throws DatabaseOperationException {
+        input.close();
+    }
+}
@@ -0,0 +1,48 @@
+package edu.uob.executionprocessor;
+
+import edu.uob.dbmodel.Header;
+import edu.uob.dbmodel.Row;
+import edu.uob.exceptions.DatabaseOperationException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One step of a query plan. Each operator pulls rows from the operators below it only as its own
+ * rows are asked for, so a plan such as scan, filter, project, sink holds no more than the rows
+ * in flight. Rows are passed on as they are rather than copied; an operator that narrows the
+ * columns does so through {@link #getHeaders}.
+ */
+public interface QueryOperator extends AutoCloseable {
+
+    /** The columns of the rows this operator returns, in output order. */
+    List<Header> getHeaders();
+
+    /** The next row, or null once there are no more. */
+    Row next() throws DatabaseOperationException;
+
+    /** Up to {@code max} further rows, fewer only when the input runs out; empty at the end. */
+    default List<Row> nextBatch(int max) throws DatabaseOperationException {
+        List<Row> batch = new ArrayList<>();
+        Row row;
+        while (batch.size() < max && (row = next()) != null) {
+            batch.add(row);
+        }
+        return batch;
+    }
+
+    /** Every remaining row. */
+    default List<Row> toList() throws DatabaseOperationException {
+        List<Row> rows = new ArrayList<>();
+        Row row;
+        while ((row = next()) != null) {
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /** Releases files held by this operator and the ones below it. */
+    @Override
+    default void close() throws DatabaseOperationException {
+    }
+}
@@ -0,0 +1,265 @@
+package edu.uob.executionprocessor;
+
+import edu.uob.dbmodel.Header;
+import edu.uob.dbmodel.Row;
+import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.utils.Config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Orders rows by one column in {@link CellOrder}, ascending or descending. Rows with equal keys
+ * keep the order they arrived in. The input is read in full on the first call to {@link #next}.
+ *
+ * <p>Rows are sorted in memory up to {@link Config#getSortMemoryBytes}. Past that, each full buffer
+ * is sorted and spilled to a temporary run file in {@code spillDirectory}, and the runs are merged
+ * back together as rows are asked for. When only the first {@code keep} rows are wanted, as under a
+ * LIMIT, a heap holds just those, falling back to spilling only if they don't fit in the budget.
+ */
+public class Sort implements QueryOperator {
+
+    private final QueryOperator input;
+    private final List<Header> headers;
+    // Headers for the rows read back from runs at the same positions, so reading them never
+    // touches the input's headers, which may be a table's shared with other statements
+    private final List<Header> runHeaders = new ArrayList<>();
+    // The size of the rows read back from runs
+    private final int width;
+    private final Comparator<Row> order;
+    private final long keep;
+    private final File spillDirectory;
+    private final List<File> runFiles = new ArrayList<>();
+    private final List<RunReader> readers = new ArrayList<>();
+    private PriorityQueue<Run> merge;
+    private Iterator<Row> sorted;
+
+    /** A row and its place in the input, which breaks ties between equal keys. */
+    private record Entry(Row row, long sequence) {
+    }
+
+    public Sort(QueryOperator input, Header key, boolean descending, long keep, File spillDirectory) {
+        this.input = input;
+        this.headers = input.getHeaders();
+        headers.forEach(header -> runHeaders.add(new Header(header.getName(), header.getPosition())));
+        this.width = headers.stream().mapToInt(Header::getPosition).max().orElse(-1) + 1;
+        Comparator<Row> ascending = CellOrder.by(key);
+        this.order = descending ? ascending.reversed() : ascending;
+        this.keep = keep;
+        this.spillDirectory = spillDirectory;
+    }
+
+    @Override
+    public List<Header> getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public Row next() throws DatabaseOperationException {
+        if (sorted == null && merge == null) {
+            sortInput();
+        }
+        if (sorted != null) {
+            return sorted.hasNext() ? sorted.next() : null;
+        }
+        Run run = merge.poll();
+        if (run == null) {
+            return null;
+        }
+        Row row = run.head;
+        if (run.advance()) {
+            merge.add(run);
+        }
+        return row;
+    }
+
+    private void sortInput() throws DatabaseOperationException {
+        long budget = Config.getSortMemoryBytes();
+        Comparator<Entry> entryOrder = Comparator.comparing(Entry::row, order).thenComparingLong(Entry::sequence);
+        // The heap's head is the row that would come last, the first to go when the heap is full
+        PriorityQueue<Entry> heap = keep < Long.MAX_VALUE ? new PriorityQueue<>(entryOrder.reversed()) : null;
+        List<Row> buffer = new ArrayList<>();
+        long bytes = 0;
+        long sequence = 0;
+        Row row;
+        while ((row = input.next()) != null) {
+            bytes += row.estimateSize();
+            if (heap != null) {
+                heap.add(new Entry(row, sequence++));
+                if (heap.size() > keep) {
+                    bytes -= heap.poll().row().estimateSize();
+                }
+                if (bytes <= budget) {
+                    continue;
+                }
+                // Too many rows wanted to hold at once: carry on as a full sort, in arrival order
+                List<Entry> entries = new ArrayList<>(heap);
+                entries.sort(Comparator.comparingLong(Entry::sequence));
+                entries.forEach(entry -> buffer.add(entry.row()));
+                heap = null;
+            } else {
+                buffer.add(row);
+            }
+            if (bytes > budget) {
+                spill(buffer);
+                buffer.clear();
+                bytes = 0;
+            }
+        }
+
+        if (heap != null) {
+            List<Entry> entries = new ArrayList<>(heap);
+            entries.sort(entryOrder);
+            sorted = entries.stream().map(Entry::row).iterator();
+            return;
+        }
+        buffer.sort(order);
+        if (runFiles.isEmpty()) {
+            sorted = buffer.iterator();
+            return;
+        }
+        // Runs are numbered in the order they were filled, so equal keys come out in arrival order
+        merge = new PriorityQueue<>(Comparator.<Run, Row>comparing(run -> run.head, order)
+                .thenComparingInt(run -> run.number));
+        for (File runFile : runFiles) {
+            RunReader reader = new RunReader(runFile, readers.size());
+            readers.add(reader);
+            if (reader.advance()) {
+                merge.add(reader);
+            }
+        }
+        Run last = new BufferRun(buffer.iterator(), runFiles.size());
+        if (last.advance()) {
+            merge.add(last);
+        }
+    }
+
+    /** Writes the buffer, sorted, to a new run file. Each cell is its length in bytes, -1 for none, then UTF-8. */
+    private void spill(List<Row> buffer) throws DatabaseOperationException {
+        buffer.sort(order);
+        try {
+            File runFile = File.createTempFile("sort", ".run", spillDirectory);
+            runFiles.add(runFile);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile)))) {
+                out.writeInt(buffer.size());
+                for (Row row : buffer) {
+                    for (Header header : headers) {
+                        String cell = row.getColumnValue(header);
+                        if (cell == null) {
+                            out.writeInt(-1);
+                        } else {
+                            byte[] bytes = cell.getBytes(StandardCharsets.UTF_8);
+                            out.writeInt(bytes.length);
+                            out.write(bytes);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while sorting rows");
+        }
+    }
+
+    @Override
+    public void close() throws DatabaseOperationException {
+        try {
+            input.close();
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+            for (File runFile : runFiles) {
+                runFile.delete();
+            }
+            runFiles.clear();
+        }
+    }
+
+    /** A sorted source of rows being merged, positioned on its next row. */
+    private abstract static class Run {
+
+        final int number;
+        Row head;
+
+        Run(int number) {
+            this.number = number;
+        }
+
+        /** Moves to the next row; returns false once the run is used up. */
+        abstract boolean advance() throws DatabaseOperationException;
+    }
+
+    /** The last rows read, still in memory when the input ran out. */
+    private static class BufferRun extends Run {
+
+        private final Iterator<Row> rows;
+
+        BufferRun(Iterator<Row> rows, int number) {
+            super(number);
+            this.rows = rows;
+        }
+
+        @Override
+        boolean advance() {
+            head = rows.hasNext() ? rows.next() : null;
+            return head != null;
+        }
+    }
+
+    private class RunReader extends Run {
+
+        private final DataInputStream in;
+        private int remaining;
+
+        RunReader(File runFile, int number) throws DatabaseOperationException {
+            super(number);
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile)));
+                remaining = in.readInt();
+            } catch (IOException e) {
+                throw new DatabaseOperationException(" Error occurred while sorting rows");
+            }
+        }
+
+        @Override
+        boolean advance() throws DatabaseOperationException {
+            if (remaining == 0) {
+                head = null;
+                close();
+                return false;
+            }
+            remaining--;
+            try {
+                Row row = new Row(width);
+                for (Header header : runHeaders) {
+                    int length = in.readInt();
+                    row.setValue(header, length < 0 ? null : new String(in.readNBytes(length), StandardCharsets.UTF_8));
+                }
+                head = row;
+                return true;
+            } catch (IOException e) {
+                throw new DatabaseOperationException(" Error occurred while sorting rows");
+            }
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Only read from, and deleted next
+            }
+        }
+    }
+}
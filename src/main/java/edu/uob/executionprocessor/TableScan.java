@@ -0,0 +1,38 @@
+package edu.uob.executionprocessor;
+
+import edu.uob.dbmodel.Header;
+import edu.uob.dbmodel.Row;
+
+import java.util.List;
+
+/** Reads rows already in memory: a cached table, or the rows an index picked out of one. */
+public class TableScan implements QueryOperator {
+
+    private final List<Header> headers;
+    private final List<Row> rows;
+    private int position = 0;
+
+    public TableScan(List<Header> headers, List<Row> rows) {
+        this.headers = headers;
+        this.rows = rows;
+    }
+
+    @Override
+    public List<Header> getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public Row next() {
+        return position < rows.size() ? rows.get(position++) : null;
+    }
+
+    /** A view of the next rows, so filtering a cached table copies nothing. */
+    @Override
+    public List<Row> nextBatch(int max) {
+        int end = (int) Math.min(rows.size(), (long) position + max);
+        List<Row> batch = rows.subList(position, end);
+        position = end;
+        return batch;
+    }
+}
@@ -0,0 +1,575 @@
+package edu.uob.indexprocessor;
+
+import edu.uob.dbmodel.Row;
+import edu.uob.dbmodel.Table;
+import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.utils.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * B+tree index over one column, answering range conditions as well as equality. Keys are ordered
+ * the way conditions compare values: numbers by value first, then everything else as strings. A
+ * condition on a number compares numeric cells numerically and the remaining cells as strings, so
+ * a lookup walks the matching stretch of each half of the key space.
+ * <p>
+ * Nodes live in fixed-size pages of {@code <table>.<column>.bpt}, page 0 being the file header.
+ * Recently used nodes are kept in an LRU cache and dirty ones are written back when they are
+ * evicted or the index is saved. The header's table stamp is cleared before the first node is
+ * written after a save, so a file caught part way through a change is never trusted. Deleting
+ * leaves emptied leaves in place; the file is compacted whenever the index is rebuilt.
+ */
+public class BTreeIndex implements Index {
+
+    /** "DBBT" */
+    private static final int MAGIC = 0x44424254;
+    private static final int VERSION = 1;
+    static final int PAGE_SIZE = 4096;
+    /** Entries bigger than this are kept out of the tree, see {@link #oversized}. */
+    private static final int MAX_ENTRY_SIZE = PAGE_SIZE / 4;
+    private static final int LEAF_HEADER = 9;
+    private static final int INTERNAL_HEADER = 5;
+    private static final int OVERSIZED_AT = 36;
+
+    private final File file;
+    private final String column;
+    private final LinkedHashMap<Integer, Node> cache = new LinkedHashMap<>(16, 0.75f, true);
+    /** Ids of rows whose value is too long for a tree entry; every lookup returns them. */
+    private final Set<String> oversized = new HashSet<>();
+    private FileChannel channel;
+    private int rootPage;
+    private int pageCount;
+    private boolean dirty;
+    private boolean stampOnDisk;
+
+    BTreeIndex(File tableFile, String column) {
+        this.file = IndexType.BTREE.getFile(tableFile, column);
+        this.column = column;
+    }
+
+    @Override
+    public IndexType getType() {
+        return IndexType.BTREE;
+    }
+
+    @Override
+    public String getColumn() {
+        return column;
+    }
+
+    @Override
+    public synchronized Collection<String> lookup(String operator, String value) throws DatabaseOperationException {
+        if (!List.of("==", "<", "<=", ">", ">=").contains(operator)) {
+            return null;
+        }
+        Key bound = Key.of(value);
+        List<String> ids = new ArrayList<>(oversized);
+        if (bound.numeric()) {
+            double number = bound.number();
+            Entry from = new Entry(new Key(true, number, ""), "");
+            switch (operator) {
+                case "==" -> scan(from, entry -> entry.key.numeric() && entry.key.number() == number, ids);
+                case ">", ">=" -> scan(from, entry -> entry.key.numeric(), ids);
+                default -> scan(null, entry -> entry.key.numeric() && entry.key.number() <= number, ids);
+            }
+        } else {
+            // Against a value that isn't a number, numeric cells are compared as strings too
+            scan(null, entry -> entry.key.numeric(), ids);
+        }
+        // Cells that aren't numbers always compare as strings against the value as written
+        String text = bound.text();
+        switch (operator) {
+            case "==" -> scan(new Entry(new Key(false, 0, text), ""), entry -> entry.key.text().equals(text), ids);
+            case ">", ">=" -> scan(new Entry(new Key(false, 0, text), ""), entry -> true, ids);
+            default -> scan(new Entry(new Key(false, 0, ""), ""), entry -> entry.key.text().compareTo(text) <= 0, ids);
+        }
+        trimCache();
+        return ids;
+    }
+
+    @Override
+    public synchronized void add(Row row, Table table) throws DatabaseOperationException {
+        dirty = true;
+        Entry entry = entryFor(row, table);
+        if (entry == null) {
+            return;
+        }
+        if (entry.size > MAX_ENTRY_SIZE) {
+            oversized.add(entry.id);
+            return;
+        }
+        Split split = insert(rootPage, entry);
+        if (split != null) {
+            Node root = newNode(false);
+            root.addChild(0, rootPage);
+            root.addEntry(0, split.separator());
+            root.addChild(1, split.rightPage());
+            rootPage = root.page;
+        }
+        trimCache();
+    }
+
+    @Override
+    public synchronized void remove(Row row, Table table) throws DatabaseOperationException {
+        dirty = true;
+        Entry entry = entryFor(row, table);
+        if (entry == null) {
+            return;
+        }
+        if (entry.size > MAX_ENTRY_SIZE) {
+            oversized.remove(entry.id);
+            return;
+        }
+        Node node = node(rootPage);
+        while (!node.leaf) {
+            node = node(node.children.get(childIndex(node, entry)));
+        }
+        int position = Collections.binarySearch(node.entries, entry);
+        if (position >= 0) {
+            node.removeEntry(position);
+            node.dirty = true;
+        }
+        trimCache();
+    }
+
+    @Override
+    public synchronized void rebuild(Table table) throws DatabaseOperationException {
+        cache.clear();
+        oversized.clear();
+        try {
+            channel().truncate(0);
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while writing index");
+        }
+        stampOnDisk = false;
+        pageCount = 1;
+        rootPage = newNode(true).page;
+        for (Row row : table.getRows()) {
+            add(row, table);
+        }
+    }
+
+    @Override
+    public synchronized boolean load(File tableFile) {
+        if (!file.exists()) {
+            return false;
+        }
+        try {
+            ByteBuffer page = readPage(0);
+            if (page.getInt() != MAGIC || page.getInt() != VERSION || page.getInt() != PAGE_SIZE) {
+                return false;
+            }
+            int root = page.getInt();
+            int pages = page.getInt();
+            if (page.getLong() != tableFile.length() || page.getLong() != TableIndexes.modifiedTime(tableFile)) {
+                return false;
+            }
+            oversized.clear();
+            int oversizedCount = page.getInt();
+            for (int i = 0; i < oversizedCount; i++) {
+                oversized.add(readString(page));
+            }
+            cache.clear();
+            rootPage = root;
+            pageCount = pages;
+            dirty = false;
+            stampOnDisk = true;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // A torn index file is as good as a missing one
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void save(File tableFile) throws DatabaseOperationException {
+        try {
+            for (Node node : cache.values()) {
+                if (node.dirty) {
+                    writeNode(node);
+                }
+            }
+            stampOnDisk = writeHeader(tableFile.length(), TableIndexes.modifiedTime(tableFile));
+            channel().force(true);
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while writing index");
+        }
+        dirty = false;
+    }
+
+    @Override
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    @Override
+    public synchronized void markDirty() {
+        dirty = true;
+    }
+
+    @Override
+    public synchronized void close() {
+        cache.clear();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing left to flush
+            }
+            channel = null;
+        }
+    }
+
+    @Override
+    public synchronized void delete() {
+        close();
+        file.delete();
+    }
+
+    private Entry entryFor(Row row, Table table) {
+        String value = row.getColumnValue(table.getColumn(column));
+        String id = row.getColumnValue(table.getColumn("id"));
+        if (value == null || id == null) {
+            return null;
+        }
+        return new Entry(Key.of(value), id);
+    }
+
+    /** Inserts below {@code page}, returning how the node split if it overflowed. */
+    private Split insert(int page, Entry entry) throws DatabaseOperationException {
+        Node node = node(page);
+        if (node.leaf) {
+            int position = Collections.binarySearch(node.entries, entry);
+            if (position >= 0) {
+                return null;
+            }
+            node.addEntry(-position - 1, entry);
+        } else {
+            int child = childIndex(node, entry);
+            Split split = insert(node.children.get(child), entry);
+            if (split == null) {
+                return null;
+            }
+            node.addEntry(child, split.separator());
+            node.addChild(child + 1, split.rightPage());
+        }
+        node.dirty = true;
+        return node.size > PAGE_SIZE ? split(node) : null;
+    }
+
+    /** Moves the upper half of {@code node}, by bytes, into a new right sibling. */
+    private Split split(Node node) {
+        int half = node.size / 2;
+        int mid = 0;
+        for (int used = 0; mid < node.entries.size() - 1 && used < half; mid++) {
+            used += node.entries.get(mid).size + (node.leaf ? 0 : 4);
+        }
+        mid = Math.max(mid, 1);
+
+        Node right = newNode(node.leaf);
+        Entry separator;
+        if (node.leaf) {
+            for (int i = mid; i < node.entries.size(); i++) {
+                right.addEntry(right.entries.size(), node.entries.get(i));
+            }
+            separator = right.entries.get(0);
+            right.next = node.next;
+            node.next = right.page;
+        } else {
+            separator = node.entries.get(mid);
+            for (int i = mid + 1; i < node.entries.size(); i++) {
+                right.addEntry(right.entries.size(), node.entries.get(i));
+            }
+            for (int i = mid + 1; i < node.children.size(); i++) {
+                right.addChild(right.children.size(), node.children.get(i));
+            }
+            while (node.children.size() > mid + 1) {
+                node.removeChild(node.children.size() - 1);
+            }
+        }
+        while (node.entries.size() > mid) {
+            node.removeEntry(node.entries.size() - 1);
+        }
+        return new Split(separator, right.page);
+    }
+
+    /** Collects ids from {@code from} (or the first entry) onwards for as long as {@code matching} holds. */
+    private void scan(Entry from, Predicate<Entry> matching, List<String> ids) throws DatabaseOperationException {
+        Node leaf = node(rootPage);
+        while (!leaf.leaf) {
+            leaf = node(leaf.children.get(from == null ? 0 : childIndex(leaf, from)));
+        }
+        int position = 0;
+        if (from != null) {
+            int found = Collections.binarySearch(leaf.entries, from);
+            position = found >= 0 ? found : -found - 1;
+        }
+        while (true) {
+            for (; position < leaf.entries.size(); position++) {
+                Entry entry = leaf.entries.get(position);
+                if (!matching.test(entry)) {
+                    return;
+                }
+                ids.add(entry.id);
+            }
+            if (leaf.next == 0) {
+                return;
+            }
+            leaf = node(leaf.next);
+            position = 0;
+        }
+    }
+
+    private static int childIndex(Node node, Entry entry) {
+        int position = Collections.binarySearch(node.entries, entry);
+        return position >= 0 ? position + 1 : -position - 1;
+    }
+
+    private Node newNode(boolean leaf) {
+        Node node = new Node(pageCount++, leaf);
+        node.dirty = true;
+        cache.put(node.page, node);
+        return node;
+    }
+
+    private Node node(int page) throws DatabaseOperationException {
+        Node node = cache.get(page);
+        if (node == null) {
+            try {
+                node = readNode(page);
+            } catch (IOException | RuntimeException e) {
+                throw new DatabaseOperationException(" Error occurred while reading index");
+            }
+            cache.put(page, node);
+        }
+        return node;
+    }
+
+    /**
+     * Writes back and drops the least recently used nodes beyond the cache size. Only called once an
+     * operation is complete, so no node still referenced by a caller is evicted.
+     */
+    private void trimCache() throws DatabaseOperationException {
+        int capacity = Config.getIndexNodeCache();
+        Iterator<Node> nodes = cache.values().iterator();
+        try {
+            while (cache.size() > capacity && nodes.hasNext()) {
+                Node node = nodes.next();
+                if (node.dirty) {
+                    writeNode(node);
+                }
+                nodes.remove();
+            }
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while writing index");
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+        return channel;
+    }
+
+    private ByteBuffer readPage(int page) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        long position = (long) page * PAGE_SIZE;
+        while (buffer.hasRemaining()) {
+            if (channel().read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Index page missing: " + page);
+            }
+        }
+        return buffer.flip();
+    }
+
+    private void writePage(int page, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        long position = (long) page * PAGE_SIZE;
+        while (buffer.hasRemaining()) {
+            channel().write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Writes the file header with the given table stamp. Returns false if the oversized ids did not
+     * fit, in which case the stamp is left cleared and the index is rebuilt when next loaded.
+     */
+    private boolean writeHeader(long tableLength, long tableModified) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(PAGE_SIZE).putInt(rootPage).putInt(pageCount);
+        int idsSize = 4;
+        for (String id : oversized) {
+            idsSize += 4 + id.getBytes(StandardCharsets.UTF_8).length;
+        }
+        boolean fits = OVERSIZED_AT + idsSize <= PAGE_SIZE;
+        buffer.putLong(fits ? tableLength : -1).putLong(fits ? tableModified : -1);
+        if (fits) {
+            buffer.putInt(oversized.size());
+            for (String id : oversized) {
+                writeString(buffer, id);
+            }
+        } else {
+            buffer.putInt(0);
+        }
+        buffer.position(PAGE_SIZE);
+        writePage(0, buffer);
+        return fits;
+    }
+
+    private void writeNode(Node node) throws IOException {
+        if (stampOnDisk) {
+            // From here on the file no longer matches the stamped table
+            writeHeader(-1, -1);
+            stampOnDisk = false;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        buffer.put((byte) (node.leaf ? 1 : 0)).putInt(node.entries.size());
+        if (node.leaf) {
+            buffer.putInt(node.next);
+        } else {
+            node.children.forEach(buffer::putInt);
+        }
+        for (Entry entry : node.entries) {
+            buffer.put((byte) (entry.key.numeric() ? 1 : 0)).putDouble(entry.key.number());
+            writeString(buffer, entry.key.text());
+            writeString(buffer, entry.id);
+        }
+        buffer.position(PAGE_SIZE);
+        writePage(node.page, buffer);
+        node.dirty = false;
+    }
+
+    private Node readNode(int page) throws IOException {
+        ByteBuffer buffer = readPage(page);
+        Node node = new Node(page, buffer.get() == 1);
+        int count = buffer.getInt();
+        if (node.leaf) {
+            node.next = buffer.getInt();
+        } else {
+            for (int i = 0; i <= count; i++) {
+                node.addChild(i, buffer.getInt());
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            boolean numeric = buffer.get() == 1;
+            double number = buffer.getDouble();
+            String text = readString(buffer);
+            node.addEntry(i, new Entry(new Key(numeric, number, text), readString(buffer)));
+        }
+        return node;
+    }
+
+    private static void writeString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** A column value in index order: numbers by value, then by how they are written, then strings. */
+    record Key(boolean numeric, double number, String text) implements Comparable<Key> {
+
+        static Key of(String value) {
+            try {
+                double number = Double.parseDouble(value);
+                // -0.0 == 0.0 when conditions compare them
+                return new Key(true, number == 0 ? 0.0 : number, value);
+            } catch (NumberFormatException e) {
+                return new Key(false, 0, value);
+            }
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            if (numeric != other.numeric) {
+                return numeric ? -1 : 1;
+            }
+            if (numeric) {
+                int byNumber = Double.compare(number, other.number);
+                if (byNumber != 0) {
+                    return byNumber;
+                }
+            }
+            return text.compareTo(other.text);
+        }
+    }
+
+    /** One (value, row id) pair; the id keeps entries unique when values repeat. */
+    private static final class Entry implements Comparable<Entry> {
+        final Key key;
+        final String id;
+        final int size;
+
+        Entry(Key key, String id) {
+            this.key = key;
+            this.id = id;
+            this.size = 17 + key.text().getBytes(StandardCharsets.UTF_8).length
+                    + id.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byKey = key.compareTo(other.key);
+            return byKey != 0 ? byKey : id.compareTo(other.id);
+        }
+    }
+
+    private record Split(Entry separator, int rightPage) {
+    }
+
+    private static final class Node {
+        final int page;
+        final boolean leaf;
+        final List<Entry> entries = new ArrayList<>();
+        final List<Integer> children = new ArrayList<>();
+        int next;
+        int size;
+        boolean dirty;
+
+        Node(int page, boolean leaf) {
+            this.page = page;
+            this.leaf = leaf;
+            this.size = leaf ? LEAF_HEADER : INTERNAL_HEADER;
+        }
+
+        void addEntry(int index, Entry entry) {
+            entries.add(index, entry);
+            size += entry.size;
+        }
+
+        void removeEntry(int index) {
+            size -= entries.remove(index).size;
+        }
+
+        void addChild(int index, int page) {
+            children.add(index, page);
+            size += 4;
+        }
+
+        void removeChild(int index) {
+            children.remove(index);
+            size -= 4;
+        }
+    }
+}
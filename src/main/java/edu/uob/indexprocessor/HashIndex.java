@@ -0,0 +1,201 @@
+package edu.uob.indexprocessor;
+
+import edu.uob.dbmodel.Row;
+import edu.uob.dbmodel.Table;
+import edu.uob.exceptions.DatabaseOperationException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hash index over one column, mapping each value to the ids of the rows holding it. Numeric values
+ * are keyed by their parsed value so that {@code 65} and {@code 65.0} share a bucket, the same way
+ * {@code ==} compares them. Saved to {@code <table>.<column>.idx} next to the table file.
+ */
+public class HashIndex implements Index {
+
+    /** "DBHI" */
+    private static final int MAGIC = 0x44424849;
+
+    private final File file;
+    private final String column;
+    private final Map<String, Set<String>> buckets = new HashMap<>();
+    private boolean dirty;
+
+    HashIndex(File tableFile, String column) {
+        this.file = IndexType.HASH.getFile(tableFile, column);
+        this.column = column;
+    }
+
+    @Override
+    public IndexType getType() {
+        return IndexType.HASH;
+    }
+
+    @Override
+    public String getColumn() {
+        return column;
+    }
+
+    @Override
+    public Collection<String> lookup(String operator, String value) {
+        if (!operator.equals("==")) {
+            return null;
+        }
+        String key = keyOf(value);
+        if (key == null) {
+            return Set.of();
+        }
+        return Collections.unmodifiableSet(buckets.getOrDefault(key, Set.of()));
+    }
+
+    @Override
+    public void add(Row row, Table table) {
+        String key = keyOf(row.getColumnValue(table.getColumn(column)));
+        if (key != null) {
+            buckets.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(row.getColumnValue(table.getColumn("id")));
+        }
+        dirty = true;
+    }
+
+    @Override
+    public void remove(Row row, Table table) {
+        String key = keyOf(row.getColumnValue(table.getColumn(column)));
+        Set<String> ids = key == null ? null : buckets.get(key);
+        if (ids != null) {
+            ids.remove(row.getColumnValue(table.getColumn("id")));
+            if (ids.isEmpty()) {
+                buckets.remove(key);
+            }
+        }
+        dirty = true;
+    }
+
+    @Override
+    public void rebuild(Table table) {
+        buckets.clear();
+        for (Row row : table.getRows()) {
+            add(row, table);
+        }
+    }
+
+    @Override
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    @Override
+    public void markDirty() {
+        dirty = true;
+    }
+
+    @Override
+    public boolean load(File tableFile) {
+        if (!file.exists()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readLong() != tableFile.length() || in.readLong() != TableIndexes.modifiedTime(tableFile)) {
+                return false;
+            }
+            buckets.clear();
+            int bucketCount = in.readInt();
+            for (int i = 0; i < bucketCount; i++) {
+                String key = readString(in);
+                int idCount = in.readInt();
+                Set<String> ids = new LinkedHashSet<>(idCount * 2);
+                for (int j = 0; j < idCount; j++) {
+                    ids.add(readString(in));
+                }
+                buckets.put(key, ids);
+            }
+            dirty = false;
+            return true;
+        } catch (IOException e) {
+            // A torn index file is as good as a missing one
+            return false;
+        }
+    }
+
+    @Override
+    public void save(File tableFile) throws DatabaseOperationException {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(tableFile.length());
+            out.writeLong(TableIndexes.modifiedTime(tableFile));
+            out.writeInt(buckets.size());
+            for (Map.Entry<String, Set<String>> bucket : buckets.entrySet()) {
+                writeString(out, bucket.getKey());
+                out.writeInt(bucket.getValue().size());
+                for (String id : bucket.getValue()) {
+                    writeString(out, id);
+                }
+            }
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while writing index");
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while writing index");
+        }
+        dirty = false;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void delete() {
+        file.delete();
+    }
+
+    /**
+     * Bucket key for a value: numbers by their parsed value, anything else as written. Null and NaN
+     * never compare equal to anything, so they are not indexed.
+     */
+    static String keyOf(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            double number = Double.parseDouble(value);
+            if (Double.isNaN(number)) {
+                return null;
+            }
+            // -0.0 == 0.0 but their strings differ
+            return "n:" + (number == 0 ? 0.0 : number);
+        } catch (NumberFormatException e) {
+            return "s:" + value;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,49 @@
+package edu.uob.indexprocessor;
+
+import edu.uob.dbmodel.Row;
+import edu.uob.dbmodel.Table;
+import edu.uob.exceptions.DatabaseOperationException;
+
+import java.io.File;
+import java.util.Collection;
+
+/**
+ * An index over one column of a table, mapping column values to row ids. Indexes are kept in step
+ * with the table in memory and saved alongside the table file, stamped with that file's size and
+ * modification time so a copy that fell behind the table is detected and rebuilt.
+ */
+public interface Index {
+
+    IndexType getType();
+
+    String getColumn();
+
+    /**
+     * Ids of the rows that may satisfy {@code column <operator> value}, or null if this index
+     * cannot answer the operator. Callers still apply the condition to each row.
+     */
+    Collection<String> lookup(String operator, String value) throws DatabaseOperationException;
+
+    /** Adds a row of {@code table}, whose headers say where the row's cells are. */
+    void add(Row row, Table table) throws DatabaseOperationException;
+
+    void remove(Row row, Table table) throws DatabaseOperationException;
+
+    void rebuild(Table table) throws DatabaseOperationException;
+
+    /** Loads the saved index, returning false if it is missing or older than the table file. */
+    boolean load(File tableFile);
+
+    /** Writes the index, stamped with the table file's current size and modification time. */
+    void save(File tableFile) throws DatabaseOperationException;
+
+    boolean isDirty();
+
+    /** Notes a change to the table file that no row-level update covers, such as a new column. */
+    void markDirty();
+
+    /** Releases any open file without saving. */
+    void close();
+
+    void delete();
+}
@@ -0,0 +1,42 @@
+package edu.uob.indexprocessor;
+
+import edu.uob.exceptions.DatabaseOperationException;
+
+import java.io.File;
+
+/** How an index is stored, and with it which conditions it can answer. */
+public enum IndexType {
+    /** Equality lookups only. */
+    HASH(".idx"),
+    /** Ordered, answers range conditions as well as equality. */
+    BTREE(".bpt");
+
+    private final String extension;
+
+    IndexType(String extension) {
+        this.extension = extension;
+    }
+
+    public static IndexType fromName(String name) throws DatabaseOperationException {
+        try {
+            return valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new DatabaseOperationException(" Unknown index type: " + name);
+        }
+    }
+
+    /** The index file, {@code <table>.<column>.<extension>} next to the table file. */
+    File getFile(File tableFile, String column) {
+        String name = tableFile.getName();
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+        return new File(tableFile.getParentFile(), baseName + "." + column + extension);
+    }
+
+    Index create(File tableFile, String column) {
+        return switch (this) {
+            case HASH -> new HashIndex(tableFile, column);
+            case BTREE -> new BTreeIndex(tableFile, column);
+        };
+    }
+}
@@ -0,0 +1,189 @@
+package edu.uob.indexprocessor;
+
+import edu.uob.dbmodel.Row;
+import edu.uob.dbmodel.Table;
+import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.storageprocessor.TableCache;
+import edu.uob.storageprocessor.TableMetadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The indexes defined on one table. Which columns are indexed, and how, is kept in the table's
+ * metadata sidecar as {@code column:TYPE} pairs; the indexes themselves are loaded on first use
+ * and kept in memory. Like the table they belong to, they must only be changed while holding the
+ * table's write lock.
+ */
+public class TableIndexes {
+
+    private static final String INDEXES = "indexes";
+    private static final Map<String, TableIndexes> LOADED = new ConcurrentHashMap<>();
+
+    private final File tableFile;
+    private final Map<String, Index> indexes = new LinkedHashMap<>();
+
+    private TableIndexes(File tableFile) {
+        this.tableFile = tableFile;
+    }
+
+    /** Returns the indexes of a table, loading (and if need be rebuilding) them the first time. */
+    public static TableIndexes forTable(File tableFile) throws DatabaseOperationException {
+        String key = tableFile.getAbsolutePath();
+        TableIndexes tableIndexes = LOADED.get(key);
+        if (tableIndexes != null) {
+            return tableIndexes;
+        }
+        synchronized (TableIndexes.class) {
+            tableIndexes = LOADED.get(key);
+            if (tableIndexes == null) {
+                tableIndexes = new TableIndexes(tableFile);
+                tableIndexes.load();
+                LOADED.put(key, tableIndexes);
+            }
+            return tableIndexes;
+        }
+    }
+
+    /** Deletes every index file of a dropped table. */
+    public static void delete(File tableFile) throws DatabaseOperationException {
+        TableIndexes loaded = LOADED.remove(tableFile.getAbsolutePath());
+        if (loaded != null) {
+            loaded.indexes.values().forEach(Index::close);
+        }
+        for (Map.Entry<String, IndexType> column : indexedColumns(tableFile).entrySet()) {
+            column.getValue().getFile(tableFile, column.getKey()).delete();
+        }
+    }
+
+    /** Forgets every loaded index under the database folder. */
+    public static void forgetDatabase(File databaseDir) {
+        String prefix = databaseDir.getAbsolutePath() + File.separator;
+        LOADED.entrySet().removeIf(entry -> {
+            if (!entry.getKey().startsWith(prefix)) {
+                return false;
+            }
+            entry.getValue().indexes.values().forEach(Index::close);
+            return true;
+        });
+    }
+
+    /**
+     * Saves the changed indexes of every table in the database. Called once the tables themselves
+     * are on disk so that each index is stamped with the file it describes.
+     */
+    public static void saveDirty(File databaseDir) throws DatabaseOperationException {
+        String prefix = databaseDir.getAbsolutePath() + File.separator;
+        for (Map.Entry<String, TableIndexes> entry : LOADED.entrySet()) {
+            if (!entry.getKey().startsWith(prefix) || !entry.getValue().tableFile.exists()) {
+                continue;
+            }
+            for (Index index : entry.getValue().indexes.values()) {
+                if (index.isDirty()) {
+                    index.save(entry.getValue().tableFile);
+                }
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return indexes.isEmpty();
+    }
+
+    /** The index on {@code column}, or null if it has none. */
+    public Index get(String column) {
+        return indexes.get(column);
+    }
+
+    public void create(String column, IndexType type, Table table) throws DatabaseOperationException {
+        if (indexes.containsKey(column)) {
+            throw new DatabaseOperationException(" Index already exists on column: " + column);
+        }
+        Index index = type.create(tableFile, column);
+        index.rebuild(table);
+        index.save(tableFile);
+        // The cached table may be ahead of its file until the next checkpoint
+        index.markDirty();
+        indexes.put(column, index);
+        saveColumns();
+    }
+
+    public void drop(String column) throws DatabaseOperationException {
+        Index index = indexes.remove(column);
+        if (index == null) {
+            throw new DatabaseOperationException(" No index on column: " + column);
+        }
+        index.delete();
+        saveColumns();
+    }
+
+    public void add(Row row, Table table) throws DatabaseOperationException {
+        for (Index index : indexes.values()) {
+            index.add(row, table);
+        }
+    }
+
+    public void remove(Row row, Table table) throws DatabaseOperationException {
+        for (Index index : indexes.values()) {
+            index.remove(row, table);
+        }
+    }
+
+    /** Notes a change to the table file that no row-level update covers, such as a new column. */
+    public void markDirty() {
+        indexes.values().forEach(Index::markDirty);
+    }
+
+    static long modifiedTime(File tableFile) throws IOException {
+        return Files.getLastModifiedTime(tableFile.toPath()).to(TimeUnit.NANOSECONDS);
+    }
+
+    private static Map<String, IndexType> indexedColumns(File tableFile) throws DatabaseOperationException {
+        Map<String, IndexType> columns = new LinkedHashMap<>();
+        // Tables without a sidecar predate indexes; don't create one just to find that out
+        if (!TableMetadata.getMetadataFile(tableFile).exists()) {
+            return columns;
+        }
+        String property = TableMetadata.forTable(tableFile).getProperty(INDEXES);
+        if (property == null || property.isEmpty()) {
+            return columns;
+        }
+        for (String column : property.split(",")) {
+            // Entries without a type were written before there was more than one
+            int colon = column.indexOf(':');
+            columns.put(colon < 0 ? column : column.substring(0, colon),
+                    colon < 0 ? IndexType.HASH : IndexType.fromName(column.substring(colon + 1)));
+        }
+        return columns;
+    }
+
+    private void load() throws DatabaseOperationException {
+        Table table = null;
+        for (Map.Entry<String, IndexType> column : indexedColumns(tableFile).entrySet()) {
+            Index index = column.getValue().create(tableFile, column.getKey());
+            if (!index.load(tableFile)) {
+                if (table == null) {
+                    table = TableCache.getTable(tableFile);
+                }
+                index.rebuild(table);
+            }
+            indexes.put(column.getKey(), index);
+        }
+    }
+
+    private void saveColumns() throws DatabaseOperationException {
+        TableMetadata metadata = TableMetadata.forTable(tableFile);
+        StringJoiner columns = new StringJoiner(",");
+        for (Map.Entry<String, Index> index : indexes.entrySet()) {
+            columns.add(index.getKey() + ":" + index.getValue().getType().name());
+        }
+        metadata.setProperty(INDEXES, indexes.isEmpty() ? null : columns.toString());
+        metadata.save();
+    }
+}
@@ -0,0 +1,384 @@
+package edu.uob.networkprocessor;
+
+import edu.uob.DBServer;
+import edu.uob.utils.Config;
+import edu.uob.utils.Session;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Non-blocking front end: a single selector thread owns every socket and a worker pool runs the
+ * commands. Clients may pipeline any number of newline separated, {@code ;}-terminated statements;
+ * each connection executes its statements one at a time in arrival order, so replies always come
+ * back in the order the statements were sent.
+ * <p>
+ * A connection stops being read while it has more than {@link #MAX_QUEUED_STATEMENTS} statements
+ * waiting to run or more than {@link #MAX_QUEUED_BYTES} of reply waiting to be sent, and is read
+ * again once its worker catches up, so a client that only writes can't grow either without bound.
+ * A line longer than {@link #MAX_LINE_BYTES} closes the connection.
+ */
+public class SelectorServer {
+
+    private static final char END_OF_TRANSMISSION = 4;
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int WRITE_CHUNK_SIZE = 8192;
+    private static final long MAX_QUEUED_BYTES = 256 * 1024;
+    private static final int MAX_QUEUED_STATEMENTS = 1024;
+    private static final int MAX_LINE_BYTES = 1024 * 1024;
+
+    private final DBServer server;
+    // Connections whose interest in reading or writing has changed off the selector thread
+    private final Queue<Connection> pendingInterest = new ConcurrentLinkedQueue<>();
+    private volatile Selector selector;
+
+    public SelectorServer(DBServer server) {
+        this.server = server;
+    }
+
+    public void listenOn(int portNumber) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(Config.getConnectionThreads());
+        try (Selector sel = Selector.open();
+             ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            selector = sel;
+            serverChannel.bind(new InetSocketAddress(portNumber));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            System.out.println("Server listening on port " + portNumber);
+
+            while (!Thread.interrupted()) {
+                selector.select();
+                updatePendingInterest();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept(serverChannel);
+                        } else {
+                            if (key.isReadable()) {
+                                read(key, workers);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write(key);
+                            }
+                        }
+                    } catch (IOException e) {
+                        System.err.println("Connection closed with an IO error: " + e.getMessage());
+                        close(key);
+                    }
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+        System.out.println("Connection established: " + channel.getRemoteAddress());
+    }
+
+    private void read(SelectionKey key, ExecutorService workers) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        int read = connection.channel.read(buffer);
+        if (read < 0) {
+            close(key);
+            return;
+        }
+        buffer.flip();
+        List<String> statements = connection.decode(buffer);
+        if (statements == null) {
+            System.err.println("Connection closed: line longer than " + MAX_LINE_BYTES + " bytes");
+            close(key);
+            return;
+        }
+        if (!statements.isEmpty() && connection.enqueue(statements)) {
+            workers.execute(() -> drain(connection));
+        }
+        // Stops reading if the worker has fallen behind
+        key.interestOps(connection.interestOps());
+    }
+
+    /** Runs on a worker thread and executes a connection's queued statements strictly in order. */
+    private void drain(Connection connection) {
+        String command;
+        ConnectionWriter writer = new ConnectionWriter(connection);
+        try {
+            while ((command = connection.nextCommand()) != null) {
+                resumeReadingIfCaughtUp(connection);
+                System.out.println("Received message: " + command);
+                server.handleCommand(command, connection.session, writer);
+                writer.write("\n" + END_OF_TRANSMISSION + "\n");
+                writer.flush();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Connection closed with an IO error: " + e.getMessage());
+            connection.abandon();
+        }
+    }
+
+    /** Hands an encoded chunk to the selector thread, waiting while too much output is queued. */
+    private void queueOutput(Connection connection, ByteBuffer chunk) throws IOException {
+        connection.awaitCapacity();
+        connection.queue(chunk);
+        pendingInterest.add(connection);
+        selector.wakeup();
+    }
+
+    private void resumeReadingIfCaughtUp(Connection connection) {
+        if (connection.resumeReading()) {
+            pendingInterest.add(connection);
+            selector.wakeup();
+        }
+    }
+
+    private void updatePendingInterest() {
+        Connection connection;
+        while ((connection = pendingInterest.poll()) != null) {
+            if (connection.key.isValid()) {
+                connection.key.interestOps(connection.interestOps());
+            }
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        ByteBuffer buffer;
+        while ((buffer = connection.outbound.peek()) != null) {
+            int written = connection.channel.write(buffer);
+            connection.release(written);
+            if (buffer.hasRemaining()) {
+                // Socket send buffer is full, wait for the next writable event
+                return;
+            }
+            connection.outbound.poll();
+        }
+        // Drops OP_WRITE, and reads again if the client had fallen behind on its replies
+        key.interestOps(connection.interestOps());
+    }
+
+    private void close(SelectionKey key) {
+        if (key.attachment() instanceof Connection connection) {
+            connection.abandon();
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+            // Nothing left to clean up on a socket that failed to close
+        }
+    }
+
+    /**
+     * Splits a line into its {@code ;}-terminated statements, ignoring semicolons inside quoted
+     * string literals. Text without a terminating semicolon is returned as its own statement so the
+     * parser can report it.
+     */
+    static List<String> splitStatements(String line) {
+        List<String> statements = new ArrayList<>();
+        boolean inQuotes = false;
+        int start = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\'') {
+                inQuotes = !inQuotes;
+            } else if (c == ';' && !inQuotes) {
+                statements.add(line.substring(start, i + 1).trim());
+                start = i + 1;
+            }
+        }
+        String remainder = line.substring(start);
+        if (statements.isEmpty() || !remainder.isBlank()) {
+            statements.add(remainder.trim());
+        }
+        return statements;
+    }
+
+    private static class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final Session session = new Session();
+        private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+        private final Queue<String> commands = new ArrayDeque<>();
+        private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+        private boolean running = false;
+        private long queuedBytes = 0;
+        private boolean readPaused = false;
+        private boolean closed = false;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        /**
+         * Collects complete lines from the socket bytes and returns the statements they contain, or
+         * null once the line being collected grows past {@link #MAX_LINE_BYTES}.
+         */
+        List<String> decode(ByteBuffer buffer) {
+            List<String> statements = new ArrayList<>();
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    String line = partialLine.toString(StandardCharsets.UTF_8);
+                    partialLine.reset();
+                    if (line.endsWith("\r")) {
+                        line = line.substring(0, line.length() - 1);
+                    }
+                    statements.addAll(splitStatements(line));
+                } else if (partialLine.size() < MAX_LINE_BYTES) {
+                    partialLine.write(b);
+                } else {
+                    return null;
+                }
+            }
+            return statements;
+        }
+
+        /** Queues statements and returns true if the caller must schedule a worker to drain them. */
+        synchronized boolean enqueue(List<String> statements) {
+            commands.addAll(statements);
+            if (running) {
+                return false;
+            }
+            running = true;
+            return true;
+        }
+
+        /**
+         * The key's interest for the selector thread: writes while there is output to send, reads
+         * unless too many statements or too many reply bytes are waiting.
+         */
+        synchronized int interestOps() {
+            readPaused = backlogged();
+            return (readPaused ? 0 : SelectionKey.OP_READ) | (outbound.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+        }
+
+        /** Returns true if reading was paused and the worker has since caught up. */
+        synchronized boolean resumeReading() {
+            if (!readPaused || backlogged()) {
+                return false;
+            }
+            readPaused = false;
+            return true;
+        }
+
+        private boolean backlogged() {
+            return commands.size() >= MAX_QUEUED_STATEMENTS || queuedBytes > MAX_QUEUED_BYTES;
+        }
+
+        synchronized String nextCommand() {
+            String command = commands.poll();
+            if (command == null || closed) {
+                running = false;
+                return null;
+            }
+            return command;
+        }
+
+        synchronized void awaitCapacity() throws IOException {
+            try {
+                while (queuedBytes > MAX_QUEUED_BYTES && !closed) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the client to read");
+            }
+            if (closed) {
+                throw new IOException("Connection closed by client");
+            }
+        }
+
+        synchronized void queue(ByteBuffer chunk) {
+            queuedBytes += chunk.remaining();
+            outbound.add(chunk);
+        }
+
+        synchronized void release(int bytes) {
+            queuedBytes -= bytes;
+            notifyAll();
+        }
+
+        synchronized void abandon() {
+            closed = true;
+            commands.clear();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Streams a reply into the connection's outbound queue in small chunks. Writers block once the
+     * client falls behind by more than {@link #MAX_QUEUED_BYTES}, which keeps memory per connection
+     * bounded no matter how large a result is.
+     */
+    private class ConnectionWriter extends Writer {
+        private final Connection connection;
+        private final StringBuilder pending = new StringBuilder();
+
+        ConnectionWriter(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            pending.append(cbuf, off, len);
+            if (pending.length() >= WRITE_CHUNK_SIZE) {
+                push();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            push();
+        }
+
+        @Override
+        public void close() throws IOException {
+            push();
+        }
+
+        private void push() throws IOException {
+            int end = pending.length();
+            if (end > 0 && Character.isHighSurrogate(pending.charAt(end - 1))) {
+                // Keep a dangling surrogate until its pair arrives
+                end--;
+            }
+            if (end == 0) {
+                return;
+            }
+            byte[] bytes = pending.substring(0, end).getBytes(StandardCharsets.UTF_8);
+            pending.delete(0, end);
+            queueOutput(connection, ByteBuffer.wrap(bytes));
+        }
+    }
+}
@@ -1,23 +1,80 @@
 package edu.uob.outputprocessor;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Collects the reply of the command in flight. Status messages are held back until the outcome is
+ * known, while result rows are streamed to the connection's writer as soon as they are produced,
+ * right after the {@code [OK]} status line. Without a writer the reply is buffered and read back
+ * through {@link #getResult()}.
+ */
 public class Logger {
 
-    static StringBuilder builder = new StringBuilder();
+    private StringBuilder builder = new StringBuilder();
+    private StringBuilder result = new StringBuilder();
+    private Writer output = null;
+    private boolean started = false;
+
+    public void setOutput(Writer output) {
+        this.output = output;
+    }
 
-    public static String getResult() {
-        return builder.toString();
+    public String getResult() {
+        return result.toString();
     }
 
-    public static void logResult(String result) {
+    public void logResult(String result) {
         builder.append(result);
     }
 
-    public static void flush() {
+    /** Commits the {@code [OK]} status so that rows can follow it. */
+    public void startResult() {
+        if (!started) {
+            started = true;
+            emit(Result.SUCCESS.value);
+            emit(builder);
+            builder.setLength(0);
+        }
+    }
+
+    /** Streams one line of a result set, committing the status line first if needed. */
+    public void logRow(String row) {
+        startResult();
+        emit("\n");
+        emit(row);
+    }
+
+    /** Finishes the reply, writing the status and any held back messages. */
+    public void completeResult(Result status) {
+        if (!started) {
+            emit(status.value);
+        } else if (status == Result.FAILURE) {
+            emit("\n");
+            emit(Result.FAILURE.value);
+        }
+        emit(builder);
+        builder.setLength(0);
+        started = false;
+    }
+
+    public void flush() {
         builder = new StringBuilder();
+        result = new StringBuilder();
+        started = false;
     }
 
-    public static void insertLog(int offset, String log) {
-        builder.insert(offset, log);
+    private void emit(CharSequence text) {
+        if (output == null) {
+            result.append(text);
+            return;
+        }
+        try {
+            output.append(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
 }
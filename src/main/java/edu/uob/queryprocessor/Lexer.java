@@ -3,28 +3,52 @@ package edu.uob.queryprocessor;
 import edu.uob.exceptions.InvalidSyntaxException;
 
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Class to Lex input string into tokens
  *
+ * <p>The input is scanned once, left to right, choosing what to read from the first character of
+ * each token. Only the text of identifiers, literals and whitespace is copied out; keywords and
+ * symbols use constant values.
+ *
  * @author Saquib Kazi
  */
 public class Lexer {
 
-    // Regular expression patterns for token matching
-    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("^\\s+");
-    private static final Pattern KEYWORD_PATTERN = Pattern.compile("^(?i)(USE|CREATE|DATABASE|TABLE|DROP|ALTER|INSERT|INTO|VALUES|SELECT|FROM|WHERE|UPDATE|SET|DELETE|JOIN|AND|OR|ON|ADD|LIKE|NULL|TRUE|FALSE)(?![a-zA-Z0-9_])");
-    private static final Pattern IDENTIFIER_PATTERN = Pattern.compile("^[a-zA-Z][a-zA-Z0-9_]*");
-    private static final Pattern INTEGER_PATTERN = Pattern.compile("^[+-]?\\d+");
-    private static final Pattern FLOAT_PATTERN = Pattern.compile("^[+-]?\\d+\\.\\d+");
-    private static final Pattern STRING_PATTERN = Pattern.compile("^'[^']*'");
-    private static final Pattern SYMBOL_PATTERN = Pattern.compile("^(;|\\(|\\)|,|==|>=|<=|!=|=|>|<|\\*)");
-
+    private static final TokenType[] KEYWORDS = {TokenType.USE, TokenType.CREATE, TokenType.DATABASE,
+            TokenType.TABLE, TokenType.DROP, TokenType.ALTER, TokenType.INSERT, TokenType.INTO, TokenType.VALUES,
+            TokenType.SELECT, TokenType.FROM, TokenType.WHERE, TokenType.UPDATE, TokenType.SET, TokenType.DELETE,
+            TokenType.JOIN, TokenType.AND, TokenType.OR, TokenType.ON, TokenType.ADD, TokenType.LIKE,
+            TokenType.INDEX, TokenType.USING, TokenType.NULL, TokenType.LIMIT, TokenType.OFFSET, TokenType.ORDER,
+            TokenType.GROUP, TokenType.BY, TokenType.ASC, TokenType.DESC, TokenType.PREPARE, TokenType.EXECUTE,
+            TokenType.AS};
+
+    // Keyword tokens by the length of the keyword, so a word is only compared with keywords as long as it is
+    private static final Token[][] KEYWORDS_BY_LENGTH;
+
+    static {
+        List<Token> keywords = new ArrayList<>();
+        for (TokenType type : KEYWORDS) {
+            keywords.add(new Token(type, type.name()));
+        }
+        keywords.add(new Token(TokenType.BOOLEAN_LITERAL, "TRUE"));
+        keywords.add(new Token(TokenType.BOOLEAN_LITERAL, "FALSE"));
+        int longest = 0;
+        for (Token keyword : keywords) {
+            longest = Math.max(longest, keyword.getValue().length());
+        }
+        KEYWORDS_BY_LENGTH = new Token[longest + 1][];
+        for (int length = 0; length < KEYWORDS_BY_LENGTH.length; length++) {
+            int wanted = length;
+            KEYWORDS_BY_LENGTH[length] = keywords.stream()
+                    .filter(keyword -> keyword.getValue().length() == wanted)
+                    .toArray(Token[]::new);
+        }
+    }
 
     private final String input;
     private int position = 0;
+    private int parameters = 0;
 
     public Lexer(String input) {
         this.input = input;
@@ -33,21 +57,21 @@ public class Lexer {
 
     public List<Token> tokenize() throws InvalidSyntaxException {
         List<Token> tokens = new ArrayList<>();
+        int endTokens = 0;
         Token token;
 
         while ((token = nextToken()).getType() != TokenType.LINE_END) {
+            if (token.getType() == TokenType.END) {
+                endTokens++;
+            }
             if (token.getType() != TokenType.WHITESPACE) {
                 tokens.add(token);
             }
         }
 
-        List<Token> endTokens = tokens.stream()
-                .filter(t -> t.getType() == TokenType.END)
-                .toList();
-
-        if (endTokens.isEmpty()) {
+        if (endTokens == 0) {
             throw new InvalidSyntaxException(" Invalid syntax: ';' is expected");
-        } else if (endTokens.size() > 1) {
+        } else if (endTokens > 1) {
             throw new InvalidSyntaxException(" Invalid syntax: more than one ';' found");
         }
 
@@ -60,119 +84,125 @@ public class Lexer {
             return new Token(TokenType.LINE_END, "");
         }
 
-        String remainingInput = input.substring(position);
+        int start = position;
+        char c = input.charAt(position);
 
-        // Match whitespace
-        Matcher whitespaceMatcher = WHITESPACE_PATTERN.matcher(remainingInput);
-        if (whitespaceMatcher.find()) {
-            String whitespace = whitespaceMatcher.group();
-            advance(whitespace.length());
-            return new Token(TokenType.WHITESPACE, whitespace);
+        if (isWhitespace(c)) {
+            while (position < input.length() && isWhitespace(input.charAt(position))) {
+                position++;
+            }
+            return new Token(TokenType.WHITESPACE, input.substring(start, position));
         }
 
-        // Match keywords
-        Matcher keywordMatcher = KEYWORD_PATTERN.matcher(remainingInput);
-        if (keywordMatcher.find()) {
-            String keyword = keywordMatcher.group().toUpperCase();
-            advance(keyword.length());
-
-            // Handle boolean literals
-            if (keyword.equals("TRUE") || keyword.equals("FALSE")) {
-                return new Token(TokenType.BOOLEAN_LITERAL, keyword);
+        // Keywords and identifiers: a keyword is a whole word, in any case
+        if (isLetter(c)) {
+            while (position < input.length() && isWordCharacter(input.charAt(position))) {
+                position++;
             }
+            Token keyword = keyword(start, position);
+            return keyword != null ? keyword : new Token(TokenType.IDENTIFIER, input.substring(start, position));
+        }
 
-            // Handle NULL
-            if (keyword.equals("NULL")) {
-                return new Token(TokenType.NULL, keyword);
+        // Integer and float literals, with an optional sign
+        if (isDigit(c) || ((c == '+' || c == '-') && isDigitAt(position + 1))) {
+            position++;
+            skipDigits();
+            if (input.startsWith(".", position) && isDigitAt(position + 1)) {
+                position++;
+                skipDigits();
+                return new Token(TokenType.FLOAT_LITERAL, input.substring(start, position));
             }
+            return new Token(TokenType.INTEGER_LITERAL, input.substring(start, position));
+        }
 
-            // Map keyword string to token type
-            TokenType type;
-            try {
-                type = TokenType.valueOf(keyword);
-            } catch (IllegalArgumentException e) {
-                // Should never happen since we're matching against defined keywords
-                throw new InvalidSyntaxException("Unrecognized keyword: " + keyword);
+        // String literals, without their quotes
+        if (c == '\'') {
+            int end = input.indexOf('\'', start + 1);
+            if (end >= 0) {
+                position = end + 1;
+                return new Token(TokenType.STRING_LITERAL, input.substring(start + 1, end));
             }
-            return new Token(type, keyword);
-        }
-
-        // Match identifiers
-        Matcher identifierMatcher = IDENTIFIER_PATTERN.matcher(remainingInput);
-        if (identifierMatcher.find()) {
-            String identifier = identifierMatcher.group();
-            advance(identifier.length());
-            return new Token(TokenType.IDENTIFIER, identifier);
-        }
-
-        // Match float literals (must come before integer literals)
-        Matcher floatMatcher = FLOAT_PATTERN.matcher(remainingInput);
-        if (floatMatcher.find()) {
-            String floatLiteral = floatMatcher.group();
-            advance(floatLiteral.length());
-            return new Token(TokenType.FLOAT_LITERAL, floatLiteral);
-        }
-
-        // Match integer literals
-        Matcher integerMatcher = INTEGER_PATTERN.matcher(remainingInput);
-        if (integerMatcher.find()) {
-            String intLiteral = integerMatcher.group();
-            advance(intLiteral.length());
-            return new Token(TokenType.INTEGER_LITERAL, intLiteral);
-        }
-
-        // Match string literals
-        Matcher stringMatcher = STRING_PATTERN.matcher(remainingInput);
-        if (stringMatcher.find()) {
-            String stringLiteral = stringMatcher.group().substring(1, stringMatcher.group().length() - 1);
-            advance(stringLiteral.length() + 2);
-            return new Token(TokenType.STRING_LITERAL, stringLiteral);
-        }
-
-        // Match symbols
-        Matcher symbolMatcher = SYMBOL_PATTERN.matcher(remainingInput);
-        if (symbolMatcher.find()) {
-            String symbol = symbolMatcher.group();
-            advance(symbol.length());
-
-            switch (symbol) {
-                case ";":
-                    return new Token(TokenType.END, symbol);
-                case "(":
-                    return new Token(TokenType.LEFT_PAREN, symbol);
-                case ")":
-                    return new Token(TokenType.RIGHT_PAREN, symbol);
-                case ",":
-                    return new Token(TokenType.COMMA, symbol);
-                case "=":
-                    return new Token(TokenType.EQUALS, symbol);
-                case ">":
-                    return new Token(TokenType.GREATER_THAN, symbol);
-                case "<":
-                    return new Token(TokenType.LESS_THAN, symbol);
-                case ">=":
-                    return new Token(TokenType.GREATER_EQUALS, symbol);
-                case "<=":
-                    return new Token(TokenType.LESS_EQUALS, symbol);
-                case "!=":
-                    return new Token(TokenType.NOT_EQUALS, symbol);
-                case "==":
-                    return new Token(TokenType.EQUALS, symbol);
-                case "*":
-                    return new Token(TokenType.ASTERISK, symbol);
-                default:
-                    throw new InvalidSyntaxException(" Unrecognized symbol: " + symbol);
+        }
+
+        if (c == '?') {
+            position++;
+            return new Token(TokenType.PARAMETER, Token.parameter(parameters++));
+        }
+
+        Token symbol = symbol(c, position + 1 < input.length() ? input.charAt(position + 1) : 0);
+        if (symbol != null) {
+            position += symbol.getValue().length();
+            return symbol;
+        }
+
+        throw new InvalidSyntaxException(" Unrecognized character: " + c);
+    }
+
+    /** The keyword spelled by {@code input} from {@code start} to {@code end}, or null if it is an identifier. */
+    private Token keyword(int start, int end) {
+        int length = end - start;
+        if (length >= KEYWORDS_BY_LENGTH.length) {
+            return null;
+        }
+        for (Token keyword : KEYWORDS_BY_LENGTH[length]) {
+            if (input.regionMatches(true, start, keyword.getValue(), 0, length)) {
+                return keyword;
             }
         }
+        return null;
+    }
 
-        char unrecognizedChar = remainingInput.charAt(0);
-        throw new InvalidSyntaxException(" Unrecognized character: " + unrecognizedChar);
+    /** The symbol starting with {@code c}, followed by {@code next}, or null if there is none. */
+    private Token symbol(char c, char next) {
+        switch (c) {
+            case ';':
+                return new Token(TokenType.END, ";");
+            case '(':
+                return new Token(TokenType.LEFT_PAREN, "(");
+            case ')':
+                return new Token(TokenType.RIGHT_PAREN, ")");
+            case ',':
+                return new Token(TokenType.COMMA, ",");
+            case '*':
+                return new Token(TokenType.ASTERISK, "*");
+            case '=':
+                return next == '=' ? new Token(TokenType.EQUALS, "==") : new Token(TokenType.EQUALS, "=");
+            case '>':
+                return next == '=' ? new Token(TokenType.GREATER_EQUALS, ">=") : new Token(TokenType.GREATER_THAN, ">");
+            case '<':
+                return next == '=' ? new Token(TokenType.LESS_EQUALS, "<=") : new Token(TokenType.LESS_THAN, "<");
+            case '!':
+                return next == '=' ? new Token(TokenType.NOT_EQUALS, "!=") : null;
+            default:
+                return null;
+        }
     }
 
-    private void advance(int amount) {
-        for (int i = 0; i < amount; i++) {
+    private void skipDigits() {
+        while (isDigitAt(position)) {
             position++;
         }
     }
 
+    private boolean isDigitAt(int index) {
+        return index < input.length() && isDigit(input.charAt(index));
+    }
+
+    // The characters read as whitespace, letters and digits: the same classes as \s, [a-zA-Z] and \d
+    public static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    public static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    public static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordCharacter(char c) {
+        return isLetter(c) || isDigit(c) || c == '_';
+    }
+
 }
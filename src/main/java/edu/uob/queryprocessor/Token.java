@@ -1,6 +1,10 @@
 package edu.uob.queryprocessor;
 
 public class Token {
+
+    // Starts the value of each ?, a character no statement can contain outside a string
+    private static final String PARAMETER_PREFIX = "\0?";
+
     private final String value;
     private final TokenType type;
 
@@ -17,6 +21,23 @@ public class Token {
         return value;
     }
 
+    /** The value the lexer gives the {@code index}th {@code ?} of a statement, counting from 0. */
+    static String parameter(int index) {
+        return PARAMETER_PREFIX + index;
+    }
+
+    /** The index of the {@code ?} a parsed value stands for, or -1 if it is an ordinary value. */
+    public static int parameterIndex(String value) {
+        if (value == null || !value.startsWith(PARAMETER_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value.substring(PARAMETER_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     @Override
     public String toString() {
         return "Token{" + "value='" + value + '\'' + ", type=" + type + '}';
@@ -2,7 +2,8 @@ package edu.uob.queryprocessor;
 
 public enum TokenType {
     USE, CREATE, DATABASE, TABLE, DROP, ALTER, INSERT, INTO, VALUES,
-    SELECT, FROM, WHERE, UPDATE, SET, DELETE, JOIN, AND, OR, ON, ADD, LIKE, NULL,
+    SELECT, FROM, WHERE, UPDATE, SET, DELETE, JOIN, AND, OR, ON, ADD, LIKE, INDEX, USING, NULL,
+    LIMIT, OFFSET, ORDER, GROUP, BY, ASC, DESC, PREPARE, EXECUTE, AS,
 
     INTEGER_LITERAL, FLOAT_LITERAL, STRING_LITERAL, BOOLEAN_LITERAL,
 
@@ -11,5 +12,5 @@ public enum TokenType {
     SEMICOLON, LEFT_PAREN, RIGHT_PAREN, COMMA, EQUALS,
     GREATER_THAN, LESS_THAN, GREATER_EQUALS, LESS_EQUALS, NOT_EQUALS,
 
-    ASTERISK, WHITESPACE, END, LINE_END
+    ASTERISK, PARAMETER, WHITESPACE, END, LINE_END
 }
@@ -3,6 +3,7 @@ package edu.uob.queryprocessor;
 import edu.uob.exceptions.InvalidSyntaxException;
 
 import java.util.List;
+import java.util.Set;
 
 public class Tokenizer {
     private final List<Token> tokens;
@@ -49,6 +50,27 @@ public class Tokenizer {
         }
     }
 
+    /** The current and following tokens up to the end of the statement, separated by spaces. */
+    public String remainingText() {
+        return remainingText(Set.of());
+    }
+
+    /** The current and following tokens up to the end of the statement or the first of {@code stops}. */
+    public String remainingText(Set<TokenType> stops) {
+        StringBuilder text = new StringBuilder();
+        for (int i = position; i < tokens.size() && tokens.get(i).getType() != TokenType.END
+                && !stops.contains(tokens.get(i).getType()); i++) {
+            Token token = tokens.get(i);
+            text.append(token.getType() == TokenType.PARAMETER ? "?" : token.getValue()).append(" ");
+        }
+        return text.toString().trim();
+    }
+
+    /** How many {@code ?} the statement holds. */
+    public int getParameterCount() {
+        return (int) tokens.stream().filter(token -> token.getType() == TokenType.PARAMETER).count();
+    }
+
     public void reset() {
         position = 0;
     }
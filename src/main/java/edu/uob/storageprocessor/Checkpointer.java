@@ -0,0 +1,70 @@
+package edu.uob.storageprocessor;
+
+import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.utils.Config;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background thread that keeps the write-ahead logs short: it forces logs under
+ * {@link SyncPolicy#ASYNC} and checkpoints each log when it is due, either because enough time has
+ * passed or because the log has grown past {@link Config#getCheckpointLogBytes()}. Logs are also
+ * checkpointed when the JVM shuts down.
+ */
+public class Checkpointer {
+
+    private static ScheduledExecutorService scheduler = null;
+
+    private Checkpointer() {
+    }
+
+    static synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wal-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(Checkpointer::tick, Config.getWalFlushMillis(),
+                Config.getWalFlushMillis(), TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(Checkpointer::checkpointAll));
+    }
+
+    /** Asks for a checkpoint of the log as soon as the background thread gets to it. */
+    static synchronized void request(WriteAheadLog log) {
+        if (scheduler != null) {
+            scheduler.execute(() -> checkpoint(log));
+        }
+    }
+
+    private static void tick() {
+        for (WriteAheadLog log : WriteAheadLog.openLogs()) {
+            try {
+                if (Config.getWalSyncPolicy() == SyncPolicy.ASYNC) {
+                    log.syncAll();
+                }
+                if (log.isCheckpointDue()) {
+                    log.checkpoint();
+                }
+            } catch (DatabaseOperationException e) {
+                System.err.println("Checkpoint failed:" + e.getMessage());
+            }
+        }
+    }
+
+    private static void checkpoint(WriteAheadLog log) {
+        try {
+            log.checkpoint();
+        } catch (DatabaseOperationException e) {
+            System.err.println("Checkpoint failed:" + e.getMessage());
+        }
+    }
+
+    private static void checkpointAll() {
+        WriteAheadLog.openLogs().forEach(Checkpointer::checkpoint);
+    }
+}
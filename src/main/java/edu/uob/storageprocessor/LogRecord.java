@@ -0,0 +1,87 @@
+package edu.uob.storageprocessor;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One logical change to a table, as written to the write-ahead log. Rows are identified by their
+ * {@code id} value so records can be replayed against a table file regardless of row order.
+ */
+public record LogRecord(Type type, String table, List<String> columns, List<String> values, List<String> ids) {
+
+    public enum Type {
+        INSERT, UPDATE, DELETE, ADD_COLUMN, DROP_COLUMN, DROP_TABLE
+    }
+
+    /** A new row; {@code values} holds every column, id first. */
+    public static LogRecord insert(String table, List<String> values) {
+        return new LogRecord(Type.INSERT, table, List.of(), values, List.of());
+    }
+
+    /** The same assignments applied to every listed row. */
+    public static LogRecord update(String table, List<String> columns, List<String> values, List<String> ids) {
+        return new LogRecord(Type.UPDATE, table, columns, values, ids);
+    }
+
+    public static LogRecord delete(String table, List<String> ids) {
+        return new LogRecord(Type.DELETE, table, List.of(), List.of(), ids);
+    }
+
+    public static LogRecord addColumn(String table, String column) {
+        return new LogRecord(Type.ADD_COLUMN, table, List.of(column), List.of(), List.of());
+    }
+
+    public static LogRecord dropColumn(String table, String column) {
+        return new LogRecord(Type.DROP_COLUMN, table, List.of(column), List.of(), List.of());
+    }
+
+    public static LogRecord dropTable(String table) {
+        return new LogRecord(Type.DROP_TABLE, table, List.of(), List.of(), List.of());
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(type.ordinal());
+        writeString(out, table);
+        writeList(out, columns);
+        writeList(out, values);
+        writeList(out, ids);
+    }
+
+    static LogRecord readFrom(DataInputStream in) throws IOException {
+        Type type = Type.values()[in.readUnsignedByte()];
+        String table = readString(in);
+        return new LogRecord(type, table, readList(in), readList(in), readList(in));
+    }
+
+    private static void writeList(DataOutputStream out, List<String> list) throws IOException {
+        out.writeInt(list.size());
+        for (String value : list) {
+            writeString(out, value);
+        }
+    }
+
+    private static List<String> readList(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readString(in));
+        }
+        return list;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
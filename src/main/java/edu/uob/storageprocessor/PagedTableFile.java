@@ -0,0 +1,688 @@
+package edu.uob.storageprocessor;
+
+import edu.uob.dbmodel.Dictionary;
+import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.utils.Config;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Table file made of fixed-size pages. The file header fills the first page (or pages, for very
+ * wide tables) and is followed by data pages with a slotted layout:
+ * <pre>
+ *   file header  int magic, int version, int pageSize, int headerPages, long lastPage,
+ *                int columnCount, then each column name as int length + UTF-8 bytes
+ *   data page    int span, int slotCount, int freeEnd, slot directory, free space, row records
+ *   slot         int offset of the record within the page, int record length (-1 once deleted)
+ *   row record   int valueCount, then each value as int length (-1 for null) + UTF-8 bytes, or
+ *                as int -2 - code alone for a value in its column's dictionary
+ *   dictionary   int -2, int column index, then the value as int length + UTF-8 bytes; the
+ *   entry        entries of a column take codes 0, 1, 2 and so on in the order they appear
+ * </pre>
+ * The slot directory grows forward from the page header while records are packed backward from
+ * the end of the page. A row too large for one page gets a page spanning several page sizes.
+ * <p>
+ * Dictionary-encoded columns keep each distinct value once, in an entry written just before the
+ * first row using it, so a pass over the file in page order meets every entry before its code.
+ * Only a complete write encodes; appended rows and rows too new to use an entry are stored plainly
+ * until the file is next rewritten.
+ * <p>
+ * Reads map the whole file, as several windows once it outgrows a single mapping, and decode
+ * values directly out of the mapping. Writes go through positional channel writes, so the file's
+ * modification time moves with every change and the table cache notices it.
+ */
+public class PagedTableFile {
+
+    /** "DBPG", the first four bytes of every paged table file. */
+    static final int MAGIC = 0x44425047;
+    // Version 2 added dictionary entries; version 1 files are read as they are
+    private static final int VERSION = 2;
+    public static final int PAGE_SIZE = 8192;
+
+    private static final int VERSION_AT = 4;
+    private static final int PAGE_SIZE_AT = 8;
+    private static final int HEADER_PAGES_AT = 12;
+    private static final int LAST_PAGE_AT = 16;
+    private static final int COLUMNS_AT = 24;
+
+    private static final int SPAN_AT = 0;
+    private static final int SLOT_COUNT_AT = 4;
+    private static final int FREE_END_AT = 8;
+    private static final int PAGE_HEADER = 12;
+    private static final int SLOT_SIZE = 8;
+    private static final int DELETED = -1;
+    private static final int DICTIONARY_ENTRY = -2;
+
+    private final String name;
+    // The file mapped in windows of up to 2 GiB, one starting at every multiple of segmentBytes, so
+    // the window a page starts in always holds the whole page
+    private final ByteBuffer[] windows;
+    private final long segmentBytes;
+    private final long size;
+    private final int pageSize;
+    private final long dataStart;
+    private final List<String> columns = new ArrayList<>();
+
+    private PagedTableFile(String name, ByteBuffer[] windows, long segmentBytes, long size)
+            throws DatabaseOperationException {
+        this.name = name;
+        this.windows = windows;
+        this.segmentBytes = segmentBytes;
+        this.size = size;
+        ByteBuffer header = windows.length == 0 ? ByteBuffer.allocate(0) : windows[0];
+        if (header.limit() < COLUMNS_AT + 4 || header.getInt(0) != MAGIC) {
+            throw corrupted(name);
+        }
+        int version = header.getInt(VERSION_AT);
+        if (version < 1 || version > VERSION) {
+            throw new DatabaseOperationException(" Unsupported table file version: " + name);
+        }
+        pageSize = header.getInt(PAGE_SIZE_AT);
+        dataStart = (long) header.getInt(HEADER_PAGES_AT) * pageSize;
+        int columnCount = header.getInt(COLUMNS_AT);
+        int position = COLUMNS_AT + 4;
+        for (int i = 0; i < columnCount; i++) {
+            int length = header.getInt(position);
+            columns.add(decode(header, position + 4, length));
+            position += 4 + length;
+        }
+    }
+
+    public static boolean isPaged(File file) throws DatabaseOperationException {
+        if (!file.exists() || file.length() < 4) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while reading data file");
+        }
+    }
+
+    /**
+     * Maps a paged table file for reading. A mapping can't exceed 2 GiB, so larger files are mapped
+     * as several overlapping windows, {@link Config#getMapSegmentBytes} apart.
+     */
+    public static PagedTableFile open(File file) throws DatabaseOperationException {
+        if (!file.exists()) {
+            throw new DatabaseOperationException("Table does not exist: " + file.getName());
+        }
+        long segmentBytes = Config.getMapSegmentBytes();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer[] windows = new ByteBuffer[(int) ((size + segmentBytes - 1) / segmentBytes)];
+            for (int i = 0; i < windows.length; i++) {
+                long start = i * segmentBytes;
+                // The mappings stay valid after the channel is closed
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, Integer.MAX_VALUE));
+            }
+            return new PagedTableFile(file.getName(), windows, segmentBytes, size);
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while reading data file");
+        }
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /** Decodes every live row in page order. */
+    public void forEachRow(Consumer<List<String>> action) throws DatabaseOperationException {
+        Dictionaries dictionaries = new Dictionaries();
+        forEachSlot(dictionaries, (page, pageAt, slotAt, recordAt, length) -> {
+            action.accept(decodeRecord(page, recordAt, dictionaries));
+            return true;
+        });
+    }
+
+    /** Reads the live rows one at a time, for scans that shouldn't hold the whole table in memory. */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /** A position in the file's pages; rows come back in the same order as {@link #forEachRow}. */
+    public class Cursor {
+
+        private final Dictionaries dictionaries = new Dictionaries();
+        private long position = dataStart;
+        // The page at position once it has been read, and the next slot in it
+        private ByteBuffer page;
+        private int slot = 0;
+        // The current row record
+        private int recordAt;
+        private int valueCount;
+        // Where each of the current record's values starts, as far as they have been walked
+        private int[] offsets = new int[0];
+        private int walked;
+
+        /** Moves to the next live row; returns false once every page has been read. */
+        public boolean advance() throws DatabaseOperationException {
+            while (true) {
+                if (page == null) {
+                    page = pageAt(position);
+                    if (page == null) {
+                        return false;
+                    }
+                    slot = 0;
+                }
+                int slots = page.getInt(SLOT_COUNT_AT);
+                while (slot < slots) {
+                    int slotAt = PAGE_HEADER + slot++ * SLOT_SIZE;
+                    if (page.getInt(slotAt + 4) == DELETED) {
+                        continue;
+                    }
+                    int record = page.getInt(slotAt);
+                    if (page.getInt(record) == DICTIONARY_ENTRY) {
+                        readDictionaryEntry(page, record, dictionaries);
+                        continue;
+                    }
+                    recordAt = record;
+                    valueCount = page.getInt(record);
+                    if (offsets.length < valueCount) {
+                        offsets = new int[valueCount];
+                    }
+                    walked = 0;
+                    return true;
+                }
+                position += page.capacity();
+                page = null;
+            }
+        }
+
+        /**
+         * Decodes one value of the current row, empty if the row is shorter than that. Values are
+         * decoded only when asked for, so a column never asked for costs nothing beyond skipping it.
+         */
+        public String value(int index) throws DatabaseOperationException {
+            if (index >= valueCount) {
+                return "";
+            }
+            while (walked <= index) {
+                int previous = walked == 0 ? -1 : offsets[walked - 1];
+                offsets[walked++] = previous < 0 ? recordAt + 4 : previous + 4 + Math.max(page.getInt(previous), 0);
+            }
+            int at = offsets[index];
+            return decodeValue(page, at, page.getInt(at), index, dictionaries);
+        }
+
+        /** The current row, to be decoded after the cursor has moved on. */
+        public Record record() {
+            return new Record(page, recordAt, valueCount, dictionaries);
+        }
+    }
+
+    /**
+     * A row record held on to past the cursor that found it. Its values decode with the cursor's
+     * dictionary entries, which are only ever added to, so later entries don't change its codes.
+     */
+    public final class Record {
+
+        private final ByteBuffer page;
+        private final int recordAt;
+        private final int valueCount;
+        private final Dictionaries dictionaries;
+        // The value last walked to, so values asked for in column order are each one step on
+        private int walked = 0;
+        private int walkedAt;
+
+        private Record(ByteBuffer page, int recordAt, int valueCount, Dictionaries dictionaries) {
+            this.page = page;
+            this.recordAt = recordAt;
+            this.valueCount = valueCount;
+            this.dictionaries = dictionaries;
+            walkedAt = recordAt + 4;
+        }
+
+        /** Decodes one value, empty if the row is shorter than that, as {@link Cursor#value} does. */
+        public String value(int index) throws DatabaseOperationException {
+            if (index >= valueCount) {
+                return "";
+            }
+            if (index < walked) {
+                walked = 0;
+                walkedAt = recordAt + 4;
+            }
+            while (walked < index) {
+                walkedAt += 4 + Math.max(page.getInt(walkedAt), 0);
+                walked++;
+            }
+            return decodeValue(page, walkedAt, page.getInt(walkedAt), index, dictionaries);
+        }
+    }
+
+    /**
+     * Writes a complete table file and syncs it, replacing anything already at {@code file}. The
+     * columns named in {@code dictionaryColumns} are dictionary-encoded.
+     */
+    public static void write(File file, List<String> columns, Set<String> dictionaryColumns,
+                             List<List<String>> rows) throws DatabaseOperationException {
+        List<Integer> encoded = new ArrayList<>();
+        for (int i = 0; i < columns.size(); i++) {
+            if (dictionaryColumns.contains(columns.get(i))) {
+                encoded.add(i);
+            }
+        }
+        Dictionaries dictionaries = new Dictionaries();
+        Iterator<byte[]> records = rows.stream()
+                .flatMap(values -> encodeRow(values, encoded, dictionaries).stream())
+                .iterator();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = encodeHeader(columns);
+            long lastPage = writePages(channel, PAGE_SIZE, null, header.capacity(), records);
+            header.putLong(LAST_PAGE_AT, lastPage);
+            writeFully(channel, header, 0);
+            channel.force(true);
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while writing data");
+        }
+    }
+
+    /**
+     * Adds rows to the free space of the file's last page, starting new pages once it is full. The
+     * rows already in the page are left as they are on disk.
+     */
+    public static void append(File file, List<List<String>> rows, boolean durable) throws DatabaseOperationException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = readFully(channel, 0, COLUMNS_AT);
+            if (header.getInt(0) != MAGIC) {
+                throw corrupted(file.getName());
+            }
+            int pageSize = header.getInt(PAGE_SIZE_AT);
+            long lastPage = header.getLong(LAST_PAGE_AT);
+            Page page = null;
+            long position = (long) header.getInt(HEADER_PAGES_AT) * pageSize;
+            if (lastPage > 0) {
+                int span = readFully(channel, lastPage, 4).getInt(SPAN_AT);
+                page = Page.stored(readFully(channel, lastPage, span * pageSize));
+                position = lastPage;
+            }
+            Iterator<byte[]> records = rows.stream().map(values -> encodeRecord(values, null)).iterator();
+            long newLastPage = writePages(channel, pageSize, page, position, records);
+            if (newLastPage != lastPage) {
+                writeFully(channel, ByteBuffer.allocate(8).putLong(0, newLastPage), LAST_PAGE_AT);
+            }
+            if (durable) {
+                channel.force(true);
+            }
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while writing data");
+        }
+    }
+
+    /**
+     * Rewrites rows in place, matched on their {@code id} value; a null entry deletes the row by
+     * freeing its slot. If any new row is longer than the space its old version took nothing is
+     * written and false is returned, leaving the caller to rewrite the whole file. Values use the
+     * dictionary entries written before the row's record.
+     */
+    public static boolean rewriteRows(File file, Map<String, List<String>> changes) throws DatabaseOperationException {
+        PagedTableFile pagedFile = open(file);
+        int idIndex = pagedFile.columns.indexOf("id");
+        if (idIndex < 0) {
+            return false;
+        }
+        List<PendingWrite> writes = new ArrayList<>();
+        Dictionaries dictionaries = new Dictionaries();
+        boolean fits = pagedFile.forEachSlot(dictionaries, (page, pageAt, slotAt, recordAt, length) -> {
+            String id = pagedFile.valueAt(page, recordAt, idIndex, dictionaries);
+            if (!changes.containsKey(id)) {
+                return true;
+            }
+            List<String> values = changes.get(id);
+            if (values == null) {
+                writes.add(new PendingWrite(pageAt + slotAt + 4, ByteBuffer.allocate(4).putInt(0, DELETED)));
+                return true;
+            }
+            byte[] record = encodeRecord(values, dictionaries);
+            if (record.length > length) {
+                return false;
+            }
+            writes.add(new PendingWrite(pageAt + recordAt, ByteBuffer.wrap(record)));
+            writes.add(new PendingWrite(pageAt + slotAt + 4, ByteBuffer.allocate(4).putInt(0, record.length)));
+            return true;
+        });
+        if (!fits) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            for (PendingWrite write : writes) {
+                writeFully(channel, write.data(), write.position());
+            }
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while writing data");
+        }
+        return true;
+    }
+
+    private interface SlotVisitor {
+        /**
+         * Offsets are within {@code page}, which starts {@code pageAt} bytes into the file. Returns
+         * false to stop the scan.
+         */
+        boolean visit(ByteBuffer page, long pageAt, int slotAt, int recordAt, int length)
+                throws DatabaseOperationException;
+    }
+
+    private record PendingWrite(long position, ByteBuffer data) {
+    }
+
+    /**
+     * Visits every live row slot, reading the dictionary entries on the way into {@code dictionaries};
+     * returns false if the visitor stopped early.
+     */
+    private boolean forEachSlot(Dictionaries dictionaries, SlotVisitor visitor) throws DatabaseOperationException {
+        long position = dataStart;
+        ByteBuffer page;
+        while ((page = pageAt(position)) != null) {
+            int slots = page.getInt(SLOT_COUNT_AT);
+            for (int slot = 0; slot < slots; slot++) {
+                int slotAt = PAGE_HEADER + slot * SLOT_SIZE;
+                int length = page.getInt(slotAt + 4);
+                if (length == DELETED) {
+                    continue;
+                }
+                int recordAt = page.getInt(slotAt);
+                if (page.getInt(recordAt) == DICTIONARY_ENTRY) {
+                    readDictionaryEntry(page, recordAt, dictionaries);
+                } else if (!visitor.visit(page, position, slotAt, recordAt, length)) {
+                    return false;
+                }
+            }
+            position += page.capacity();
+        }
+        return true;
+    }
+
+    /**
+     * The page starting {@code position} bytes into the file, with its offsets counted from the page
+     * start; null past the last page.
+     */
+    private ByteBuffer pageAt(long position) throws DatabaseOperationException {
+        if (position + PAGE_HEADER > size) {
+            return null;
+        }
+        ByteBuffer window = windows[(int) (position / segmentBytes)];
+        int offset = (int) (position % segmentBytes);
+        int span = window.getInt(offset + SPAN_AT);
+        if (span <= 0) {
+            throw corrupted(name);
+        }
+        long length = (long) span * pageSize;
+        if (position + length > size) {
+            // A page torn by a crash mid-append; its rows are still in the write-ahead log
+            return null;
+        }
+        if (offset + length > window.limit()) {
+            throw corrupted(name);
+        }
+        return window.slice(offset, (int) length);
+    }
+
+    private List<String> decodeRecord(ByteBuffer page, int recordAt, Dictionaries dictionaries)
+            throws DatabaseOperationException {
+        int count = page.getInt(recordAt);
+        List<String> values = new ArrayList<>(count);
+        int position = recordAt + 4;
+        for (int i = 0; i < count; i++) {
+            int length = page.getInt(position);
+            values.add(decodeValue(page, position, length, i, dictionaries));
+            position += 4 + Math.max(length, 0);
+        }
+        return values;
+    }
+
+    /** Decodes a single value without materialising the rest of the row. */
+    private String valueAt(ByteBuffer page, int recordAt, int index, Dictionaries dictionaries)
+            throws DatabaseOperationException {
+        if (index >= page.getInt(recordAt)) {
+            return null;
+        }
+        int position = recordAt + 4;
+        for (int i = 0; i < index; i++) {
+            position += 4 + Math.max(page.getInt(position), 0);
+        }
+        return decodeValue(page, position, page.getInt(position), index, dictionaries);
+    }
+
+    /** The value whose length field is at {@code position}, looking codes up in the column's entries. */
+    private String decodeValue(ByteBuffer page, int position, int length, int column, Dictionaries dictionaries)
+            throws DatabaseOperationException {
+        if (length >= 0) {
+            return decode(page, position + 4, length);
+        }
+        if (length == -1) {
+            return null;
+        }
+        String value = dictionaries.valueOf(column, -2 - length);
+        if (value == null) {
+            throw corrupted(name);
+        }
+        return value;
+    }
+
+    private static void readDictionaryEntry(ByteBuffer page, int recordAt, Dictionaries dictionaries) {
+        dictionaries.add(page.getInt(recordAt + 4), decode(page, recordAt + 12, page.getInt(recordAt + 8)));
+    }
+
+    private static String decode(ByteBuffer buffer, int position, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer encodeHeader(List<String> columns) {
+        List<byte[]> names = new ArrayList<>(columns.size());
+        int length = COLUMNS_AT + 4;
+        for (String column : columns) {
+            byte[] name = column.getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            length += 4 + name.length;
+        }
+        int headerPages = (length + PAGE_SIZE - 1) / PAGE_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(headerPages * PAGE_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(PAGE_SIZE).putInt(headerPages).putLong(0).putInt(names.size());
+        for (byte[] name : names) {
+            header.putInt(name.length).put(name);
+        }
+        return header;
+    }
+
+    /**
+     * Encodes a row for a complete write: first an entry for each value of an {@code encoded} column
+     * not yet in its dictionary, while there is room, then the row itself.
+     */
+    private static List<byte[]> encodeRow(List<String> values, List<Integer> encoded, Dictionaries dictionaries) {
+        List<byte[]> records = new ArrayList<>(1);
+        for (int column : encoded) {
+            String value = column < values.size() ? values.get(column) : null;
+            if (value != null && dictionaries.codeOf(column, value) < 0
+                    && dictionaries.size(column) < Dictionary.MAX_ENTRIES) {
+                dictionaries.add(column, value);
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                records.add(ByteBuffer.allocate(12 + bytes.length)
+                        .putInt(DICTIONARY_ENTRY).putInt(column).putInt(bytes.length).put(bytes).array());
+            }
+        }
+        records.add(encodeRecord(values, dictionaries));
+        return records;
+    }
+
+    /** Encodes a row record, as codes where {@code dictionaries} has an entry and plainly otherwise. */
+    private static byte[] encodeRecord(List<String> values, Dictionaries dictionaries) {
+        List<byte[]> encoded = new ArrayList<>(values.size());
+        int[] codes = new int[values.size()];
+        int length = 4;
+        for (int i = 0; i < values.size(); i++) {
+            String value = values.get(i);
+            codes[i] = value == null || dictionaries == null ? -1 : dictionaries.codeOf(i, value);
+            byte[] bytes = value == null || codes[i] >= 0 ? null : value.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            length += 4 + (bytes == null ? 0 : bytes.length);
+        }
+        ByteBuffer record = ByteBuffer.allocate(length).putInt(encoded.size());
+        for (int i = 0; i < codes.length; i++) {
+            byte[] bytes = encoded.get(i);
+            if (codes[i] >= 0) {
+                record.putInt(-2 - codes[i]);
+            } else if (bytes == null) {
+                record.putInt(-1);
+            } else {
+                record.putInt(bytes.length).put(bytes);
+            }
+        }
+        return record.array();
+    }
+
+    /**
+     * Packs records into {@code page}, or into fresh pages from {@code position} on once it is full
+     * or if there is none, keeping their order. Returns the offset of the last page written, 0 if
+     * there were no pages at all.
+     */
+    private static long writePages(FileChannel channel, int pageSize, Page page, long position,
+                                   Iterator<byte[]> records) throws IOException {
+        while (records.hasNext()) {
+            byte[] record = records.next();
+            if (page == null || !page.add(record)) {
+                if (page != null) {
+                    page.writeTo(channel, position);
+                    position += page.buffer.capacity();
+                }
+                page = Page.create(pageSize, record.length);
+                page.add(record);
+            }
+        }
+        if (page == null) {
+            return 0;
+        }
+        page.writeTo(channel, position);
+        return position;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        ByteBuffer data = buffer.duplicate().clear();
+        while (data.hasRemaining()) {
+            channel.write(data, position + data.position());
+        }
+    }
+
+    private static DatabaseOperationException corrupted(String name) {
+        return new DatabaseOperationException(" Table file is corrupted: " + name);
+    }
+
+    /** The dictionary entries of each column, by code, as far as a pass over the file has read or written them. */
+    private static final class Dictionaries {
+        private final Map<Integer, List<String>> values = new HashMap<>();
+        private final Map<Integer, Map<String, Integer>> codes = new HashMap<>();
+
+        void add(int column, String value) {
+            List<String> entries = values.computeIfAbsent(column, c -> new ArrayList<>());
+            codes.computeIfAbsent(column, c -> new HashMap<>()).putIfAbsent(value, entries.size());
+            entries.add(value);
+        }
+
+        /** The value with {@code code} in the column's dictionary, or null if there is no such entry. */
+        String valueOf(int column, int code) {
+            List<String> entries = values.get(column);
+            return entries != null && code < entries.size() ? entries.get(code) : null;
+        }
+
+        /** The code of {@code value} in the column's dictionary, or -1 if it has none. */
+        int codeOf(int column, String value) {
+            Map<String, Integer> columnCodes = codes.get(column);
+            Integer code = columnCodes == null ? null : columnCodes.get(value);
+            return code == null ? -1 : code;
+        }
+
+        int size(int column) {
+            List<String> entries = values.get(column);
+            return entries == null ? 0 : entries.size();
+        }
+    }
+
+    /** A data page being filled in memory before it is written out. */
+    private static final class Page {
+        private final ByteBuffer buffer;
+        // For a page read back from the file, its slot count and free space end there; -1 for a new page
+        private final int storedSlots;
+        private final int storedFreeEnd;
+
+        private Page(ByteBuffer buffer, int storedSlots, int storedFreeEnd) {
+            this.buffer = buffer;
+            this.storedSlots = storedSlots;
+            this.storedFreeEnd = storedFreeEnd;
+        }
+
+        static Page create(int pageSize, int recordLength) {
+            int needed = PAGE_HEADER + SLOT_SIZE + recordLength;
+            int span = Math.max(1, (needed + pageSize - 1) / pageSize);
+            ByteBuffer buffer = ByteBuffer.allocate(span * pageSize);
+            buffer.putInt(SPAN_AT, span).putInt(SLOT_COUNT_AT, 0).putInt(FREE_END_AT, span * pageSize);
+            return new Page(buffer, -1, -1);
+        }
+
+        /** A page as read from the file, to have records added to its free space. */
+        static Page stored(ByteBuffer buffer) {
+            return new Page(buffer, buffer.getInt(SLOT_COUNT_AT), buffer.getInt(FREE_END_AT));
+        }
+
+        /**
+         * Writes the page at {@code position}. Of a stored page only what was added goes out: the new
+         * records and slots into what was free space, then the slot count and free space end, so its
+         * stored rows are never overwritten and a torn write can only lose rows still in the log.
+         */
+        void writeTo(FileChannel channel, long position) throws IOException {
+            if (storedSlots < 0) {
+                writeFully(channel, buffer, position);
+                return;
+            }
+            int slots = buffer.getInt(SLOT_COUNT_AT);
+            if (slots == storedSlots) {
+                return;
+            }
+            int freeEnd = buffer.getInt(FREE_END_AT);
+            int newSlotsAt = PAGE_HEADER + storedSlots * SLOT_SIZE;
+            writeFully(channel, buffer.slice(freeEnd, storedFreeEnd - freeEnd), position + freeEnd);
+            writeFully(channel, buffer.slice(newSlotsAt, (slots - storedSlots) * SLOT_SIZE), position + newSlotsAt);
+            writeFully(channel, buffer.slice(SLOT_COUNT_AT, 8), position + SLOT_COUNT_AT);
+        }
+
+        boolean add(byte[] record) {
+            int slots = buffer.getInt(SLOT_COUNT_AT);
+            int recordAt = buffer.getInt(FREE_END_AT) - record.length;
+            if (recordAt < PAGE_HEADER + (slots + 1) * SLOT_SIZE) {
+                return false;
+            }
+            buffer.put(recordAt, record);
+            int slotAt = PAGE_HEADER + slots * SLOT_SIZE;
+            buffer.putInt(slotAt, recordAt).putInt(slotAt + 4, record.length);
+            buffer.putInt(SLOT_COUNT_AT, slots + 1).putInt(FREE_END_AT, recordAt);
+            return true;
+        }
+    }
+}
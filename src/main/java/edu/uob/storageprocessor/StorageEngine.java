@@ -3,15 +3,39 @@ package edu.uob.storageprocessor;
 import edu.uob.exceptions.DatabaseOperationException;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 public class StorageEngine {
 
     BufferedReader br = null;
     PrintWriter pw = null;
+    FileOutputStream out = null;
 
     public void getFileWriter(File file) throws DatabaseOperationException {
         try {
-            pw = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+            out = new FileOutputStream(file);
+            pw = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out)));
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while writing data");
+        }
+    }
+
+    /** Opens the file for appending, making sure new data starts on a fresh line. */
+    public void getFileAppender(File file) throws DatabaseOperationException {
+        try {
+            boolean needsNewLine = false;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                if (raf.length() > 0) {
+                    raf.seek(raf.length() - 1);
+                    needsNewLine = raf.read() != '\n';
+                }
+            }
+            out = new FileOutputStream(file, true);
+            pw = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out)));
+            if (needsNewLine) {
+                pw.println();
+            }
         } catch (IOException e) {
             throw new DatabaseOperationException(" Error occurred while writing data");
         }
@@ -58,4 +82,24 @@ public class StorageEngine {
         pw.close();
     }
 
+    /** Forces everything written so far down to the disk. */
+    public void syncWriter() throws DatabaseOperationException {
+        pw.flush();
+        try {
+            out.getFD().sync();
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while writing data");
+        }
+    }
+
+    /** Atomically puts {@code source} in place of {@code target}, so readers never see a half written file. */
+    public static void replaceFile(File source, File target) throws DatabaseOperationException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while writing data");
+        }
+    }
+
 }
@@ -0,0 +1,25 @@
+package edu.uob.storageprocessor;
+
+import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.utils.Config;
+
+import java.io.File;
+
+/** On-disk layout of a table file. */
+public enum StorageFormat {
+    /** One tab-separated line per row, header line first. */
+    TEXT,
+    /** Fixed-size pages of length-prefixed binary rows, see {@link PagedTableFile}. */
+    PAGED;
+
+    /**
+     * The format of an existing table file. Files that do not exist yet or are still empty take the
+     * configured format for new tables.
+     */
+    public static StorageFormat of(File file) throws DatabaseOperationException {
+        if (!file.exists() || file.length() == 0) {
+            return Config.getStorageFormat();
+        }
+        return PagedTableFile.isPaged(file) ? PAGED : TEXT;
+    }
+}
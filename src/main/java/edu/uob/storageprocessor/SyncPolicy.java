@@ -0,0 +1,11 @@
+package edu.uob.storageprocessor;
+
+/** When the write-ahead log is forced to disk relative to a statement's reply. */
+public enum SyncPolicy {
+    /** Every statement forces the log before it returns, one fsync per statement. */
+    COMMIT,
+    /** Statements wait for an fsync, but one fsync covers every statement appended before it. */
+    GROUP,
+    /** Statements return straight away and a background task forces the log periodically. */
+    ASYNC
+}
@@ -0,0 +1,200 @@
+package edu.uob.storageprocessor;
+
+import edu.uob.dbmodel.Row;
+import edu.uob.dbmodel.Table;
+import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.utils.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps parsed tables in memory across commands, keyed by the table file (and so by database and
+ * table name). Entries are evicted least-recently-used first once their estimated size exceeds
+ * {@link Config#getTableCacheBytes()}.
+ *
+ * <p>Cached tables are shared between connections: callers must hold the table's read lock from
+ * {@link TableLockManager} while reading a cached table, and its write lock while changing it.
+ *
+ * <p>A table changed through the {@link WriteAheadLog} is marked dirty with {@link #pin(File, Table)}:
+ * its file is stale until the next checkpoint, so dirty entries are never evicted or reloaded.
+ */
+public class TableCache {
+
+    private static final Map<String, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+    private static long totalBytes = 0;
+
+    private TableCache() {
+    }
+
+    /** A table whose changes still have to be folded into its file. */
+    public record DirtyTable(File file, Table table, List<Row> appendedRows, boolean rewrite) {
+    }
+
+    /** Returns the cached table for the file, parsing and caching it on a miss. */
+    public static Table getTable(File tableFile) throws DatabaseOperationException {
+        Table cached = peek(tableFile);
+        if (cached != null) {
+            return cached;
+        }
+        Table table = new Table();
+        table.readTableData(tableFile);
+        put(tableFile, table);
+        return table;
+    }
+
+    /** Returns the cached table for the file, or null if it is not cached. */
+    public static synchronized Table peek(File tableFile) {
+        Entry entry = ENTRIES.get(tableFile.getAbsolutePath());
+        if (entry != null && entry.isCurrent(tableFile)) {
+            return entry.table;
+        }
+        return null;
+    }
+
+    /** Stores the table as the current contents of the file, replacing any previous entry. */
+    public static void put(File tableFile, Table table) {
+        // Sized before taking the lock, since that walks every row
+        long bytes = table.estimateSize();
+        synchronized (TableCache.class) {
+            String key = tableFile.getAbsolutePath();
+            remove(key);
+            Entry entry = new Entry(table, bytes, tableFile.lastModified(), tableFile.length());
+            if (entry.bytes > Config.getTableCacheBytes()) {
+                // Too large to ever fit, serve it uncached
+                return;
+            }
+            ENTRIES.put(key, entry);
+            totalBytes += entry.bytes;
+            evict();
+        }
+    }
+
+    /**
+     * Marks the cached table dirty so it stays in memory until the next checkpoint. Returns false if
+     * {@code table} is no longer the cached instance, in which case the caller must write through.
+     */
+    public static synchronized boolean pin(File tableFile, Table table) {
+        Entry entry = ENTRIES.get(tableFile.getAbsolutePath());
+        if (entry == null || entry.table != table) {
+            return false;
+        }
+        entry.dirty = true;
+        return true;
+    }
+
+    /** Notes a row added to a pinned table, so the checkpoint can append instead of rewriting. */
+    public static synchronized void recordAppend(File tableFile, Row row) {
+        Entry entry = ENTRIES.get(tableFile.getAbsolutePath());
+        if (entry != null && entry.dirty) {
+            entry.appendedRows.add(row);
+            long rowBytes = row.estimateSize();
+            entry.bytes += rowBytes;
+            totalBytes += rowBytes;
+        }
+    }
+
+    /** Notes a change to a pinned table that needs the whole file rewritten. */
+    public static synchronized void recordRewrite(File tableFile) {
+        Entry entry = ENTRIES.get(tableFile.getAbsolutePath());
+        if (entry != null && entry.dirty) {
+            entry.rewrite = true;
+        }
+    }
+
+    /** Lists the dirty tables of a database. */
+    public static synchronized List<DirtyTable> getDirtyTables(File databaseDir) {
+        String prefix = databaseDir.getAbsolutePath() + File.separator;
+        List<DirtyTable> dirtyTables = new ArrayList<>();
+        ENTRIES.forEach((key, entry) -> {
+            if (entry.dirty && key.startsWith(prefix)) {
+                dirtyTables.add(new DirtyTable(new File(key), entry.table,
+                        new ArrayList<>(entry.appendedRows), entry.rewrite));
+            }
+        });
+        return dirtyTables;
+    }
+
+    /**
+     * Called once a dirty table has been written to its file. A table that was rewritten passes its
+     * new estimated size, worked out outside the lock; one that only had rows appended passes -1,
+     * as {@link #recordAppend} has already counted them.
+     */
+    public static synchronized void markClean(File tableFile, Table table, long bytes) {
+        Entry entry = ENTRIES.get(tableFile.getAbsolutePath());
+        if (entry == null || entry.table != table) {
+            return;
+        }
+        entry.dirty = false;
+        entry.rewrite = false;
+        entry.appendedRows.clear();
+        if (bytes >= 0) {
+            totalBytes += bytes - entry.bytes;
+            entry.bytes = bytes;
+        }
+        entry.lastModified = tableFile.lastModified();
+        entry.length = tableFile.length();
+        evict();
+    }
+
+    public static synchronized void invalidate(File tableFile) {
+        remove(tableFile.getAbsolutePath());
+    }
+
+    /** Drops every cached table that belongs to the database folder, dirty or not. */
+    public static synchronized void invalidateDatabase(File databaseDir) {
+        String prefix = databaseDir.getAbsolutePath() + File.separator;
+        Iterator<Map.Entry<String, Entry>> iterator = ENTRIES.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                totalBytes -= entry.getValue().bytes;
+                iterator.remove();
+            }
+        }
+    }
+
+    private static void remove(String key) {
+        Entry previous = ENTRIES.remove(key);
+        if (previous != null) {
+            totalBytes -= previous.bytes;
+        }
+    }
+
+    private static void evict() {
+        Iterator<Entry> iterator = ENTRIES.values().iterator();
+        while (totalBytes > Config.getTableCacheBytes() && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (!entry.dirty) {
+                totalBytes -= entry.bytes;
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class Entry {
+        private final Table table;
+        private final List<Row> appendedRows = new ArrayList<>();
+        private long bytes;
+        private long lastModified;
+        private long length;
+        private boolean dirty = false;
+        private boolean rewrite = false;
+
+        Entry(Table table, long bytes, long lastModified, long length) {
+            this.table = table;
+            this.bytes = bytes;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        /** Guards against the file having been changed behind the engine's back. */
+        boolean isCurrent(File tableFile) {
+            return dirty || (tableFile.lastModified() == lastModified && tableFile.length() == length);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package edu.uob.storageprocessor;
+
+import edu.uob.dbmodel.Table;
+import edu.uob.exceptions.DatabaseOperationException;
+
+import java.io.File;
+
+/**
+ * Converts tab-separated table files to the paged format. Takes database folders or single
+ * {@code .tab} files and should be run while the server is stopped, e.g.
+ * <pre>
+ *   java edu.uob.storageprocessor.TableConverter databases/school
+ * </pre>
+ */
+public class TableConverter {
+
+    /** Rewrites a text table file as a paged one; returns false if it was already paged. */
+    public static boolean convert(File tableFile) throws DatabaseOperationException {
+        if (StorageFormat.of(tableFile) == StorageFormat.PAGED || tableFile.length() == 0) {
+            return false;
+        }
+        Table table = new Table();
+        table.readTableData(tableFile);
+        table.writeTableToFile(tableFile, StorageFormat.PAGED);
+        return true;
+    }
+
+    /** Converts every table file in a database folder, returning how many were converted. */
+    public static int convertDatabase(File databaseDir) throws DatabaseOperationException {
+        File[] tableFiles = databaseDir.listFiles((dir, name) -> name.endsWith(".tab"));
+        if (tableFiles == null) {
+            throw new DatabaseOperationException(" Database doesn't exist");
+        }
+        int converted = 0;
+        for (File tableFile : tableFiles) {
+            if (convert(tableFile)) {
+                converted++;
+            }
+        }
+        return converted;
+    }
+
+    public static void main(String[] args) {
+        for (String path : args) {
+            File file = new File(path);
+            try {
+                if (file.isDirectory()) {
+                    System.out.println(path + ": converted " + convertDatabase(file) + " tables");
+                } else {
+                    System.out.println(path + (convert(file) ? ": converted" : ": already paged"));
+                }
+            } catch (DatabaseOperationException e) {
+                System.err.println(path + ":" + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package edu.uob.storageprocessor;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hands out one read/write lock per table file so that concurrent connections can read the same
+ * table in parallel while writers get exclusive access.
+ */
+public class TableLockManager {
+
+    private static final Map<String, ReadWriteLock> LOCKS = new ConcurrentHashMap<>();
+
+    private TableLockManager() {
+    }
+
+    public static ReadWriteLock getLock(File tableFile) {
+        return LOCKS.computeIfAbsent(tableFile.getAbsolutePath(), path -> new ReentrantReadWriteLock());
+    }
+}
@@ -0,0 +1,190 @@
+package edu.uob.storageprocessor;
+
+import edu.uob.dbmodel.ColumnType;
+import edu.uob.exceptions.DatabaseOperationException;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Small per-table sidecar ({@code <table>.meta}) holding bookkeeping that would otherwise need a
+ * scan of the table file, such as the next id to hand out. Loaded instances are kept in memory and
+ * must only be changed while holding the table's write lock.
+ */
+public class TableMetadata {
+
+    private static final String META_EXTENSION = ".meta";
+    private static final String NEXT_ID = "nextId";
+    private static final String COLUMN_TYPES = "types";
+    private static final String DICTIONARY_COLUMNS = "dictionary";
+    private static final Map<String, TableMetadata> LOADED = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final Properties properties = new Properties();
+
+    private TableMetadata(File file) {
+        this.file = file;
+    }
+
+    public static File getMetadataFile(File tableFile) {
+        String name = tableFile.getName();
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+        return new File(tableFile.getParentFile(), baseName + META_EXTENSION);
+    }
+
+    /** Returns the metadata for a table, reading the sidecar the first time it is needed. */
+    public static TableMetadata forTable(File tableFile) throws DatabaseOperationException {
+        String key = tableFile.getAbsolutePath();
+        TableMetadata metadata = LOADED.get(key);
+        if (metadata == null) {
+            metadata = new TableMetadata(getMetadataFile(tableFile));
+            metadata.load(tableFile);
+            LOADED.put(key, metadata);
+        }
+        return metadata;
+    }
+
+    /** Creates fresh metadata for a newly created table, replacing anything left from a dropped one. */
+    public static TableMetadata create(File tableFile) throws DatabaseOperationException {
+        TableMetadata metadata = new TableMetadata(getMetadataFile(tableFile));
+        metadata.setNextId(1);
+        metadata.save();
+        LOADED.put(tableFile.getAbsolutePath(), metadata);
+        return metadata;
+    }
+
+    public static void delete(File tableFile) {
+        LOADED.remove(tableFile.getAbsolutePath());
+        getMetadataFile(tableFile).delete();
+    }
+
+    /** Forgets every loaded sidecar under the database folder. */
+    public static void forgetDatabase(File databaseDir) {
+        String prefix = databaseDir.getAbsolutePath() + File.separator;
+        LOADED.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    public long getNextId() {
+        return Long.parseLong(properties.getProperty(NEXT_ID, "1"));
+    }
+
+    public void setNextId(long nextId) {
+        properties.setProperty(NEXT_ID, String.valueOf(nextId));
+    }
+
+    /** Hands out the next id and persists the advanced sequence. */
+    public long allocateId() throws DatabaseOperationException {
+        long id = getNextId();
+        setNextId(id + 1);
+        save();
+        return id;
+    }
+
+    /** The types columns were declared with; columns without one are absent. */
+    public Map<String, ColumnType> getColumnTypes() throws DatabaseOperationException {
+        Map<String, ColumnType> types = new LinkedHashMap<>();
+        String property = properties.getProperty(COLUMN_TYPES);
+        if (property != null && !property.isEmpty()) {
+            for (String column : property.split(",")) {
+                int colon = column.indexOf(':');
+                types.put(column.substring(0, colon), ColumnType.fromName(column.substring(colon + 1)));
+            }
+        }
+        return types;
+    }
+
+    public void setColumnTypes(Map<String, ColumnType> types) {
+        StringJoiner property = new StringJoiner(",");
+        types.forEach((column, type) -> property.add(column + ":" + type.name()));
+        setProperty(COLUMN_TYPES, types.isEmpty() ? null : property.toString());
+    }
+
+    /** The columns declared dictionary-encoded, in declaration order. */
+    public Set<String> getDictionaryColumns() {
+        Set<String> columns = new LinkedHashSet<>();
+        String property = properties.getProperty(DICTIONARY_COLUMNS);
+        if (property != null && !property.isEmpty()) {
+            columns.addAll(Arrays.asList(property.split(",")));
+        }
+        return columns;
+    }
+
+    public void setDictionaryColumns(Set<String> columns) {
+        setProperty(DICTIONARY_COLUMNS, columns.isEmpty() ? null : String.join(",", columns));
+    }
+
+    public String getProperty(String key) {
+        return properties.getProperty(key);
+    }
+
+    public void setProperty(String key, String value) {
+        if (value == null) {
+            properties.remove(key);
+        } else {
+            properties.setProperty(key, value);
+        }
+    }
+
+    public void save() throws DatabaseOperationException {
+        try (Writer writer = new FileWriter(file)) {
+            properties.store(writer, null);
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while writing table metadata");
+        }
+    }
+
+    private void load(File tableFile) throws DatabaseOperationException {
+        if (file.exists()) {
+            try (Reader reader = new FileReader(file)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                throw new DatabaseOperationException(" Error occurred while reading table metadata");
+            }
+        }
+        if (properties.getProperty(NEXT_ID) == null) {
+            // Tables written before the sidecar existed: continue after the largest id on disk
+            setNextId(scanMaxId(tableFile) + 1);
+            save();
+        }
+    }
+
+    private static long scanMaxId(File tableFile) throws DatabaseOperationException {
+        if (PagedTableFile.isPaged(tableFile)) {
+            long[] maxId = {0};
+            PagedTableFile.open(tableFile).forEachRow(values -> maxId[0] = Math.max(maxId[0], parseId(values.get(0))));
+            return maxId[0];
+        }
+        StorageEngine storageEngine = new StorageEngine();
+        storageEngine.getFileReader(tableFile);
+        long maxId = 0;
+        String line = storageEngine.readLine();
+        while ((line = storageEngine.readLine()) != null) {
+            int tab = line.indexOf('\t');
+            maxId = Math.max(maxId, parseId(tab >= 0 ? line.substring(0, tab) : line));
+        }
+        storageEngine.flushWriter();
+        return maxId;
+    }
+
+    private static long parseId(String id) {
+        try {
+            return id == null ? 0 : Long.parseLong(id.trim());
+        } catch (NumberFormatException e) {
+            // Not an id, e.g. a blank line
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package edu.uob.storageprocessor;
+
+import edu.uob.dbmodel.Header;
+import edu.uob.dbmodel.Row;
+import edu.uob.dbmodel.Table;
+import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.indexprocessor.TableIndexes;
+import edu.uob.utils.Config;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Per-database write-ahead log ({@code <database>/wal.log}). Statements append a compact
+ * {@link LogRecord} here before changing the cached table in memory, instead of rewriting the table
+ * file; the {@link Checkpointer} later folds dirty tables into their files and truncates the log. A
+ * statement that writes a table file directly appends its record before touching the file too.
+ *
+ * <p>Each record is framed as {@code length, crc32, payload} so a torn write at the tail is detected
+ * and ignored on recovery. Replay is idempotent (rows are matched by id), which makes it safe to
+ * replay records whose effect already reached the table file before a crash.
+ */
+public class WriteAheadLog {
+
+    private static final String LOG_FILE_NAME = "wal.log";
+    private static final Map<String, WriteAheadLog> OPEN_LOGS = new ConcurrentHashMap<>();
+
+    private final File databaseDir;
+    private final FileChannel channel;
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private final Object syncLock = new Object();
+    private final Set<File> unsyncedFiles = ConcurrentHashMap.newKeySet();
+    private long writtenLsn = 0;
+    private volatile long flushedLsn = 0;
+    private volatile long logSize = 0;
+    private volatile long lastCheckpoint = System.currentTimeMillis();
+
+    private WriteAheadLog(File databaseDir, FileChannel channel) {
+        this.databaseDir = databaseDir;
+        this.channel = channel;
+    }
+
+    /** Returns the database's log, opening it and replaying anything left by a crash on first use. */
+    public static WriteAheadLog forDatabase(File databaseDir) throws DatabaseOperationException {
+        String key = databaseDir.getAbsolutePath();
+        WriteAheadLog log = OPEN_LOGS.get(key);
+        if (log != null) {
+            return log;
+        }
+        synchronized (OPEN_LOGS) {
+            log = OPEN_LOGS.get(key);
+            if (log == null) {
+                log = open(databaseDir);
+                OPEN_LOGS.put(key, log);
+                Checkpointer.start();
+            }
+            return log;
+        }
+    }
+
+    /**
+     * Closes the database's log. With {@code checkpoint} set dirty tables are written out first;
+     * without it any unwritten changes stay in the log file only, as after a crash.
+     */
+    public static void close(File databaseDir, boolean checkpoint) throws DatabaseOperationException {
+        WriteAheadLog log;
+        synchronized (OPEN_LOGS) {
+            log = OPEN_LOGS.remove(databaseDir.getAbsolutePath());
+        }
+        if (log == null) {
+            return;
+        }
+        if (checkpoint) {
+            log.checkpoint();
+        }
+        try {
+            log.channel.close();
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while closing the log");
+        }
+    }
+
+    static Collection<WriteAheadLog> openLogs() {
+        return new ArrayList<>(OPEN_LOGS.values());
+    }
+
+    /**
+     * Lock every statement that changes a table holds while it runs. Take it before the table lock;
+     * the checkpointer takes the exclusive side so it sees no half applied statements.
+     */
+    public Lock getStatementLock() {
+        return checkpointLock.readLock();
+    }
+
+    /** Appends records and returns the position to pass to {@link #commit(long)}. */
+    public synchronized long append(List<LogRecord> records) throws DatabaseOperationException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (LogRecord record : records) {
+                ByteArrayOutputStream payload = new ByteArrayOutputStream();
+                record.writeTo(new DataOutputStream(payload));
+                byte[] data = payload.toByteArray();
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                out.writeInt(data.length);
+                out.writeInt((int) crc.getValue());
+                out.write(data);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            writtenLsn += bytes.size();
+            logSize += bytes.size();
+            if (Config.getWalSyncPolicy() == SyncPolicy.COMMIT) {
+                channel.force(false);
+                flushedLsn = writtenLsn;
+            }
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while writing the log");
+        }
+        if (logSize > Config.getCheckpointLogBytes()) {
+            Checkpointer.request(this);
+        }
+        return writtenLsn;
+    }
+
+    public long append(LogRecord record) throws DatabaseOperationException {
+        return append(List.of(record));
+    }
+
+    /**
+     * Makes sure the log is durable up to {@code lsn}, according to the sync policy. Under
+     * {@link SyncPolicy#GROUP} a single fsync covers every statement that appended before it
+     * started, so concurrent committers share the cost.
+     */
+    public void commit(long lsn) throws DatabaseOperationException {
+        if (lsn <= flushedLsn || Config.getWalSyncPolicy() == SyncPolicy.ASYNC) {
+            return;
+        }
+        syncTo(lsn);
+    }
+
+    /**
+     * Forces the log up to {@code lsn} whatever the sync policy. Statements that write a table file
+     * in place call this first, since a crash part way through the write can only be repaired from
+     * a record that reached the disk.
+     */
+    public void sync(long lsn) throws DatabaseOperationException {
+        syncTo(lsn);
+    }
+
+    /** Remembers a table file that was appended to directly and must be synced at checkpoint. */
+    public void appendedDirectly(File tableFile) {
+        unsyncedFiles.add(tableFile);
+    }
+
+    void syncTo(long lsn) throws DatabaseOperationException {
+        synchronized (syncLock) {
+            if (lsn <= flushedLsn) {
+                // Someone else's fsync already covered this record
+                return;
+            }
+            long target;
+            synchronized (this) {
+                target = writtenLsn;
+            }
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                throw new DatabaseOperationException(" Error occurred while syncing the log");
+            }
+            flushedLsn = Math.max(flushedLsn, target);
+        }
+    }
+
+    void syncAll() throws DatabaseOperationException {
+        long target;
+        synchronized (this) {
+            target = writtenLsn;
+        }
+        syncTo(target);
+    }
+
+    boolean isCheckpointDue() {
+        return logSize > Config.getCheckpointLogBytes()
+                || (logSize > 0 && System.currentTimeMillis() - lastCheckpoint >= Config.getCheckpointMillis());
+    }
+
+    /** Writes every dirty table of the database to its file and empties the log. */
+    public void checkpoint() throws DatabaseOperationException {
+        Lock lock = checkpointLock.writeLock();
+        lock.lock();
+        try {
+            if (!channel.isOpen()) {
+                // Closed while the checkpoint was queued
+                return;
+            }
+            for (TableCache.DirtyTable dirty : TableCache.getDirtyTables(databaseDir)) {
+                if (!dirty.file().exists()) {
+                    continue;
+                }
+                long bytes = -1;
+                if (dirty.rewrite()) {
+                    dirty.table().writeTableToFile(dirty.file());
+                    bytes = dirty.table().estimateSize();
+                } else if (!dirty.appendedRows().isEmpty()) {
+                    dirty.table().appendRowsToFile(dirty.file(), dirty.appendedRows(), true);
+                }
+                TableCache.markClean(dirty.file(), dirty.table(), bytes);
+            }
+            for (File file : unsyncedFiles) {
+                if (file.exists()) {
+                    try (FileChannel tableChannel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                        tableChannel.force(true);
+                    }
+                }
+            }
+            unsyncedFiles.clear();
+            TableIndexes.saveDirty(databaseDir);
+            synchronized (this) {
+                channel.truncate(0);
+                channel.force(true);
+                logSize = 0;
+                flushedLsn = writtenLsn;
+            }
+            lastCheckpoint = System.currentTimeMillis();
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while writing a checkpoint");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static WriteAheadLog open(File databaseDir) throws DatabaseOperationException {
+        File logFile = new File(databaseDir, LOG_FILE_NAME);
+        if (logFile.exists() && logFile.length() > 0) {
+            recover(databaseDir, readRecords(logFile));
+        }
+        try {
+            FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+            channel.truncate(0);
+            channel.force(true);
+            return new WriteAheadLog(databaseDir, channel);
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while opening the log");
+        }
+    }
+
+    private static List<LogRecord> readRecords(File logFile) throws DatabaseOperationException {
+        List<LogRecord> records = new ArrayList<>();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(logFile))) {
+            DataInputStream data = new DataInputStream(in);
+            while (true) {
+                int length;
+                try {
+                    length = data.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                int checksum = data.readInt();
+                if (length < 0 || length > logFile.length()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                data.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    // Torn write from a crash, nothing after it was committed
+                    break;
+                }
+                records.add(LogRecord.readFrom(new DataInputStream(new ByteArrayInputStream(payload))));
+            }
+        } catch (EOFException e) {
+            // Partial record at the tail
+        } catch (IOException e) {
+            throw new DatabaseOperationException(" Error occurred while reading the log");
+        }
+        return records;
+    }
+
+    /** Replays logged changes into the table files of a database that was not shut down cleanly. */
+    private static void recover(File databaseDir, List<LogRecord> records) throws DatabaseOperationException {
+        Map<String, List<LogRecord>> byTable = new LinkedHashMap<>();
+        for (LogRecord record : records) {
+            if (record.type() == LogRecord.Type.DROP_TABLE) {
+                // Anything logged before the drop belongs to a table that no longer exists
+                byTable.remove(record.table());
+            } else {
+                byTable.computeIfAbsent(record.table(), table -> new ArrayList<>()).add(record);
+            }
+        }
+        for (Map.Entry<String, List<LogRecord>> entry : byTable.entrySet()) {
+            File tableFile = new File(databaseDir, entry.getKey() + ".tab");
+            if (tableFile.exists()) {
+                redo(tableFile, entry.getValue());
+                TableCache.invalidate(tableFile);
+            }
+        }
+    }
+
+    private static void redo(File tableFile, List<LogRecord> records) throws DatabaseOperationException {
+        Table table = new Table();
+        table.readTableData(tableFile);
+        long maxId = 0;
+
+        for (LogRecord record : records) {
+            switch (record.type()) {
+                case INSERT -> {
+                    String id = record.values().get(0);
+                    if (table.getRowById(id) == null) {
+                        Row row = new Row(table.getWidth());
+                        for (int i = 0; i < table.getHeaders().size(); i++) {
+                            row.setValue(table.getHeader(i), i < record.values().size() ? record.values().get(i) : "");
+                        }
+                        table.addRow(row);
+                    }
+                    try {
+                        maxId = Math.max(maxId, Long.parseLong(id));
+                    } catch (NumberFormatException ignored) {
+                        // Ids are always numeric when written by the engine
+                    }
+                }
+                case UPDATE -> {
+                    for (String id : record.ids()) {
+                        Row row = table.getRowById(id);
+                        if (row == null) {
+                            continue;
+                        }
+                        for (int i = 0; i < record.columns().size(); i++) {
+                            Header header = table.getColumn(record.columns().get(i));
+                            if (header != null) {
+                                row.updateRow(header, record.values().get(i));
+                            }
+                        }
+                    }
+                    if (record.columns().contains("id")) {
+                        table.resetRowLookup();
+                        try {
+                            maxId = Math.max(maxId, Long.parseLong(record.values().get(record.columns().indexOf("id"))));
+                        } catch (NumberFormatException ignored) {
+                            // Only whole numbers are accepted as ids
+                        }
+                    }
+                }
+                case DELETE -> {
+                    List<Row> removed = new ArrayList<>();
+                    for (String id : record.ids()) {
+                        Row row = table.getRowById(id);
+                        if (row != null) {
+                            removed.add(row);
+                        }
+                    }
+                    table.removeRows(removed);
+                }
+                case ADD_COLUMN -> {
+                    if (!table.containsColumn(record.columns().get(0))) {
+                        table.addColumn(record.columns().get(0));
+                    }
+                }
+                case DROP_COLUMN -> {
+                    if (table.containsColumn(record.columns().get(0))) {
+                        table.deleteColumn(record.columns().get(0));
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        table.writeTableToFile(tableFile);
+
+        TableMetadata metadata = TableMetadata.forTable(tableFile);
+        if (metadata.getNextId() <= maxId) {
+            metadata.setNextId(maxId + 1);
+            metadata.save();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package edu.uob.utils;
+
+import edu.uob.storageprocessor.PagedTableFile;
+import edu.uob.storageprocessor.StorageFormat;
+import edu.uob.storageprocessor.SyncPolicy;
+
+/**
+ * Server tuning knobs. Defaults can be overridden with {@code -D} system properties at startup
+ * or changed at runtime through the setters.
+ */
+public class Config {
+
+    private static volatile int connectionThreads = Integer.getInteger("db.server.threads", 64);
+
+    private static volatile long tableCacheBytes = Long.getLong("db.cache.bytes", 64L * 1024 * 1024);
+
+    private static volatile SyncPolicy walSyncPolicy =
+            SyncPolicy.valueOf(System.getProperty("db.wal.sync", SyncPolicy.GROUP.name()).toUpperCase());
+
+    private static volatile long walFlushMillis = Long.getLong("db.wal.flushMillis", 10);
+
+    private static volatile long checkpointMillis = Long.getLong("db.wal.checkpointMillis", 1000);
+
+    private static volatile long checkpointLogBytes = Long.getLong("db.wal.checkpointBytes", 8L * 1024 * 1024);
+
+    private static volatile StorageFormat storageFormat =
+            StorageFormat.valueOf(System.getProperty("db.storage.format", StorageFormat.TEXT.name()).toUpperCase());
+
+    private static volatile long mapSegmentBytes = Long.getLong("db.paged.mapSegmentBytes", 1L << 30);
+
+    private static volatile int indexNodeCache = Integer.getInteger("db.index.nodeCache", 1024);
+
+    private static volatile long sortMemoryBytes = Long.getLong("db.sort.memoryBytes", 32L * 1024 * 1024);
+
+    private static volatile long aggregateMemoryBytes = Long.getLong("db.aggregate.memoryBytes", 32L * 1024 * 1024);
+
+    private static volatile long resultMemoryBytes = Long.getLong("db.result.memoryBytes", 32L * 1024 * 1024);
+
+    private static volatile int planCacheEntries = Integer.getInteger("db.planCache.entries", 1024);
+
+    private static volatile int scanParallelThreshold = Integer.getInteger("db.scan.parallelThreshold", 50_000);
+
+    private static volatile int scanParallelism =
+            Integer.getInteger("db.scan.parallelism", Runtime.getRuntime().availableProcessors());
+
+    private Config() {
+    }
+
+    public static int getConnectionThreads() {
+        return connectionThreads;
+    }
+
+    public static void setConnectionThreads(int threads) {
+        connectionThreads = Math.max(1, threads);
+    }
+
+    public static long getTableCacheBytes() {
+        return tableCacheBytes;
+    }
+
+    public static void setTableCacheBytes(long bytes) {
+        tableCacheBytes = Math.max(0, bytes);
+    }
+
+    public static SyncPolicy getWalSyncPolicy() {
+        return walSyncPolicy;
+    }
+
+    public static void setWalSyncPolicy(SyncPolicy policy) {
+        walSyncPolicy = policy;
+    }
+
+    /** How often the log is forced under {@link SyncPolicy#ASYNC}. */
+    public static long getWalFlushMillis() {
+        return walFlushMillis;
+    }
+
+    /** How often dirty tables are folded into their files and the log is truncated. */
+    public static long getCheckpointMillis() {
+        return checkpointMillis;
+    }
+
+    public static void setCheckpointMillis(long millis) {
+        checkpointMillis = Math.max(0, millis);
+    }
+
+    /** Log size that triggers a checkpoint before the next scheduled one. */
+    public static long getCheckpointLogBytes() {
+        return checkpointLogBytes;
+    }
+
+    public static void setCheckpointLogBytes(long bytes) {
+        checkpointLogBytes = Math.max(0, bytes);
+    }
+
+    /**
+     * Format for newly created tables: plain text unless {@code db.storage.format=PAGED} is given.
+     * Existing files keep whatever format they were written in.
+     */
+    public static StorageFormat getStorageFormat() {
+        return storageFormat;
+    }
+
+    public static void setStorageFormat(StorageFormat format) {
+        storageFormat = format;
+    }
+
+    /**
+     * Distance between the windows a paged table file is mapped in. Each window runs up to 2 GiB, so
+     * no page may be longer than 2 GiB less this.
+     */
+    public static long getMapSegmentBytes() {
+        return mapSegmentBytes;
+    }
+
+    public static void setMapSegmentBytes(long bytes) {
+        mapSegmentBytes = Math.min(Math.max(PagedTableFile.PAGE_SIZE, bytes), 1L << 30);
+    }
+
+    /** B+tree nodes each index keeps in memory; the rest are read back from its file as needed. */
+    public static int getIndexNodeCache() {
+        return indexNodeCache;
+    }
+
+    public static void setIndexNodeCache(int nodes) {
+        indexNodeCache = Math.max(1, nodes);
+    }
+
+    /** Rows a table needs before its scans are split across threads; smaller tables are scanned in place. */
+    public static int getScanParallelThreshold() {
+        return scanParallelThreshold;
+    }
+
+    public static void setScanParallelThreshold(int rows) {
+        scanParallelThreshold = Math.max(1, rows);
+    }
+
+    /** Threads a single large scan may use. */
+    public static int getScanParallelism() {
+        return scanParallelism;
+    }
+
+    public static void setScanParallelism(int threads) {
+        scanParallelism = Math.max(1, threads);
+    }
+
+    /** Rows a single ORDER BY may hold in memory, in estimated bytes, before it spills sorted runs to disk. */
+    public static long getSortMemoryBytes() {
+        return sortMemoryBytes;
+    }
+
+    public static void setSortMemoryBytes(long bytes) {
+        sortMemoryBytes = Math.max(0, bytes);
+    }
+
+    /** Groups a single GROUP BY may hold in memory, in estimated bytes, before it spills rows of new groups to disk. */
+    public static long getAggregateMemoryBytes() {
+        return aggregateMemoryBytes;
+    }
+
+    public static void setAggregateMemoryBytes(long bytes) {
+        aggregateMemoryBytes = Math.max(0, bytes);
+    }
+
+    /**
+     * A single reply's lines held in memory, in estimated bytes, between reading them under the table
+     * locks and sending them; the rest are spooled to disk.
+     */
+    public static long getResultMemoryBytes() {
+        return resultMemoryBytes;
+    }
+
+    public static void setResultMemoryBytes(long bytes) {
+        resultMemoryBytes = Math.max(0, bytes);
+    }
+
+    /** Statement shapes whose parsed form is kept for reuse; 0 parses every statement afresh. */
+    public static int getPlanCacheEntries() {
+        return planCacheEntries;
+    }
+
+    public static void setPlanCacheEntries(int entries) {
+        planCacheEntries = Math.max(0, entries);
+    }
+}
@@ -1,10 +1,54 @@
 package edu.uob.utils;
 
+import edu.uob.dbengine.PreparedStatement;
+import edu.uob.outputprocessor.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-connection state: the active database, the statements prepared on the connection and the
+ * output of the command in flight.
+ * Every client connection owns exactly one session, so sessions are never shared between threads.
+ */
 public class Session {
 
-    public static String DBname = null;
+    private String DBname = null;
+
+    private String DBpath = null;
+
+    private final Logger logger = new Logger();
+
+    private final Map<String, PreparedStatement> preparedStatements = new HashMap<>();
+
+    public String getDBname() {
+        return DBname;
+    }
+
+    public String getDBpath() {
+        return DBpath;
+    }
+
+    public void setDatabase(String DBname, String DBpath) {
+        this.DBname = DBname;
+        this.DBpath = DBpath;
+    }
+
+    public void clearDatabase() {
+        this.DBname = null;
+        this.DBpath = null;
+    }
+
+    public Logger getLogger() {
+        return logger;
+    }
 
-    public static String DBpath = null;
+    /** Adds a statement prepared under {@code name}, replacing any already prepared under it. */
+    public void addPreparedStatement(String name, PreparedStatement statement) {
+        preparedStatements.put(name, statement);
+    }
 
-    private Session() {}
+    public PreparedStatement getPreparedStatement(String name) {
+        return preparedStatements.get(name);
+    }
 }
@@ -1,10 +1,32 @@
 package edu.uob;
 
+import edu.uob.dbmodel.Header;
+import edu.uob.dbmodel.Row;
+import edu.uob.dbmodel.Table;
+import edu.uob.exceptions.DatabaseOperationException;
+import edu.uob.executionprocessor.FileScan;
+import edu.uob.indexprocessor.TableIndexes;
+import edu.uob.storageprocessor.PagedTableFile;
+import edu.uob.storageprocessor.StorageFormat;
+import edu.uob.storageprocessor.TableCache;
+import edu.uob.storageprocessor.TableConverter;
+import edu.uob.storageprocessor.TableLockManager;
+import edu.uob.storageprocessor.WriteAheadLog;
+import edu.uob.utils.Config;
+import edu.uob.utils.Session;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -27,6 +49,47 @@ public class DatabaseServerTests {
                 "Server took too long to respond (probably stuck in an infinite loop)");
     }
 
+    // Test code that a setting is changed around; it is put back however the code finishes
+    private interface Scenario {
+        void run() throws Exception;
+    }
+
+    // Holds off background checkpoints, so a simulated crash leaves changes only in the log
+    private void withoutCheckpoints(Scenario scenario) throws Exception {
+        long millis = Config.getCheckpointMillis();
+        long logBytes = Config.getCheckpointLogBytes();
+        Config.setCheckpointMillis(Long.MAX_VALUE);
+        Config.setCheckpointLogBytes(Long.MAX_VALUE);
+        try {
+            scenario.run();
+        } finally {
+            Config.setCheckpointMillis(millis);
+            Config.setCheckpointLogBytes(logBytes);
+        }
+    }
+
+    // Runs the scenario under a different table cache budget; 0 keeps every table out of the cache
+    private void withTableCacheBytes(long bytes, Scenario scenario) throws Exception {
+        long budget = Config.getTableCacheBytes();
+        Config.setTableCacheBytes(bytes);
+        try {
+            scenario.run();
+        } finally {
+            Config.setTableCacheBytes(budget);
+        }
+    }
+
+    // Runs the scenario with new tables written in the given format
+    private void withStorageFormat(StorageFormat format, Scenario scenario) throws Exception {
+        StorageFormat previous = Config.getStorageFormat();
+        Config.setStorageFormat(format);
+        try {
+            scenario.run();
+        } finally {
+            Config.setStorageFormat(previous);
+        }
+    }
+
     @Test
     public void testCreateDatabase() {
         String randomName = generateRandomName();
@@ -384,4 +447,1019 @@ public class DatabaseServerTests {
         assertEquals("6", lines.get(5));
 
     }
+
+    @Test
+    public void testSessionsAreIsolated() {
+        String firstName = generateRandomName();
+        String secondName = generateRandomName();
+        Session first = new Session();
+        Session second = new Session();
+        server.handleCommand("CREATE DATABASE " + firstName + ";", first);
+        server.handleCommand("CREATE DATABASE " + secondName + ";", second);
+        server.handleCommand("CREATE TABLE marks (name, mark);", first);
+        server.handleCommand("INSERT INTO marks VALUES ('Simon', 65);", first);
+        String response = server.handleCommand("SELECT * FROM marks;", second);
+        assertEquals("[ERROR] Table not found", response);
+        response = server.handleCommand("SELECT * FROM marks;", first);
+        assertTrue(response.contains("Simon"));
+    }
+
+    @Test
+    public void testStreamedResultMatchesBufferedResult() {
+        String randomName = generateRandomName();
+        Session session = new Session();
+        server.handleCommand("CREATE DATABASE " + randomName + ";", session);
+        server.handleCommand("CREATE TABLE marks (name, mark);", session);
+        server.handleCommand("INSERT INTO marks VALUES ('Simon', 65);", session);
+        server.handleCommand("INSERT INTO marks VALUES ('Rob', 35);", session);
+        String buffered = server.handleCommand("SELECT name FROM marks WHERE mark > 40;", session);
+        StringWriter writer = new StringWriter();
+        server.handleCommand("SELECT name FROM marks WHERE mark > 40;", session, writer);
+        assertEquals("[OK]\nname\nSimon", buffered);
+        assertEquals(buffered, writer.toString());
+        writer = new StringWriter();
+        server.handleCommand("SELECT * FROM marks WHERE name;", session, writer);
+        assertEquals("[ERROR] Invalid condition format: name", writer.toString());
+    }
+
+    @Test
+    public void testQueriesWorkWhenCacheCannotHoldTables() throws Exception {
+        withTableCacheBytes(0, () -> {
+            String randomName = generateRandomName();
+            sendCommandToServer("CREATE DATABASE " + randomName + ";");
+            sendCommandToServer("USE " + randomName + ";");
+            sendCommandToServer("CREATE TABLE marks (name, mark);");
+            sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65);");
+            sendCommandToServer("UPDATE marks SET mark = 70 WHERE name == 'Simon';");
+            String response = sendCommandToServer("SELECT * FROM marks;");
+            assertEquals("[OK]\nid\tname\tmark\n1\tSimon\t70", response);
+        });
+    }
+
+    @Test
+    public void testUncachedPagedTablesRewriteRowsInPlace() throws Exception {
+        withStorageFormat(StorageFormat.PAGED, () -> withTableCacheBytes(0, () -> {
+            String randomName = generateRandomName();
+            sendCommandToServer("CREATE DATABASE " + randomName + ";");
+            sendCommandToServer("USE " + randomName + ";");
+            sendCommandToServer("CREATE TABLE marks (name, mark);");
+            sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65);");
+            sendCommandToServer("INSERT INTO marks VALUES ('Rob', 35);");
+            sendCommandToServer("INSERT INTO marks VALUES ('Chris', 20);");
+            // Shorter values fit in the old slot, longer ones force a rewrite of the file
+            sendCommandToServer("UPDATE marks SET mark = 7 WHERE name == 'Simon';");
+            sendCommandToServer("UPDATE marks SET name = 'Roberto' WHERE id == 2;");
+            sendCommandToServer("DELETE FROM marks WHERE name == 'Chris';");
+            String response = sendCommandToServer("SELECT * FROM marks;");
+            assertEquals("[OK]\nid\tname\tmark\n1\tSimon\t7\n2\tRoberto\t35", response);
+        }));
+    }
+
+    @Test
+    public void testTextTablesConvertToPagedFormat() throws IOException, DatabaseOperationException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        File tableFile = Paths.get("databases", randomName, "marks.tab").toFile().getAbsoluteFile();
+        Files.writeString(tableFile.toPath(), "id\tname\tmark\n1\tSimon\t65\n2\tRob\t35\n");
+        String before = sendCommandToServer("SELECT * FROM marks;");
+
+        assertTrue(TableConverter.convert(tableFile));
+        assertTrue(PagedTableFile.isPaged(tableFile));
+        assertFalse(TableConverter.convert(tableFile));
+        TableCache.invalidate(tableFile);
+        assertEquals(before, sendCommandToServer("SELECT * FROM marks;"));
+
+        sendCommandToServer("INSERT INTO marks VALUES ('Chris', 20);");
+        String response = sendCommandToServer("SELECT * FROM marks WHERE mark < 40;");
+        assertEquals("[OK]\nid\tname\tmark\n2\tRob\t35\n3\tChris\t20", response);
+    }
+
+    @Test
+    public void testIdSequenceSurvivesRestartAndLegacyTables() throws IOException {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Rob', 35);");
+        sendCommandToServer("DELETE FROM marks WHERE id == 2;");
+
+        server = new DBServer();
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("INSERT INTO marks VALUES ('Chris', 20);");
+        String response = sendCommandToServer("SELECT id FROM marks;");
+        assertEquals("[OK]\nid\n1\n3", response);
+
+        // A table file written without a metadata sidecar continues after its largest id
+        File legacy = Paths.get("databases", randomName, "legacy.tab").toFile();
+        Files.writeString(legacy.toPath(), "id\tname\n7\tOld\n4\tOlder");
+        sendCommandToServer("INSERT INTO legacy VALUES ('New');");
+        response = sendCommandToServer("SELECT * FROM legacy;");
+        assertEquals("[OK]\nid\tname\n7\tOld\n4\tOlder\n8\tNew", response);
+    }
+
+    // A crash drops whatever the cache held; reopening the database replays the log
+    @Test
+    public void testChangesSurviveCrashBeforeCheckpoint() throws Exception {
+        withoutCheckpoints(() -> {
+            String randomName = generateRandomName();
+            sendCommandToServer("CREATE DATABASE " + randomName + ";");
+            sendCommandToServer("USE " + randomName + ";");
+            sendCommandToServer("CREATE TABLE marks (name, mark);");
+            sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65);");
+            sendCommandToServer("INSERT INTO marks VALUES ('Rob', 35);");
+            sendCommandToServer("SELECT * FROM marks;");
+            sendCommandToServer("INSERT INTO marks VALUES ('Chris', 20);");
+            sendCommandToServer("UPDATE marks SET mark = 40 WHERE name == 'Rob';");
+            sendCommandToServer("DELETE FROM marks WHERE name == 'Simon';");
+            sendCommandToServer("ALTER TABLE marks ADD pass;");
+
+            File dbDir = Paths.get("databases", randomName).toFile().getAbsoluteFile();
+            TableCache.invalidateDatabase(dbDir);
+            WriteAheadLog.close(dbDir, false);
+
+            server = new DBServer();
+            sendCommandToServer("USE " + randomName + ";");
+            String response = sendCommandToServer("SELECT * FROM marks;");
+            assertEquals("[OK]\nid\tname\tmark\tpass\n2\tRob\t40\t\n3\tChris\t20\t", response);
+        });
+    }
+
+    @Test
+    public void testIndexedEqualityLookups() throws Exception {
+        withoutCheckpoints(() -> {
+            String randomName = generateRandomName();
+            sendCommandToServer("CREATE DATABASE " + randomName + ";");
+            sendCommandToServer("USE " + randomName + ";");
+            sendCommandToServer("CREATE TABLE marks (name, mark);");
+            sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65);");
+            sendCommandToServer("INSERT INTO marks VALUES ('Rob', 35);");
+            String response = sendCommandToServer("CREATE INDEX ON marks(mark);");
+            assertTrue(response.contains("[OK]"), "Creating an index should succeed");
+            response = sendCommandToServer("CREATE INDEX ON marks(mark);");
+            assertTrue(response.contains("[ERROR]"), "The same index can't be created twice");
+            response = sendCommandToServer("CREATE INDEX ON marks(grade);");
+            assertTrue(response.contains("[ERROR]"), "Indexes need an existing column");
+
+            // Numbers match by value through the index, just like a scan
+            sendCommandToServer("INSERT INTO marks VALUES ('Chris', 65.0);");
+            response = sendCommandToServer("SELECT name FROM marks WHERE mark == 65;");
+            assertEquals("[OK]\nname\nSimon\nChris", response);
+
+            sendCommandToServer("UPDATE marks SET mark = 35 WHERE mark == 65;");
+            sendCommandToServer("DELETE FROM marks WHERE name == 'Rob';");
+            response = sendCommandToServer("SELECT * FROM marks WHERE mark == 35;");
+            assertEquals("[OK]\nid\tname\tmark\n1\tSimon\t35\n3\tChris\t35", response);
+            response = sendCommandToServer("SELECT * FROM marks WHERE mark == 65;");
+            assertEquals("[OK]\nid\tname\tmark", response);
+
+            // After a crash the saved index is older than the replayed table and gets rebuilt
+            File dbDir = Paths.get("databases", randomName).toFile().getAbsoluteFile();
+            TableCache.invalidateDatabase(dbDir);
+            TableIndexes.forgetDatabase(dbDir);
+            WriteAheadLog.close(dbDir, false);
+            server = new DBServer();
+            sendCommandToServer("USE " + randomName + ";");
+            response = sendCommandToServer("SELECT name FROM marks WHERE mark == 35;");
+            assertEquals("[OK]\nname\nSimon\nChris", response);
+
+            response = sendCommandToServer("DROP INDEX ON marks(mark);");
+            assertTrue(response.contains("[OK]"), "Dropping an index should succeed");
+            response = sendCommandToServer("DROP INDEX ON marks(mark);");
+            assertTrue(response.contains("[ERROR]"), "Dropping a missing index should fail");
+            response = sendCommandToServer("SELECT name FROM marks WHERE mark == 35;");
+            assertEquals("[OK]\nname\nSimon\nChris", response);
+        });
+    }
+
+    @Test
+    public void testRangeConditionsUseBTreeIndex() throws Exception {
+        withoutCheckpoints(() -> {
+            String randomName = generateRandomName();
+            sendCommandToServer("CREATE DATABASE " + randomName + ";");
+            sendCommandToServer("USE " + randomName + ";");
+            sendCommandToServer("CREATE TABLE marks (name, mark);");
+            sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65);");
+            sendCommandToServer("INSERT INTO marks VALUES ('Rob', 35);");
+            sendCommandToServer("INSERT INTO marks VALUES ('Chris', 20);");
+            String response = sendCommandToServer("CREATE INDEX ON marks(mark) USING BTREE;");
+            assertTrue(response.contains("[OK]"), "Creating a B+tree index should succeed");
+            response = sendCommandToServer("CREATE INDEX ON marks(name) USING GIST;");
+            assertTrue(response.contains("[ERROR]"), "Unknown index types should be rejected");
+            sendCommandToServer("INSERT INTO marks VALUES ('Sion', 55);");
+            sendCommandToServer("INSERT INTO marks VALUES ('Neill', 50);");
+            sendCommandToServer("INSERT INTO marks VALUES ('Anna', 'absent');");
+
+            // Text cells compare as strings, so 'absent' sorts above any number written with digits
+            response = sendCommandToServer("SELECT name FROM marks WHERE mark > 50;");
+            assertEquals("[OK]\nname\nSimon\nSion\nAnna", response);
+            response = sendCommandToServer("SELECT name FROM marks WHERE mark >= 50;");
+            assertEquals("[OK]\nname\nSimon\nSion\nNeill\nAnna", response);
+            response = sendCommandToServer("SELECT name FROM marks WHERE mark < 50;");
+            assertEquals("[OK]\nname\nRob\nChris", response);
+            response = sendCommandToServer("SELECT name FROM marks WHERE mark <= 35;");
+            assertEquals("[OK]\nname\nRob\nChris", response);
+            response = sendCommandToServer("SELECT name FROM marks WHERE mark == 50;");
+            assertEquals("[OK]\nname\nNeill", response);
+
+            sendCommandToServer("UPDATE marks SET mark = 40 WHERE mark < 30;");
+            sendCommandToServer("DELETE FROM marks WHERE mark >= 60;");
+            response = sendCommandToServer("SELECT name FROM marks WHERE mark <= 40;");
+            assertEquals("[OK]\nname\nRob\nChris", response);
+
+            File dbDir = Paths.get("databases", randomName).toFile().getAbsoluteFile();
+            TableCache.invalidateDatabase(dbDir);
+            TableIndexes.forgetDatabase(dbDir);
+            WriteAheadLog.close(dbDir, false);
+            server = new DBServer();
+            sendCommandToServer("USE " + randomName + ";");
+            response = sendCommandToServer("SELECT name FROM marks WHERE mark > 36;");
+            assertEquals("[OK]\nname\nChris\nSion\nNeill", response);
+
+            // Long values split the tree over many pages, and a tiny node cache forces them out to disk
+            Config.setIndexNodeCache(2);
+            try {
+                sendCommandToServer("CREATE TABLE notes (body);");
+                sendCommandToServer("CREATE INDEX ON notes(body) USING BTREE;");
+                for (int i = 1; i <= 40; i++) {
+                    sendCommandToServer("INSERT INTO notes VALUES ('" + String.format("%03d", i) + "x".repeat(300) + "');");
+                }
+                response = sendCommandToServer("SELECT id FROM notes WHERE body >= '035';");
+                assertEquals("[OK]\nid\n35\n36\n37\n38\n39\n40", response);
+                sendCommandToServer("DELETE FROM notes WHERE body < '010';");
+                response = sendCommandToServer("SELECT id FROM notes WHERE body < '013';");
+                assertEquals("[OK]\nid\n10\n11\n12", response);
+            } finally {
+                Config.setIndexNodeCache(1024);
+            }
+        });
+    }
+
+    @Test
+    public void testLookupsById() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Rob', 35);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Chris', 20);");
+        String response = sendCommandToServer("SELECT name FROM marks WHERE id == 2;");
+        assertEquals("[OK]\nname\nRob", response);
+        response = sendCommandToServer("SELECT name FROM marks WHERE id == 7;");
+        assertEquals("[OK]\nname", response);
+        // Ids compare as numbers, like any other column
+        response = sendCommandToServer("SELECT name FROM marks WHERE id == 2.0;");
+        assertEquals("[OK]\nname\nRob", response);
+
+        sendCommandToServer("UPDATE marks SET mark = 40 WHERE id == 3;");
+        sendCommandToServer("DELETE FROM marks WHERE id == 1;");
+        response = sendCommandToServer("SELECT * FROM marks;");
+        assertEquals("[OK]\nid\tname\tmark\n2\tRob\t35\n3\tChris\t40", response);
+        response = sendCommandToServer("SELECT name FROM marks WHERE id == 1;");
+        assertEquals("[OK]\nname", response);
+
+        // Ids stay unique, so a row can always be found again by its id
+        response = sendCommandToServer("UPDATE marks SET id = 2 WHERE id == 3;");
+        assertEquals("[ERROR] Update failed: id must be a whole number no other row has", response);
+        response = sendCommandToServer("UPDATE marks SET id = 7 WHERE mark > 0;");
+        assertEquals("[ERROR] Update failed: id must be a whole number no other row has", response);
+        response = sendCommandToServer("UPDATE marks SET id = 'x' WHERE id == 3;");
+        assertEquals("[ERROR] Update failed: id must be a whole number no other row has", response);
+        sendCommandToServer("UPDATE marks SET id = 7 WHERE id == 3;");
+        sendCommandToServer("INSERT INTO marks VALUES ('Sion', 55);");
+        response = sendCommandToServer("SELECT * FROM marks;");
+        assertEquals("[OK]\nid\tname\tmark\n2\tRob\t35\n7\tChris\t40\n8\tSion\t55", response);
+    }
+
+    @Test
+    public void testCompoundConditionsInEveryStatement() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Sion', 55, TRUE);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Rob', 35, FALSE);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Chris', 20, FALSE);");
+        String response = sendCommandToServer("SELECT name FROM marks WHERE pass == TRUE AND mark < 60;");
+        assertEquals("[OK]\nname\nSion", response);
+        response = sendCommandToServer("SELECT name FROM marks WHERE (Mark > 60) OR ((name == Rob));");
+        assertEquals("[OK]\nname\nSimon\nRob", response);
+
+        sendCommandToServer("UPDATE marks SET pass = TRUE WHERE (mark >= 35) AND (pass == FALSE);");
+        sendCommandToServer("DELETE FROM marks WHERE (name LIKE 'S') OR (mark < 30);");
+        response = sendCommandToServer("SELECT * FROM marks;");
+        assertEquals("[OK]\nid\tname\tmark\tpass\n3\tRob\t35\tTRUE", response);
+
+        response = sendCommandToServer("DELETE FROM marks WHERE (grade == 1) OR (mark < 30);");
+        assertEquals("[ERROR] Condition attribute not found: grade", response);
+        response = sendCommandToServer("SELECT * FROM marks WHERE (mark > 30;");
+        assertEquals("[ERROR] Invalid condition format: ( mark > 30", response);
+    }
+
+    @Test
+    public void testAndBindsTighterThanOr() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark, pass);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Sion', 55, TRUE);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Rob', 35, FALSE);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Chris', 20, FALSE);");
+        String response = sendCommandToServer("SELECT name FROM marks WHERE name == Simon OR pass == TRUE AND mark < 60;");
+        assertEquals("[OK]\nname\nSimon\nSion", response);
+        response = sendCommandToServer("SELECT name FROM marks WHERE (name == Simon OR pass == TRUE) AND mark < 60;");
+        assertEquals("[OK]\nname\nSion", response);
+        response = sendCommandToServer("SELECT name FROM marks WHERE (name == Simon OR name == Rob) AND (mark > 50 OR pass == FALSE);");
+        assertEquals("[OK]\nname\nSimon\nRob", response);
+        response = sendCommandToServer("SELECT name FROM marks WHERE mark > 30 AND ((pass == TRUE AND name LIKE 'on') OR name == Rob);");
+        assertEquals("[OK]\nname\nSimon\nSion\nRob", response);
+        response = sendCommandToServer("DELETE FROM marks WHERE pass == FALSE AND mark < 30 OR name == Simon;");
+        assertTrue(response.startsWith("[OK]"));
+        response = sendCommandToServer("SELECT name FROM marks;");
+        assertEquals("[OK]\nname\nSion\nRob", response);
+    }
+
+    @Test
+    public void testDeclaredColumnTypes() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        String response = sendCommandToServer("CREATE TABLE marks (name STRING, mark INT, pass BOOL);");
+        assertTrue(response.startsWith("[OK]"), "Columns can be declared with a type");
+        response = sendCommandToServer("CREATE TABLE grades (name BLOB);");
+        assertEquals("[ERROR] Unknown column type: BLOB", response);
+
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65, TRUE);");
+        response = sendCommandToServer("INSERT INTO marks VALUES ('Rob', 35.5, FALSE);");
+        assertEquals("[ERROR] Insert failed: mark expects INTEGER values", response);
+        response = sendCommandToServer("UPDATE marks SET pass = 7 WHERE name == Simon;");
+        assertEquals("[ERROR] Update failed: pass expects BOOLEAN values", response);
+        response = sendCommandToServer("SELECT * FROM marks;");
+        assertEquals("[OK]\nid\tname\tmark\tpass\n1\tSimon\t65\tTRUE", response);
+
+        // Dropping a column forgets its type
+        sendCommandToServer("ALTER TABLE marks DROP mark;");
+        sendCommandToServer("ALTER TABLE marks ADD mark;");
+        response = sendCommandToServer("INSERT INTO marks VALUES ('Rob', FALSE, 'absent');");
+        assertTrue(response.startsWith("[OK]"), "An undeclared column takes any value");
+    }
+
+    @Test
+    public void testComparisonsOnMixedColumns() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE notes (v, w);");
+        sendCommandToServer("INSERT INTO notes VALUES (10, 1);");
+        sendCommandToServer("INSERT INTO notes VALUES ('abc', 2);");
+        sendCommandToServer("INSERT INTO notes VALUES ('', 3);");
+        sendCommandToServer("INSERT INTO notes VALUES (9.5, 4);");
+        sendCommandToServer("INSERT INTO notes VALUES (NaN, 5);");
+        // Numbers compare as numbers, anything else as strings against the value as written
+        String response = sendCommandToServer("SELECT w FROM notes WHERE v < 10;");
+        assertEquals("[OK]\nw\n3\n4", response);
+        response = sendCommandToServer("SELECT w FROM notes WHERE v != 10;");
+        assertEquals("[OK]\nw\n2\n3\n4\n5", response);
+        response = sendCommandToServer("SELECT w FROM notes WHERE v > 1;");
+        assertEquals("[OK]\nw\n1\n2\n4", response);
+
+        // Dropping a column moves the ones after it, which must still compare correctly
+        sendCommandToServer("ALTER TABLE notes DROP v;");
+        response = sendCommandToServer("SELECT w FROM notes WHERE w >= 4;");
+        assertEquals("[OK]\nw\n4\n5", response);
+    }
+
+    @Test
+    public void testJoinWithRepeatedKeys() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE pets (owner, pet);");
+        sendCommandToServer("INSERT INTO pets VALUES (2, 'cat');");
+        sendCommandToServer("INSERT INTO pets VALUES (1, 'dog');");
+        sendCommandToServer("INSERT INTO pets VALUES (2, 'fish');");
+        sendCommandToServer("CREATE TABLE people (owner, name);");
+        sendCommandToServer("INSERT INTO people VALUES (2, 'Ann');");
+        sendCommandToServer("INSERT INTO people VALUES (2.0, 'Bob');");
+        sendCommandToServer("INSERT INTO people VALUES (2, 'Cy');");
+
+        // Unordered keys are hashed; every match is reported, left row by left row
+        String response = sendCommandToServer("JOIN pets AND people ON owner AND owner;");
+        assertEquals("[OK]\nid\tpets.pet\tpeople.name\n1\tcat\tAnn\n2\tcat\tCy\n3\tfish\tAnn\n4\tfish\tCy", response);
+        sendCommandToServer("DELETE FROM people WHERE name == Bob;");
+        response = sendCommandToServer("JOIN people AND pets ON owner AND owner;");
+        assertEquals("[OK]\nid\tpeople.name\tpets.pet\n1\tAnn\tcat\n2\tAnn\tfish\n3\tCy\tcat\n4\tCy\tfish", response);
+
+        // Keys already in order on both sides are merged
+        sendCommandToServer("UPDATE pets SET owner = 0 WHERE pet == cat;");
+        sendCommandToServer("INSERT INTO people VALUES (3, 'Di');");
+        response = sendCommandToServer("JOIN pets AND people ON owner AND owner;");
+        assertEquals("[OK]\nid\tpets.pet\tpeople.name\n1\tfish\tAnn\n2\tfish\tCy", response);
+        response = sendCommandToServer("SELECT * FROM pets;");
+        assertEquals("[OK]\nid\towner\tpet\n1\t0\tcat\n2\t1\tdog\n3\t2\tfish", response);
+    }
+
+    @Test
+    public void testParallelScansKeepRowOrder() {
+        int threshold = Config.getScanParallelThreshold();
+        int parallelism = Config.getScanParallelism();
+        Config.setScanParallelThreshold(1);
+        Config.setScanParallelism(3);
+        try {
+            String randomName = generateRandomName();
+            sendCommandToServer("CREATE DATABASE " + randomName + ";");
+            sendCommandToServer("USE " + randomName + ";");
+            sendCommandToServer("CREATE TABLE numbers (n, parity);");
+            StringBuilder expected = new StringBuilder("[OK]\nid\tn");
+            for (int i = 1; i <= 40; i++) {
+                sendCommandToServer("INSERT INTO numbers VALUES (" + i + ", '" + (i % 2 == 0 ? "even" : "odd") + "');");
+                if (i % 3 == 0) {
+                    expected.append("\n").append(i).append("\t").append(i);
+                }
+            }
+
+            // The rows are split across threads, and come back in table order
+            String response = sendCommandToServer("SELECT id, n FROM numbers WHERE n == 3 OR n == 6 OR n == 9 OR n == 12"
+                    + " OR n == 15 OR n == 18 OR n == 21 OR n == 24 OR n == 27 OR n == 30 OR n == 33 OR n == 36 OR n == 39;");
+            assertEquals(expected.toString(), response);
+            response = sendCommandToServer("UPDATE numbers SET parity = 'large' WHERE n > 36;");
+            assertTrue(response.startsWith("[OK]"), "A parallel scan finds the rows to update");
+            response = sendCommandToServer("DELETE FROM numbers WHERE parity == even;");
+            assertTrue(response.startsWith("[OK]"), "A parallel scan finds the rows to delete");
+            response = sendCommandToServer("SELECT n FROM numbers WHERE n > 30;");
+            assertEquals("[OK]\nn\n31\n33\n35\n37\n38\n39\n40", response);
+        } finally {
+            Config.setScanParallelThreshold(threshold);
+            Config.setScanParallelism(parallelism);
+        }
+    }
+
+    @Test
+    public void testSelectStreamsTablesTooLargeToCache() throws Exception {
+        withTableCacheBytes(0, () -> {
+            String randomName = generateRandomName();
+            sendCommandToServer("CREATE DATABASE " + randomName + ";");
+            sendCommandToServer("USE " + randomName + ";");
+            sendCommandToServer("CREATE TABLE marks (name, mark);");
+            sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65);");
+            sendCommandToServer("INSERT INTO marks VALUES ('Rob', 35);");
+            sendCommandToServer("INSERT INTO marks VALUES ('Chris', 20);");
+            sendCommandToServer("INSERT INTO marks VALUES ('Sion', 55);");
+            sendCommandToServer("DELETE FROM marks WHERE name == 'Rob';");
+
+            // Rows are read from the file one at a time, filtered and projected on the way out
+            String response = sendCommandToServer("SELECT name FROM marks WHERE mark > 30;");
+            assertEquals("[OK]\nname\nSimon\nSion", response);
+            response = sendCommandToServer("SELECT * FROM marks WHERE grade > 30;");
+            assertEquals("[ERROR] Condition attribute not found: grade", response);
+            response = sendCommandToServer("SELECT grade FROM marks;");
+            assertEquals("[ERROR] Column not found", response);
+            response = sendCommandToServer("JOIN marks AND marks ON id AND id;");
+            assertEquals("[OK]\nid\tmarks.name\tmarks.mark\tmarks.name\tmarks.mark\n1\tSimon\t65\tSimon\t65"
+                    + "\n2\tChris\t20\tChris\t20\n3\tSion\t55\tSion\t55", response);
+        });
+    }
+
+    @Test
+    public void testLimitAndOffset() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Sion', 55);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Rob', 35);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Chris', 20);");
+
+        String response = sendCommandToServer("SELECT name FROM marks LIMIT 2;");
+        assertEquals("[OK]\nname\nSimon\nSion", response);
+        response = sendCommandToServer("SELECT name FROM marks WHERE mark < 60 LIMIT 2 OFFSET 1;");
+        assertEquals("[OK]\nname\nRob\nChris", response);
+        response = sendCommandToServer("select name from marks where mark > 30 and mark < 60 limit 5 offset 1;");
+        assertEquals("[OK]\nname\nRob", response);
+        response = sendCommandToServer("SELECT name FROM marks LIMIT 0;");
+        assertEquals("[OK]\nname", response);
+        response = sendCommandToServer("SELECT name FROM marks LIMIT 1 OFFSET 10;");
+        assertEquals("[OK]\nname", response);
+
+        response = sendCommandToServer("SELECT name FROM marks LIMIT -1;");
+        assertEquals("[ERROR] Invalid LIMIT: -1", response);
+        response = sendCommandToServer("SELECT name FROM marks LIMIT 1 OFFSET many;");
+        assertEquals("[ERROR] Invalid OFFSET: many", response);
+        response = sendCommandToServer("SELECT name FROM marks LIMIT 1 name;");
+        assertEquals("[ERROR] Unexpected syntax after LIMIT", response);
+        response = sendCommandToServer("SELECT name FROM marks WHERE mark > LIMIT 1;");
+        assertEquals("[ERROR] Invalid condition format: mark >", response);
+    }
+
+    @Test
+    public void testOrderBy() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 65);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Sion', 9);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Rob', 'absent');");
+        sendCommandToServer("INSERT INTO marks VALUES ('Chris', 65.0);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Anna', 65);");
+
+        // Numbers in numeric order, then text; equal values keep their table order
+        String response = sendCommandToServer("SELECT name FROM marks ORDER BY mark;");
+        assertEquals("[OK]\nname\nSion\nSimon\nAnna\nChris\nRob", response);
+        response = sendCommandToServer("SELECT name FROM marks ORDER BY mark DESC;");
+        assertEquals("[OK]\nname\nRob\nChris\nSimon\nAnna\nSion", response);
+        response = sendCommandToServer("SELECT name FROM marks WHERE id > 1 ORDER BY name ASC LIMIT 2;");
+        assertEquals("[OK]\nname\nAnna\nChris", response);
+        response = sendCommandToServer("SELECT name FROM marks ORDER BY mark DESC LIMIT 2 OFFSET 2;");
+        assertEquals("[OK]\nname\nSimon\nAnna", response);
+
+        response = sendCommandToServer("SELECT name FROM marks ORDER BY grade;");
+        assertEquals("[ERROR] Column not found", response);
+        response = sendCommandToServer("SELECT name FROM marks ORDER mark;");
+        assertEquals("[ERROR] Expected BY after ORDER", response);
+        response = sendCommandToServer("SELECT name FROM marks ORDER BY mark UP;");
+        assertEquals("[ERROR] Unexpected syntax after ORDER BY", response);
+    }
+
+    @Test
+    public void testOrderBySpillsToDisk() {
+        long budget = Config.getSortMemoryBytes();
+        Config.setSortMemoryBytes(200);
+        try {
+            String randomName = generateRandomName();
+            sendCommandToServer("CREATE DATABASE " + randomName + ";");
+            sendCommandToServer("USE " + randomName + ";");
+            sendCommandToServer("CREATE TABLE numbers (n);");
+            StringBuilder expected = new StringBuilder("[OK]\nn");
+            for (int i = 0; i < 30; i++) {
+                sendCommandToServer("INSERT INTO numbers VALUES (" + (i * 7 % 30) + ");");
+                expected.append("\n").append(29 - i);
+            }
+            // Every few rows fill the budget and are written out as a sorted run, then merged
+            String response = sendCommandToServer("SELECT n FROM numbers ORDER BY n DESC;");
+            assertEquals(expected.toString(), response);
+            response = sendCommandToServer("SELECT n FROM numbers ORDER BY n LIMIT 3 OFFSET 10;");
+            assertEquals("[OK]\nn\n10\n11\n12", response);
+            File dbDir = Paths.get("databases", randomName).toFile();
+            assertEquals(0, dbDir.list((dir, name) -> name.endsWith(".run")).length, "Sort runs are deleted");
+        } finally {
+            Config.setSortMemoryBytes(budget);
+        }
+    }
+
+    @Test
+    public void testAggregatesAndGroupBy() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, course, mark);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 'DB', 65);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Sion', 'OXO', 55);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Rob', 'DB', 35);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Chris', 'OXO', '');");
+        sendCommandToServer("INSERT INTO marks VALUES ('Anna', 'DB', 20.5);");
+
+        String response = sendCommandToServer("SELECT COUNT(*), count(mark), SUM(mark), MIN(name), MAX(mark) FROM marks;");
+        assertEquals("[OK]\nCOUNT(*)\tCOUNT(mark)\tSUM(mark)\tMIN(name)\tMAX(mark)\n5\t4\t175.5\tAnna\t65", response);
+        response = sendCommandToServer("SELECT course, COUNT(*), SUM(mark), AVG(mark) FROM marks GROUP BY course;");
+        assertEquals("[OK]\ncourse\tCOUNT(*)\tSUM(mark)\tAVG(mark)\nDB\t3\t120.5\t40.166666666666664\nOXO\t2\t55\t55.0",
+                response);
+        response = sendCommandToServer("SELECT course, MAX(mark) FROM marks WHERE name != Simon GROUP BY course"
+                + " ORDER BY MAX(mark) DESC LIMIT 1;");
+        assertEquals("[OK]\ncourse\tMAX(mark)\nOXO\t55", response);
+        response = sendCommandToServer("SELECT COUNT(*), AVG(mark) FROM marks WHERE mark > 100;");
+        assertEquals("[OK]\nCOUNT(*)\tAVG(mark)\n0\tNULL", response);
+        response = sendCommandToServer("SELECT course FROM marks GROUP BY course;");
+        assertEquals("[OK]\ncourse\nDB\nOXO", response);
+
+        response = sendCommandToServer("SELECT name, COUNT(*) FROM marks GROUP BY course;");
+        assertEquals("[ERROR] Column must be grouped or aggregated: name", response);
+        response = sendCommandToServer("SELECT SUM(*) FROM marks;");
+        assertEquals("[ERROR] Invalid argument to SUM: *", response);
+        response = sendCommandToServer("SELECT MEDIAN(mark) FROM marks;");
+        assertEquals("[ERROR] Unknown function: MEDIAN", response);
+        response = sendCommandToServer("SELECT COUNT(grade) FROM marks;");
+        assertEquals("[ERROR] Column not found", response);
+    }
+
+    @Test
+    public void testGroupBySpillsManyGroups() {
+        long budget = Config.getAggregateMemoryBytes();
+        Config.setAggregateMemoryBytes(0);
+        try {
+            String randomName = generateRandomName();
+            sendCommandToServer("CREATE DATABASE " + randomName + ";");
+            sendCommandToServer("USE " + randomName + ";");
+            sendCommandToServer("CREATE TABLE visits (page, seconds);");
+            for (int i = 0; i < 40; i++) {
+                sendCommandToServer("INSERT INTO visits VALUES ('p" + (i % 10) + "', " + i + ");");
+            }
+            // Only the first group fits; the rest go through partition files, some more than once
+            String response = sendCommandToServer("SELECT page, COUNT(*), SUM(seconds) FROM visits GROUP BY page ORDER BY page;");
+            StringBuilder expected = new StringBuilder("[OK]\npage\tCOUNT(*)\tSUM(seconds)");
+            for (int i = 0; i < 10; i++) {
+                expected.append("\np").append(i).append("\t4\t").append(4 * i + 60);
+            }
+            assertEquals(expected.toString(), response);
+            File dbDir = Paths.get("databases", randomName).toFile();
+            assertEquals(0, dbDir.list((dir, name) -> name.endsWith(".part")).length, "Partition files are deleted");
+        } finally {
+            Config.setAggregateMemoryBytes(budget);
+        }
+    }
+
+    @Test
+    public void testPreparedStatements() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark);");
+        String response = sendCommandToServer("PREPARE addMark AS INSERT INTO marks VALUES (?, ?);");
+        assertEquals("[OK]", response);
+        sendCommandToServer("EXECUTE addMark('Simon', 65);");
+        sendCommandToServer("EXECUTE addMark('Sion', 55);");
+        sendCommandToServer("EXECUTE addMark('Rob', 35);");
+        sendCommandToServer("PREPARE passed AS SELECT name FROM marks WHERE mark >= ? AND name != ? LIMIT 5;");
+
+        response = sendCommandToServer("EXECUTE passed(50, 'Sion');");
+        assertEquals("[OK]\nname\nSimon", response);
+        response = sendCommandToServer("EXECUTE passed(30, Simon);");
+        assertEquals("[OK]\nname\nSion\nRob", response);
+        sendCommandToServer("PREPARE raise AS UPDATE marks SET mark = ? WHERE name == ?;");
+        sendCommandToServer("EXECUTE raise(70, 'Rob');");
+        response = sendCommandToServer("EXECUTE passed(60, 'Simon');");
+        assertEquals("[OK]\nname\nRob", response);
+
+        response = sendCommandToServer("EXECUTE passed(50);");
+        assertEquals("[ERROR] Expected 2 parameter values but got 1", response);
+        response = sendCommandToServer("EXECUTE missing;");
+        assertEquals("[ERROR] Prepared statement not found: missing", response);
+        response = sendCommandToServer("SELECT name FROM marks WHERE mark > ?;");
+        assertEquals("[ERROR] Parameters are only allowed in PREPARE", response);
+        response = sendCommandToServer("PREPARE bad AS SELECT ? FROM marks;");
+        assertEquals("[ERROR] Parameters can only stand for values", response);
+        response = sendCommandToServer("PREPARE bad AS DROP TABLE marks;");
+        assertEquals("[ERROR] Only SELECT, INSERT, UPDATE and DELETE can be prepared", response);
+    }
+
+    @Test
+    public void testPlanCacheBindsEachStatementsLiterals() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, mark);");
+        for (int i = 0; i < 5; i++) {
+            sendCommandToServer("INSERT INTO marks VALUES ('s" + i + "', " + (50 + i) + ");");
+        }
+        // Each statement has the same shape as the one before, so all but the first come from the cache
+        for (int i = 0; i < 5; i++) {
+            String response = sendCommandToServer("SELECT name FROM marks WHERE mark == " + (50 + i) + " LIMIT 1;");
+            assertEquals("[OK]\nname\ns" + i, response);
+        }
+        String response = sendCommandToServer("SELECT name FROM marks WHERE mark >= 52 LIMIT 2;");
+        assertEquals("[OK]\nname\ns2\ns3", response);
+        response = sendCommandToServer("SELECT name FROM marks WHERE name == 's1' OR mark < 51 LIMIT 5;");
+        assertEquals("[OK]\nname\ns0\ns1", response);
+        response = sendCommandToServer("SELECT name FROM marks WHERE name == '' OR mark < 53 LIMIT 5;");
+        assertEquals("[OK]\nname\ns0\ns1\ns2", response);
+
+        sendCommandToServer("ALTER TABLE marks DROP mark;");
+        response = sendCommandToServer("SELECT name FROM marks WHERE mark == 50 LIMIT 1;");
+        assertTrue(response.startsWith("[ERROR]"), "Statements cached before the column was dropped are not reused");
+        response = sendCommandToServer("SELECT name FROM marks WHERE mark == 'x LIMIT 1;");
+        assertTrue(response.startsWith("[ERROR]"), "Malformed statements are still reported");
+    }
+
+    @Test
+    public void testLexerEdgeCases() {
+        String randomName = generateRandomName();
+        sendCommandToServer("create database " + randomName + ";");
+        sendCommandToServer("Use " + randomName + ";");
+        sendCommandToServer("CREATE TABLE orders (ascent, note_1);");
+        // Words that start with a keyword are identifiers, and symbols need no spaces around them
+        sendCommandToServer("insert\tINTO orders values(-5,'a;b');");
+        sendCommandToServer("INSERT INTO orders VALUES (+2.50, 'x y');");
+        sendCommandToServer("INSERT INTO orders VALUES (12, NULL);");
+        String response = sendCommandToServer("SELECT ascent FROM orders WHERE(ascent>=-5)AND(note_1!='x y')ORDER BY ascent desc;");
+        assertEquals("[OK]\nascent\n12\n-5", response);
+        response = sendCommandToServer("SELECT * FROM orders WHERE ascent<0.0;");
+        assertEquals("[OK]\nid\tascent\tnote_1\n1\t-5\ta;b", response);
+
+        response = sendCommandToServer("SELECT * FROM orders WHERE note_1 == 'open;");
+        assertEquals("[ERROR] Unrecognized character: '", response);
+        response = sendCommandToServer("SELECT * FROM orders WHERE ascent ! 5;");
+        assertEquals("[ERROR] Unrecognized character: !", response);
+        response = sendCommandToServer("SELECT * FROM orders");
+        assertEquals("[ERROR] Invalid syntax: ';' is expected", response);
+    }
+
+    @Test
+    public void testAlterTableKeepsCellsInTheirColumns() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE marks (name, course, mark);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Simon', 'DB', 65);");
+        sendCommandToServer("INSERT INTO marks VALUES ('Sion', 'OXO', 55);");
+        sendCommandToServer("CREATE INDEX ON marks (mark);");
+
+        sendCommandToServer("ALTER TABLE marks DROP course;");
+        sendCommandToServer("ALTER TABLE marks ADD grade;");
+        String response = sendCommandToServer("SELECT * FROM marks;");
+        assertEquals("[OK]\nid\tname\tmark\tgrade\n1\tSimon\t65\t\n2\tSion\t55\t", response);
+        sendCommandToServer("UPDATE marks SET grade = 'A' WHERE mark == 65;");
+        sendCommandToServer("INSERT INTO marks VALUES ('Rob', 35, 'F');");
+        response = sendCommandToServer("SELECT name, grade FROM marks WHERE mark >= 35;");
+        assertEquals("[OK]\nname\tgrade\nSimon\tA\nSion\t\nRob\tF", response);
+
+        // Most cells are now dropped ones, so the rows are compacted
+        sendCommandToServer("ALTER TABLE marks DROP name;");
+        sendCommandToServer("ALTER TABLE marks DROP grade;");
+        response = sendCommandToServer("SELECT * FROM marks WHERE mark == 55;");
+        assertEquals("[OK]\nid\tmark\n2\t55", response);
+        sendCommandToServer("ALTER TABLE marks ADD note;");
+        sendCommandToServer("UPDATE marks SET note = 'resit' WHERE mark < 40;");
+        response = sendCommandToServer("SELECT * FROM marks;");
+        assertEquals("[OK]\nid\tmark\tnote\n1\t65\t\n2\t55\t\n3\t35\tresit", response);
+    }
+
+    @Test
+    public void testDictionaryColumns() throws Exception {
+        withTableCacheBytes(0, () -> {
+            String randomName = generateRandomName();
+            sendCommandToServer("CREATE DATABASE " + randomName + ";");
+            sendCommandToServer("USE " + randomName + ";");
+            String response = sendCommandToServer("CREATE TABLE orders (item, status STRING DICTIONARY, country dictionary);");
+            assertTrue(response.startsWith("[OK]"), "Columns can be declared dictionary-encoded, with or without a type");
+            sendCommandToServer("INSERT INTO orders VALUES ('pen', 'open', 'UK');");
+            sendCommandToServer("INSERT INTO orders VALUES ('ink', 'shipped', 'FR');");
+            sendCommandToServer("INSERT INTO orders VALUES ('pad', 'open', 'UK');");
+            sendCommandToServer("INSERT INTO orders VALUES ('cap', 'shipping', 'UK');");
+            // A longer value forces the file to be rewritten, which encodes it
+            sendCommandToServer("UPDATE orders SET item = 'notebook' WHERE id == 3;");
+            // Values already in the file's dictionary are rewritten in place as codes
+            sendCommandToServer("UPDATE orders SET status = 'open' WHERE item == 'ink';");
+            sendCommandToServer("INSERT INTO orders VALUES ('mug', 'returned', 'DE');");
+
+            response = sendCommandToServer("SELECT item FROM orders WHERE status == 'open' AND country != 'FR';");
+            assertEquals("[OK]\nitem\npen\nnotebook", response);
+            response = sendCommandToServer("SELECT item, status FROM orders WHERE status LIKE 'ship' OR status == 'returned';");
+            assertEquals("[OK]\nitem\tstatus\ncap\tshipping\nmug\treturned", response);
+            response = sendCommandToServer("SELECT country, COUNT(*) FROM orders GROUP BY country;");
+            assertEquals("[OK]\ncountry\tCOUNT(*)\nUK\t3\nFR\t1\nDE\t1", response);
+        });
+        // Cached, the same rows share the dictionary's values
+        String response = sendCommandToServer("SELECT * FROM orders WHERE status == 'open';");
+        assertEquals("[OK]\nid\titem\tstatus\tcountry\n1\tpen\topen\tUK\n2\tink\topen\tFR\n3\tnotebook\topen\tUK",
+                response);
+        sendCommandToServer("ALTER TABLE orders DROP status;");
+        response = sendCommandToServer("SELECT item FROM orders WHERE country == 'UK';");
+        assertEquals("[OK]\nitem\npen\nnotebook\ncap", response);
+    }
+
+    @Test
+    public void testStreamedSelectReadsOnlyNeededColumns() throws Exception {
+        withTableCacheBytes(0, () -> {
+            String randomName = generateRandomName();
+            sendCommandToServer("CREATE DATABASE " + randomName + ";");
+            sendCommandToServer("USE " + randomName + ";");
+            sendCommandToServer("CREATE TABLE people (name, city, age, team, note);");
+            sendCommandToServer("INSERT INTO people VALUES ('Simon', 'Bristol', 40, 'red', '');");
+            sendCommandToServer("INSERT INTO people VALUES ('Rob', '', 35, 'blue', 'new');");
+            sendCommandToServer("INSERT INTO people VALUES ('Chris', 'Bath', 20, 'red', '');");
+
+            String response = sendCommandToServer("SELECT name FROM people WHERE team == 'red' ORDER BY age;");
+            assertEquals("[OK]\nname\nChris\nSimon", response);
+            response = sendCommandToServer("SELECT city, note FROM people WHERE age < 40;");
+            assertEquals("[OK]\ncity\tnote\n\tnew\nBath\t", response);
+            response = sendCommandToServer("SELECT team, MAX(age) FROM people WHERE note != 'new' GROUP BY team;");
+            assertEquals("[OK]\nteam\tMAX(age)\nred\t40", response);
+            response = sendCommandToServer("SELECT * FROM people WHERE city == '';");
+            assertEquals("[OK]\nid\tname\tcity\tage\tteam\tnote\n2\tRob\t\t35\tblue\tnew", response);
+        });
+    }
+
+    @Test
+    public void testStreamedScanFiltersBeforeDecodingRows() throws Exception {
+        withTableCacheBytes(0, () -> {
+            String randomName = generateRandomName();
+            sendCommandToServer("CREATE DATABASE " + randomName + ";");
+            sendCommandToServer("USE " + randomName + ";");
+            sendCommandToServer("CREATE TABLE events (kind DICTIONARY, host, detail);");
+            for (int i = 0; i < 20; i++) {
+                String kind = i % 7 == 3 ? "error" : "info";
+                sendCommandToServer("INSERT INTO events VALUES ('" + kind + "', 'h" + i % 3 + "', 'event " + i + "');");
+            }
+            // A rewrite encodes the dictionary column on disk
+            sendCommandToServer("UPDATE events SET detail = 'the first event' WHERE id == 1;");
+
+            String response = sendCommandToServer("SELECT id, detail FROM events WHERE kind == 'error';");
+            assertEquals("[OK]\nid\tdetail\n4\tevent 3\n11\tevent 10\n18\tevent 17", response);
+            response = sendCommandToServer("SELECT detail FROM events WHERE kind LIKE 'err' AND host == 'h1' OR id == 1;");
+            assertEquals("[OK]\ndetail\nthe first event\nevent 10", response);
+            response = sendCommandToServer("SELECT host, COUNT(*) FROM events WHERE kind != 'error' GROUP BY host;");
+            assertEquals("[OK]\nhost\tCOUNT(*)\nh0\t6\nh1\t6\nh2\t5", response);
+            response = sendCommandToServer("SELECT * FROM events WHERE detail == 'missing';");
+            assertEquals("[OK]\nid\tkind\thost\tdetail", response);
+        });
+    }
+
+    @Test
+    public void testNewTablesEncodeDictionaryColumnsWhileCached() {
+        String randomName = generateRandomName();
+        sendCommandToServer("CREATE DATABASE " + randomName + ";");
+        sendCommandToServer("USE " + randomName + ";");
+        sendCommandToServer("CREATE TABLE orders (item, status DICTIONARY);");
+        sendCommandToServer("INSERT INTO orders VALUES ('pen', 'open');");
+        sendCommandToServer("INSERT INTO orders VALUES ('ink', 'open');");
+
+        File tableFile = Paths.get("databases", randomName, "orders.tab").toFile().getAbsoluteFile();
+        Table cached = TableCache.peek(tableFile);
+        assertNotNull(cached, "The new table stays cached at the default budget");
+        assertEquals(Set.of("status"), cached.getDictionaryColumns());
+        Header status = cached.getColumn("status");
+        assertEquals(0, cached.getRow(0).getCode(status));
+        assertEquals(0, cached.getRow(1).getCode(status));
+        assertSame(cached.getRow(0).getColumnValue(status), cached.getRow(1).getColumnValue(status));
+    }
+
+    @Test
+    public void testPagedFilesReadAcrossMappingWindows() throws Exception {
+        long segment = Config.getMapSegmentBytes();
+        // Windows a page and a half apart, so pages start part way into them
+        Config.setMapSegmentBytes(PagedTableFile.PAGE_SIZE * 3 / 2);
+        try {
+            withStorageFormat(StorageFormat.PAGED, () -> withTableCacheBytes(0, () -> {
+                String randomName = generateRandomName();
+                sendCommandToServer("CREATE DATABASE " + randomName + ";");
+                sendCommandToServer("USE " + randomName + ";");
+                sendCommandToServer("CREATE TABLE notes (kind DICTIONARY, body);");
+                for (int i = 0; i < 200; i++) {
+                    sendCommandToServer("INSERT INTO notes VALUES ('k" + i % 4 + "', 'note number " + i + " " + "x".repeat(100) + "');");
+                }
+                // A row longer than a page gets a page spanning several
+                sendCommandToServer("INSERT INTO notes VALUES ('k0', '" + "y".repeat(PagedTableFile.PAGE_SIZE * 2) + "');");
+                sendCommandToServer("UPDATE notes SET body = 'short' WHERE id == 150;");
+                sendCommandToServer("DELETE FROM notes WHERE id == 120;");
+
+                String response = sendCommandToServer("SELECT id, body FROM notes WHERE id == 150 OR id == 120 OR id == 199;");
+                assertEquals("[OK]\nid\tbody\n150\tshort\n199\tnote number 198 " + "x".repeat(100), response);
+                response = sendCommandToServer("SELECT kind, COUNT(*) FROM notes GROUP BY kind;");
+                assertEquals("[OK]\nkind\tCOUNT(*)\nk0\t51\nk1\t50\nk2\t50\nk3\t49", response);
+                response = sendCommandToServer("SELECT id FROM notes WHERE body LIKE 'yyyy';");
+                assertEquals("[OK]\nid\n201", response);
+            }));
+        } finally {
+            Config.setMapSegmentBytes(segment);
+        }
+    }
+
+    @Test
+    public void testStreamedScanFiltersBatchesInParallel() throws Exception {
+        int threshold = Config.getScanParallelThreshold();
+        int parallelism = Config.getScanParallelism();
+        Config.setScanParallelThreshold(8);
+        Config.setScanParallelism(4);
+        try {
+            withTableCacheBytes(0, () -> {
+                String randomName = generateRandomName();
+                sendCommandToServer("CREATE DATABASE " + randomName + ";");
+                sendCommandToServer("USE " + randomName + ";");
+                sendCommandToServer("CREATE TABLE readings (sensor DICTIONARY, value, note);");
+                StringBuilder expected = new StringBuilder("[OK]\nid\tnote");
+                for (int i = 0; i < 300; i++) {
+                    sendCommandToServer("INSERT INTO readings VALUES ('s" + i % 5 + "', " + i + ", 'reading " + i + "');");
+                    if (i % 5 == 2 && i >= 100) {
+                        expected.append("\n").append(i + 1).append("\treading ").append(i);
+                    }
+                }
+                sendCommandToServer("UPDATE readings SET note = 'first' WHERE id == 1;");
+
+                // Matches come back in file order, with their untested columns decoded
+                String response = sendCommandToServer("SELECT id, note FROM readings WHERE sensor == 's2' AND value >= 100;");
+                assertEquals(expected.toString(), response);
+                response = sendCommandToServer("SELECT COUNT(*) FROM readings WHERE sensor != 's0';");
+                assertEquals("[OK]\nCOUNT(*)\n240", response);
+            });
+        } finally {
+            Config.setScanParallelThreshold(threshold);
+            Config.setScanParallelism(parallelism);
+        }
+    }
+
+    @Test
+    public void testFileScanDecodesOnlyWantedColumns() throws Exception {
+        withTableCacheBytes(0, () -> {
+            String randomName = generateRandomName();
+            sendCommandToServer("CREATE DATABASE " + randomName + ";");
+            sendCommandToServer("USE " + randomName + ";");
+            sendCommandToServer("CREATE TABLE people (name, city, age);");
+            sendCommandToServer("INSERT INTO people VALUES ('Simon', 'Bristol', 40);");
+            sendCommandToServer("INSERT INTO people VALUES ('Rob', 'Bath', 35);");
+            sendCommandToServer("INSERT INTO people VALUES ('Chris', 'Leeds', 20);");
+
+            File tableFile = Paths.get("databases", randomName, "people.tab").toFile();
+            Table table = new Table();
+            table.readHeaderData(tableFile);
+            Header name = table.getColumn("name");
+            Header city = table.getColumn("city");
+            Header age = table.getColumn("age");
+
+            // The filter sees only the column it tests; the name is decoded once a row passes
+            List<String> seen = new ArrayList<>();
+            List<Row> rows;
+            try (FileScan scan = new FileScan(tableFile, table, Set.of(name), row -> {
+                seen.add(row.getColumnValue(name) + "|" + row.getColumnValue(city) + "|" + row.getColumnValue(age));
+                return row.getNumber(age) > 30;
+            }, Set.of(age))) {
+                rows = scan.toList();
+            }
+            assertEquals(List.of("||40", "||35", "||20"), seen);
+            assertEquals(2, rows.size());
+            assertEquals("Simon", rows.get(0).getColumnValue(name));
+            assertEquals("Rob", rows.get(1).getColumnValue(name));
+            assertEquals("", rows.get(1).getColumnValue(city), "Columns nobody reads are never decoded");
+
+            if (PagedTableFile.isPaged(tableFile)) {
+                // A record still decodes once the cursor has moved past it
+                PagedTableFile.Cursor cursor = PagedTableFile.open(tableFile).cursor();
+                assertTrue(cursor.advance());
+                PagedTableFile.Record first = cursor.record();
+                assertTrue(cursor.advance());
+                assertEquals("Bath", cursor.value(2));
+                assertEquals("Bristol", first.value(2));
+                assertEquals("Simon", first.value(1));
+                assertEquals("", first.value(9), "Values past the end of the row read as empty");
+            }
+        });
+    }
+    @Test
+    public void testRepliesAreSentAfterTableLocksAreReleased() {
+        String randomName = generateRandomName();
+        Session session = new Session();
+        server.handleCommand("CREATE DATABASE " + randomName + ";", session);
+        server.handleCommand("CREATE TABLE marks (name, mark);", session);
+        server.handleCommand("CREATE TABLE grades (mark, grade);", session);
+        server.handleCommand("INSERT INTO marks VALUES ('Simon', 65);", session);
+        server.handleCommand("INSERT INTO marks VALUES ('Rob', 35);", session);
+        server.handleCommand("INSERT INTO grades VALUES (65, 'B');", session);
+
+        // A writer could take either table while the reply is being written to the client
+        File marks = Paths.get("databases", randomName, "marks.tab").toFile();
+        File grades = Paths.get("databases", randomName, "grades.tab").toFile();
+        List<Boolean> writable = new ArrayList<>();
+        StringWriter reply = new StringWriter() {
+            @Override
+            public StringWriter append(CharSequence text) {
+                writable.add(canWrite(marks) && canWrite(grades));
+                return super.append(text);
+            }
+        };
+        server.handleCommand("SELECT * FROM marks WHERE mark > 40;", session, reply);
+        server.handleCommand("JOIN marks AND grades ON mark AND mark;", session, reply);
+        assertTrue(reply.toString().startsWith("[OK]\nid\tname\tmark\n1\tSimon\t65"));
+        assertTrue(reply.toString().contains("id\tmarks.name\tgrades.grade\n1\tSimon\tB"), "The join reply follows");
+        assertFalse(writable.isEmpty());
+        assertFalse(writable.contains(false), "Replies must not be written under a table lock");
+    }
+
+    private static boolean canWrite(File tableFile) {
+        Lock lock = TableLockManager.getLock(tableFile).writeLock();
+        if (!lock.tryLock()) {
+            return false;
+        }
+        lock.unlock();
+        return true;
+    }
+
+    @Test
+    public void testLargeRepliesSpoolToDisk() {
+        long memory = Config.getResultMemoryBytes();
+        Config.setResultMemoryBytes(0);
+        try {
+            String randomName = generateRandomName();
+            sendCommandToServer("CREATE DATABASE " + randomName + ";");
+            sendCommandToServer("USE " + randomName + ";");
+            sendCommandToServer("CREATE TABLE marks (name, mark);");
+            StringBuilder expected = new StringBuilder("[OK]\nid\tname\tmark");
+            for (int i = 1; i <= 50; i++) {
+                sendCommandToServer("INSERT INTO marks VALUES ('student " + i + "', " + i + ");");
+                expected.append("\n").append(i).append("\tstudent ").append(i).append("\t").append(i);
+            }
+            assertEquals(expected.toString(), sendCommandToServer("SELECT * FROM marks;"));
+            String response = sendCommandToServer("JOIN marks AND marks ON id AND mark;");
+            assertTrue(response.startsWith("[OK]\n"));
+            assertEquals(51, response.lines().count() - 1);
+
+            File[] spools = Paths.get("databases", randomName).toFile().listFiles((dir, name) -> name.endsWith(".spool"));
+            assertEquals(0, spools.length, "Spooled replies are deleted once sent");
+        } finally {
+            Config.setResultMemoryBytes(memory);
+        }
+    }
 }
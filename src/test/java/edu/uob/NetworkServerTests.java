@@ -0,0 +1,181 @@
+package edu.uob;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NetworkServerTests {
+
+    private static final char END_OF_TRANSMISSION = 4;
+
+    private int port;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+    }
+
+    private String generateRandomName() {
+        String randomName = "";
+        for(int i=0; i<10 ;i++) randomName += (char)( 97 + (Math.random() * 25.0));
+        return randomName;
+    }
+
+    private void startServer(ServerStarter starter) throws InterruptedException {
+        Thread thread = new Thread(() -> {
+            try {
+                starter.start(new DBServer(), port);
+            } catch (IOException ignored) {
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        // Give the listener a moment to bind
+        for (int i = 0; i < 50; i++) {
+            try {
+                new Socket("localhost", port).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("localhost", port);
+        socket.setSoTimeout(2000);
+        return socket;
+    }
+
+    private void send(Socket socket, String command) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+        writer.write(command + "\n");
+        writer.flush();
+    }
+
+    private String readReply(BufferedReader reader) throws IOException {
+        StringBuilder reply = new StringBuilder();
+        String line = reader.readLine();
+        while (line != null && !line.contains("" + END_OF_TRANSMISSION)) {
+            reply.append(line).append("\n");
+            line = reader.readLine();
+        }
+        return reply.toString();
+    }
+
+    @Test
+    public void testConcurrentClientsAreServedIndependently() throws Exception {
+        startServer(DBServer::concurrentListenOn);
+        String randomName = generateRandomName();
+        try (Socket idle = connect(); Socket active = connect()) {
+            BufferedReader idleReader = new BufferedReader(new InputStreamReader(idle.getInputStream()));
+            BufferedReader activeReader = new BufferedReader(new InputStreamReader(active.getInputStream()));
+            send(idle, "CREATE DATABASE " + randomName + ";");
+            assertTrue(readReply(idleReader).startsWith("[OK]"));
+
+            // The second connection has its own session, so no database is selected yet
+            String reply = assertTimeoutPreemptively(Duration.ofMillis(2000), () -> {
+                send(active, "SELECT * FROM marks;");
+                return readReply(activeReader);
+            });
+            assertTrue(reply.startsWith("[ERROR] No database selected"));
+        }
+    }
+
+    @FunctionalInterface
+    private interface ServerStarter {
+        void start(DBServer server, int port) throws IOException;
+    }
+
+    @Test
+    public void testPipelinedCommandsReplyInOrder() throws Exception {
+        startServer(DBServer::nonBlockingListenOn);
+        String randomName = generateRandomName();
+        try (Socket socket = connect()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            // Everything goes out in one write without waiting for any reply
+            send(socket, "CREATE DATABASE " + randomName + "; USE " + randomName + ";\n"
+                    + "CREATE TABLE marks (name, mark);\n"
+                    + "INSERT INTO marks VALUES ('Simon;', 65); INSERT INTO marks VALUES ('Rob', 35);\n"
+                    + "SELECT name FROM marks WHERE mark < 50;\n"
+                    + "SELECT * FROM missing;");
+            for (int i = 0; i < 5; i++) {
+                assertTrue(readReply(reader).startsWith("[OK]"));
+            }
+            assertEquals("[OK]\nname\nRob\n", readReply(reader));
+            assertTrue(readReply(reader).startsWith("[ERROR] Table not found"));
+        }
+    }
+
+    @Test
+    public void testClientsThatOnlyWriteAreThrottled() throws Exception {
+        startServer(DBServer::nonBlockingListenOn);
+        int count = 5000;
+        try (Socket socket = connect()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            // More statements than the server queues, written without reading a single reply
+            Thread sender = new Thread(() -> {
+                try {
+                    StringBuilder statements = new StringBuilder();
+                    for (int i = 0; i < count; i++) {
+                        statements.append("SELECT * FROM missing").append(i).append(";\n");
+                    }
+                    send(socket, statements.toString());
+                } catch (IOException ignored) {
+                }
+            });
+            sender.setDaemon(true);
+            sender.start();
+            // Reading resumes as the replies are taken, and none are lost
+            for (int i = 0; i < count; i++) {
+                assertTrue(readReply(reader).startsWith("[ERROR] No database selected"));
+            }
+            sender.join(2000);
+            assertFalse(sender.isAlive());
+        }
+    }
+
+    @Test
+    public void testOverlongLinesCloseTheConnection() throws Exception {
+        startServer(DBServer::nonBlockingListenOn);
+        try (Socket socket = connect()) {
+            Thread sender = new Thread(() -> {
+                try {
+                    char[] chunk = new char[64 * 1024];
+                    Arrays.fill(chunk, 'a');
+                    BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+                    // A line that never ends
+                    for (int i = 0; i < 64; i++) {
+                        writer.write(chunk);
+                    }
+                    writer.flush();
+                } catch (IOException ignored) {
+                    // The server closed the connection first
+                }
+            });
+            sender.setDaemon(true);
+            sender.start();
+            int read;
+            try {
+                read = socket.getInputStream().read();
+            } catch (SocketException e) {
+                read = -1;
+            }
+            assertEquals(-1, read);
+        }
+    }
+}